@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.benchmarks;
+
+import jetbrains.buildServer.controllers.MockResponse;
+import jetbrains.buildServer.nuget.feed.server.NuGetServerSettings;
+import jetbrains.buildServer.nuget.feed.server.cache.MetadataResponseCache;
+import jetbrains.buildServer.nuget.feed.server.cache.ResponseCache;
+import jetbrains.buildServer.nuget.feed.server.controllers.NuGetFeedHandler;
+import jetbrains.buildServer.nuget.feed.server.index.NuGetFeed;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndex;
+import jetbrains.buildServer.nuget.feed.server.odata4j.NuGetProducerHolder;
+import jetbrains.buildServer.nuget.feed.server.odata4j.ODataRequestHandler;
+import jetbrains.buildServer.nuget.feed.server.odata4j.functions.NuGetFeedFunctions;
+import jetbrains.buildServer.nuget.feed.server.olingo.OlingoRequestHandler;
+import jetbrains.buildServer.nuget.feed.server.olingo.data.OlingoDataSource;
+import jetbrains.buildServer.nuget.feed.server.olingo.processor.AtomEntryCache;
+import jetbrains.buildServer.nuget.feed.server.olingo.processor.NuGetServiceFactory;
+import jetbrains.buildServer.nuget.tests.integration.feed.server.RequestWrapper;
+import jetbrains.buildServer.nuget.tests.integration.feed.server.ResponseWrapper;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures complete feed requests: Olingo entity set reading and
+ * OData4j serialization with {@link jetbrains.buildServer.nuget.feed.server.odata4j.BufferedXMLWriter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FeedRequestBenchmark {
+
+  @Param({"10000", "100000", "1000000"})
+  private int size;
+
+  @Param({"Olingo", "OData4j"})
+  private String library;
+
+  private NuGetFeedHandler myHandler;
+  private String myPackageId;
+
+  @Setup
+  public void setUp() {
+    final SyntheticFeed syntheticFeed = new SyntheticFeed(size);
+    final NuGetServerSettings settings = SyntheticFeed.createSettings();
+    final PackagesIndex index = syntheticFeed.createIndex(settings);
+    final NuGetFeed feed = new NuGetFeed(index, settings);
+    final ResponseCache cache = new ResponseCache() {
+      public void getOrCompute(@NotNull final HttpServletRequest request,
+                               @NotNull final HttpServletResponse response,
+                               @NotNull final ComputeAction action) throws Exception {
+        action.compute(request, response);
+      }
+
+      public void resetCache() {
+      }
+
+      public void resetCache(@NotNull final String packageId) {
+      }
+    };
+
+    if ("Olingo".equals(library)) {
+      myHandler = new OlingoRequestHandler(new NuGetServiceFactory(new OlingoDataSource(feed), new AtomEntryCache()), cache, new MetadataResponseCache());
+    } else {
+      myHandler = new ODataRequestHandler(new NuGetProducerHolder(feed, settings, new NuGetFeedFunctions(feed)), cache, new MetadataResponseCache());
+    }
+
+    myPackageId = SyntheticFeed.getPackageId(size / 2);
+    // builds resident packages index
+    index.getAll();
+  }
+
+  @Benchmark
+  public String listPackages() throws Exception {
+    return processRequest("/Packages()?$top=100");
+  }
+
+  @Benchmark
+  public String filterLatestById() throws Exception {
+    return processRequest("/Packages()?$filter=IsLatestVersion%20and%20tolower(Id)%20eq%20'" + myPackageId.toLowerCase() + "'");
+  }
+
+  @Benchmark
+  public String search() throws Exception {
+    return processRequest("/Search()?searchTerm='logging'&targetFramework='net45'&includePrerelease=false&$top=30");
+  }
+
+  @Benchmark
+  public String findPackagesById() throws Exception {
+    return processRequest("/FindPackagesById()?id='" + myPackageId + "'");
+  }
+
+  @NotNull
+  private String processRequest(@NotNull final String path) throws Exception {
+    final RequestWrapper request = new RequestWrapper(SyntheticFeed.FEED_PATH, SyntheticFeed.FEED_PATH + path);
+    final ResponseWrapper response = new ResponseWrapper(new MockResponse());
+    myHandler.handleRequest(request, response);
+    return response.toString();
+  }
+}
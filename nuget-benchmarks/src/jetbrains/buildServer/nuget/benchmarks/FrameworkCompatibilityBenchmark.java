@@ -0,0 +1,48 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.benchmarks;
+
+import jetbrains.buildServer.nuget.server.version.VersionUtility;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures package target framework compatibility checks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameworkCompatibilityBenchmark {
+
+  private final Set<String> myProjectFrameworks = new HashSet<>(Arrays.asList("net45", "net40-client"));
+  private final Set<String> myCompatibleConstraints = new HashSet<>(Arrays.asList("net20", "net35", "net40"));
+  private final Set<String> myIncompatibleConstraints = new HashSet<>(Arrays.asList("sl4", "wp7", "netcore45", "portable-win8+wp8"));
+
+  @Benchmark
+  public boolean compatible() {
+    return VersionUtility.isPackageCompatibleWithFrameworks(myProjectFrameworks, myCompatibleConstraints);
+  }
+
+  @Benchmark
+  public boolean incompatible() {
+    return VersionUtility.isPackageCompatibleWithFrameworks(myProjectFrameworks, myIncompatibleConstraints);
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.benchmarks;
+
+import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import jetbrains.buildServer.nuget.feed.server.olingo.model.NuGetMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures mapping of index entries into Olingo feed packages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NuGetMapperBenchmark {
+
+  private static final int PAGE_SIZE = 100;
+  private final URI myRequestUri = URI.create("http://localhost" + SyntheticFeed.FEED_PATH + "/Packages()");
+  private List<NuGetIndexEntry> myEntries;
+
+  @Setup
+  public void setUp() {
+    myEntries = new SyntheticFeed(PAGE_SIZE).getIndexEntries();
+  }
+
+  @Benchmark
+  public void mapPackage(final Blackhole blackhole) {
+    for (NuGetIndexEntry entry : myEntries) {
+      blackhole.consume(NuGetMapper.mapPackage(entry, myRequestUri));
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.benchmarks;
+
+import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures conversion of build metadata entries into index entries,
+ * see {@link jetbrains.buildServer.nuget.feed.server.index.impl.PackagesIndexImpl#getForBuild(long)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PackagesIndexBenchmark {
+
+  @Param({"10000", "100000", "1000000"})
+  private int size;
+
+  private PackagesIndex myIndex;
+
+  @Setup
+  public void setUp() {
+    myIndex = new SyntheticFeed(size).createIndex(SyntheticFeed.createSettings());
+  }
+
+  @Benchmark
+  public List<NuGetIndexEntry> decorateMetadata() {
+    return myIndex.getForBuild(1);
+  }
+
+  @Benchmark
+  public List<NuGetIndexEntry> getAll() {
+    return myIndex.getAll();
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.benchmarks;
+
+import jetbrains.buildServer.nuget.server.version.SemanticVersion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures semantic version parsing and comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SemanticVersionBenchmark {
+
+  private static final String[] VERSIONS = {
+    "1.0", "1.0.0", "1.2.3.4", "2.0.0-beta", "2.0.0-beta.2", "10.11.12-rc1+build.5", "0.9.1-alpha-2", "3.5.0"
+  };
+
+  @Benchmark
+  public void valueOf(final Blackhole blackhole) {
+    for (String version : VERSIONS) {
+      blackhole.consume(SemanticVersion.valueOf(version));
+    }
+  }
+
+  @Benchmark
+  public void compareAsVersions(final Blackhole blackhole) {
+    for (int i = 0; i < VERSIONS.length; i++) {
+      blackhole.consume(SemanticVersion.compareAsVersions(VERSIONS[i], VERSIONS[(i + 1) % VERSIONS.length]));
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.benchmarks;
+
+import jetbrains.buildServer.nuget.feed.server.NuGetServerSettings;
+import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndex;
+import jetbrains.buildServer.nuget.feed.server.index.impl.PackagesIndexImpl;
+import jetbrains.buildServer.nuget.feed.server.index.impl.transform.DownloadUrlComputationTransformation;
+import jetbrains.buildServer.nuget.feed.server.index.impl.transform.SamePackagesFilterTransformation;
+import jetbrains.buildServer.nuget.tests.integration.feed.server.MockExternalIdTransformation;
+import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.metadata.BuildMetadataEntry;
+import jetbrains.buildServer.serverSide.metadata.MetadataStorage;
+import jetbrains.buildServer.util.EventDispatcher;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+
+/**
+ * Generates synthetic package feeds of the requested size.
+ */
+public class SyntheticFeed {
+
+  public static final String FEED_PATH = "/app/nuget/v1/FeedService.svc";
+  private static final int VERSIONS_PER_PACKAGE = 10;
+  private static final String[] FRAMEWORKS = {"net35", "net40", "net45", "net40-client", "portable-net45+win8", "netstandard1.3"};
+  private static final String[] TAGS = {"json", "logging", "http", "testing", "di", "orm", "async", "xml"};
+
+  private final List<BuildMetadataEntry> myEntries;
+
+  public SyntheticFeed(final int size) {
+    myEntries = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      myEntries.add(createEntry(i));
+    }
+  }
+
+  @NotNull
+  public List<BuildMetadataEntry> getEntries() {
+    return myEntries;
+  }
+
+  @NotNull
+  public List<NuGetIndexEntry> getIndexEntries() {
+    final List<NuGetIndexEntry> result = new ArrayList<>(myEntries.size());
+    for (BuildMetadataEntry entry : myEntries) {
+      result.add(new NuGetIndexEntry(entry.getKey(), entry.getMetadata()));
+    }
+    return result;
+  }
+
+  /**
+   * Creates metadata storage which returns all synthetic entries for any build.
+   */
+  @NotNull
+  public MetadataStorage createStorage() {
+    return (MetadataStorage) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{MetadataStorage.class}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "getAllEntries":
+        case "getBuildEntry":
+          return myEntries.iterator();
+        case "getEntriesByKey":
+          return Collections.emptyIterator();
+        default:
+          throw new UnsupportedOperationException(method.getName());
+      }
+    });
+  }
+
+  @NotNull
+  public PackagesIndex createIndex(@NotNull final NuGetServerSettings settings) {
+    return new PackagesIndexImpl(
+      createStorage(),
+      Arrays.asList(
+        new SamePackagesFilterTransformation(),
+        new MockExternalIdTransformation(),
+        new DownloadUrlComputationTransformation(settings)
+      ),
+      EventDispatcher.create(BuildServerListener.class)
+    );
+  }
+
+  @NotNull
+  public static NuGetServerSettings createSettings() {
+    return (NuGetServerSettings) Proxy.newProxyInstance(SyntheticFeed.class.getClassLoader(), new Class[]{NuGetServerSettings.class}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "isNuGetServerEnabled":
+        case "isFilteringByTargetFrameworkEnabled":
+          return true;
+        case "getNuGetFeedControllerPathWithEndSlash":
+          return "/app/nuget/v1/";
+        default:
+          return "/app/nuget/v1";
+      }
+    });
+  }
+
+  @NotNull
+  public static String getPackageId(final int index) {
+    return "Synthetic.Package" + index / VERSIONS_PER_PACKAGE;
+  }
+
+  @NotNull
+  private static BuildMetadataEntry createEntry(final int index) {
+    final String id = getPackageId(index);
+    final int patch = index % VERSIONS_PER_PACKAGE;
+    final boolean prerelease = patch == VERSIONS_PER_PACKAGE - 1;
+    final String version = "1." + (index / 7) % 5 + "." + patch + (prerelease ? "-beta" + index % 3 : "");
+    final long buildId = index / VERSIONS_PER_PACKAGE + 1;
+
+    final Map<String, String> metadata = new HashMap<>();
+    metadata.put(ID, id);
+    metadata.put(VERSION, version);
+    metadata.put(NORMALIZED_VERSION, version);
+    metadata.put(TITLE, id);
+    metadata.put(AUTHORS, "Author" + index % 100);
+    metadata.put(DESCRIPTION, "Synthetic package " + id + " used to measure feed performance");
+    metadata.put(SUMMARY, "Synthetic package");
+    metadata.put(TAGS, TAGS[index % TAGS.length] + " " + TAGS[(index / 3) % TAGS.length]);
+    metadata.put(DEPENDENCIES, index % 2 == 0 ? "Synthetic.Package0:[1.0.0, ):" + FRAMEWORKS[index % FRAMEWORKS.length] : "");
+    metadata.put(IS_PRERELEASE, String.valueOf(prerelease));
+    metadata.put(PACKAGE_SIZE, String.valueOf(10000 + index));
+    metadata.put(PACKAGE_HASH, "hash" + index);
+    metadata.put(PACKAGE_HASH_ALGORITHM, "SHA512");
+    metadata.put(CREATED, "2017-01-01T00:00:00Z");
+    metadata.put(LAST_UPDATED, "2017-01-01T00:00:00Z");
+    metadata.put(PUBLISHED, "2017-01-01T00:00:00Z");
+    metadata.put(PackagesIndex.TEAMCITY_ARTIFACT_RELPATH, id + "." + version + ".nupkg");
+    metadata.put(PackagesIndex.TEAMCITY_BUILD_TYPE_ID, "bt" + index % 50);
+    metadata.put(PackagesIndex.TEAMCITY_FRAMEWORK_CONSTRAINTS, FRAMEWORKS[index % FRAMEWORKS.length] + "|" + FRAMEWORKS[(index + 1) % FRAMEWORKS.length]);
+    final String key = (id + "." + version).toLowerCase();
+
+    return new BuildMetadataEntry() {
+      public long getBuildId() {
+        return buildId;
+      }
+
+      @NotNull
+      public String getKey() {
+        return key;
+      }
+
+      @NotNull
+      public Map<String, String> getMetadata() {
+        return metadata;
+      }
+    };
+  }
+}
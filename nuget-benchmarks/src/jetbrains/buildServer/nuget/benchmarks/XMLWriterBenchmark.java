@@ -0,0 +1,96 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.benchmarks;
+
+import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import jetbrains.buildServer.nuget.feed.server.odata4j.BufferedXMLWriter;
+import jetbrains.buildServer.nuget.feed.server.odata4j.ManualXMLWriter3;
+import org.odata4j.stax2.QName2;
+import org.odata4j.stax2.XMLWriter2;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Atom feed serialization throughput with {@link ManualXMLWriter3}
+ * and {@link BufferedXMLWriter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class XMLWriterBenchmark {
+
+  private static final String ATOM_NS = "http://www.w3.org/2005/Atom";
+  private static final String DATA_NS = "http://schemas.microsoft.com/ado/2007/08/dataservices";
+  private static final String METADATA_NS = "http://schemas.microsoft.com/ado/2007/08/dataservices/metadata";
+
+  @Param({"100", "100000"})
+  private int size;
+
+  @Param({"Manual", "Buffered"})
+  private String writerType;
+
+  private List<NuGetIndexEntry> myEntries;
+
+  @Setup
+  public void setUp() {
+    myEntries = new SyntheticFeed(size).getIndexEntries();
+  }
+
+  @Benchmark
+  public void writeFeed() {
+    final Writer target = new NullWriter();
+    final XMLWriter2 writer = "Buffered".equals(writerType) ? new BufferedXMLWriter(target) : new ManualXMLWriter3(target);
+    writer.startDocument();
+    writer.startElement(new QName2("feed"), ATOM_NS);
+    writer.writeNamespace("d", DATA_NS);
+    writer.writeNamespace("m", METADATA_NS);
+    for (NuGetIndexEntry entry : myEntries) {
+      writer.startElement(new QName2("entry"));
+      writer.startElement(new QName2("id"));
+      writer.writeText(entry.getKey());
+      writer.endElement("id");
+      writer.startElement(new QName2(METADATA_NS, "properties", "m"));
+      for (Map.Entry<String, String> attribute : entry.getAttributes().entrySet()) {
+        writer.startElement(new QName2(DATA_NS, attribute.getKey(), "d"));
+        writer.writeText(attribute.getValue());
+        writer.endElement(attribute.getKey());
+      }
+      writer.endElement("properties");
+      writer.endElement("entry");
+    }
+    writer.endElement("feed");
+    writer.endDocument();
+  }
+
+  private static final class NullWriter extends Writer {
+    @Override
+    public void write(char[] buffer, int offset, int length) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
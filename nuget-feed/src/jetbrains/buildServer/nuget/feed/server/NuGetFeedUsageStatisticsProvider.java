@@ -16,10 +16,10 @@
 
 package jetbrains.buildServer.nuget.feed.server;
 
-import com.intellij.openapi.util.Pair;
+import jetbrains.buildServer.nuget.feed.server.cache.ResponseCacheStatistics;
 import jetbrains.buildServer.nuget.feed.server.controllers.requests.RecentNuGetRequests;
-import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
 import jetbrains.buildServer.nuget.feed.server.index.PackagesIndex;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndexStatistics;
 import jetbrains.buildServer.usageStatistics.UsageStatisticsPublisher;
 import jetbrains.buildServer.usageStatistics.impl.providers.BaseDefaultUsageStatisticsProvider;
 import jetbrains.buildServer.usageStatistics.presentation.UsageStatisticsPresentationManager;
@@ -27,9 +27,6 @@ import jetbrains.buildServer.util.positioning.PositionAware;
 import jetbrains.buildServer.util.positioning.PositionConstraint;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * @author Evgeniy.Koshkin
  */
@@ -41,6 +38,12 @@ public class NuGetFeedUsageStatisticsProvider extends BaseDefaultUsageStatistics
   private static final String AVG_RESPONSE_TIME_STAT_ID = "jetbrains.nuget.avgResponseTime";
   private static final String TOTAL_PACKAGES_STAT_ID = "jetbrains.nuget.totalPackages";
   private static final String DIFF_PACKAGES_STAT_ID = "jetbrains.nuget.packagesIds";
+  private static final String INDEXED_BUILDS_STAT_ID = "jetbrains.nuget.indexedBuilds";
+  private static final String PACKAGES_SIZE_STAT_ID = "jetbrains.nuget.packagesSize";
+  private static final String PRERELEASE_PACKAGES_STAT_ID = "jetbrains.nuget.prereleasePackages";
+  private static final String CACHE_HITS_STAT_ID = "jetbrains.nuget.cacheHits";
+  private static final String CACHE_MISSES_STAT_ID = "jetbrains.nuget.cacheMisses";
+  private static final String CACHE_EVICTIONS_STAT_ID = "jetbrains.nuget.cacheEvictions";
 
   private static final PositionAware NUGET_API_CALLS_GROUP = new PositionAware() {
     @NotNull
@@ -57,13 +60,16 @@ public class NuGetFeedUsageStatisticsProvider extends BaseDefaultUsageStatistics
   private final RecentNuGetRequests myRequests;
   private final PackagesIndex myIndex;
   private final NuGetServerSettings mySettings;
+  private final ResponseCacheStatistics myCacheStatistics;
 
   public NuGetFeedUsageStatisticsProvider(@NotNull final RecentNuGetRequests requests,
                                           @NotNull final NuGetServerSettings settings,
-                                          @NotNull final PackagesIndex index) {
+                                          @NotNull final PackagesIndex index,
+                                          @NotNull final ResponseCacheStatistics cacheStatistics) {
     myRequests = requests;
     mySettings = settings;
     myIndex = index;
+    myCacheStatistics = cacheStatistics;
     myGroupName = GROUP_NAME;
   }
 
@@ -82,22 +88,24 @@ public class NuGetFeedUsageStatisticsProvider extends BaseDefaultUsageStatistics
       publisher.publishStatistic(AVG_RESPONSE_TIME_STAT_ID, myRequests.getAverageResponseTime());
       presentationManager.applyPresentation(AVG_RESPONSE_TIME_STAT_ID, "Average Feed Response Time (ms)", myGroupName, null, null);
 
-      final Pair<Integer, Integer> indexEntriesCount = countIndexEntries();
-      publisher.publishStatistic(TOTAL_PACKAGES_STAT_ID, indexEntriesCount.first);
+      final PackagesIndexStatistics statistics = myIndex.getStatistics();
+      publisher.publishStatistic(TOTAL_PACKAGES_STAT_ID, statistics.getPackagesCount());
       presentationManager.applyPresentation(TOTAL_PACKAGES_STAT_ID, "Packages Count", myGroupName, null, null);
-      publisher.publishStatistic(DIFF_PACKAGES_STAT_ID, indexEntriesCount.second);
+      publisher.publishStatistic(DIFF_PACKAGES_STAT_ID, statistics.getPackageIdsCount());
       presentationManager.applyPresentation(DIFF_PACKAGES_STAT_ID, "Different Package Ids Count", myGroupName, null, null);
+      publisher.publishStatistic(INDEXED_BUILDS_STAT_ID, statistics.getBuildsCount());
+      presentationManager.applyPresentation(INDEXED_BUILDS_STAT_ID, "Builds with Packages Count", myGroupName, null, null);
+      publisher.publishStatistic(PACKAGES_SIZE_STAT_ID, statistics.getPackagesSize() / (1024 * 1024));
+      presentationManager.applyPresentation(PACKAGES_SIZE_STAT_ID, "Packages Total Size (MB)", myGroupName, null, null);
+      publisher.publishStatistic(PRERELEASE_PACKAGES_STAT_ID, statistics.getPrereleasePercentage());
+      presentationManager.applyPresentation(PRERELEASE_PACKAGES_STAT_ID, "Pre-release Packages (%)", myGroupName, null, null);
+
+      publisher.publishStatistic(CACHE_HITS_STAT_ID, myCacheStatistics.getHitsCount());
+      presentationManager.applyPresentation(CACHE_HITS_STAT_ID, "Feed Cache Hits", myGroupName, null, null);
+      publisher.publishStatistic(CACHE_MISSES_STAT_ID, myCacheStatistics.getMissesCount());
+      presentationManager.applyPresentation(CACHE_MISSES_STAT_ID, "Feed Cache Misses", myGroupName, null, null);
+      publisher.publishStatistic(CACHE_EVICTIONS_STAT_ID, myCacheStatistics.getEvictionsCount());
+      presentationManager.applyPresentation(CACHE_EVICTIONS_STAT_ID, "Feed Cache Evictions", myGroupName, null, null);
     }
   }
-
-  private Pair<Integer, Integer> countIndexEntries() {
-    int count = 0;
-    final Set<String> packagesCounter = new HashSet<>();
-    for (NuGetIndexEntry indexEntry : myIndex.getAll()) {
-      packagesCounter.add(indexEntry.getAttributes().get("Id"));
-      count++;
-    }
-
-    return Pair.create(count, packagesCounter.size());
-  }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.cache;
+
+import jetbrains.buildServer.nuget.feed.server.NuGetAPIVersion;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.util.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps rendered $metadata and service documents.
+ *
+ * These documents depend only on the feed handler, API version, service root
+ * and requested format, so each of them is rendered once and then served
+ * from the stored gzip and identity content without OData processing.
+ */
+public class MetadataResponseCache {
+  private static final int MAX_RESPONSES = 128;
+  private static final String METADATA_PATH = "/$metadata";
+  private static final String SERVICE_DOCUMENT_PATH = "/";
+
+  private final ConcurrentMap<String, ResponseCacheEntry> myResponses = new ConcurrentHashMap<>();
+
+  /**
+   * @param request is a feed request.
+   * @return whether request is a plain $metadata or service document request.
+   */
+  public static boolean isMetadataRequest(@NotNull final HttpServletRequest request) {
+    if (!"GET".equals(request.getMethod()) || !StringUtil.isEmpty(request.getQueryString())) {
+      return false;
+    }
+
+    final String pathInfo = request.getPathInfo();
+    return METADATA_PATH.equals(pathInfo) || SERVICE_DOCUMENT_PATH.equals(pathInfo);
+  }
+
+  /**
+   * Serves stored document or renders it with the action.
+   *
+   * @param handlerKey is a key of the feed handler.
+   * @param request    is a metadata request.
+   * @param response   is a response.
+   * @param action     renders the document.
+   */
+  public void handleRequest(@NotNull final String handlerKey,
+                            @NotNull final HttpServletRequest request,
+                            @NotNull final HttpServletResponse response,
+                            @NotNull final ResponseCache.ComputeAction action) throws Exception {
+    if (!TeamCityProperties.getBooleanOrTrue("teamcity.nuget.feed.metadata.cache.enabled")) {
+      action.compute(request, response);
+      return;
+    }
+
+    final String key = handlerKey + " " + NuGetAPIVersion.getVersionToUse() + " " +
+      request.getRequestURL() + " " + request.getHeader("Accept");
+    ResponseCacheEntry entry = myResponses.get(key);
+    if (entry == null) {
+      final ResponseWrapper wrapped = new ResponseWrapper(response);
+      action.compute(request, wrapped);
+      entry = wrapped.build();
+      if (entry.getStatus() == HttpServletResponse.SC_OK && myResponses.size() < MAX_RESPONSES) {
+        entry.prepareContent(ResponseEncoding.IDENTITY);
+        myResponses.putIfAbsent(key, entry);
+      }
+    }
+
+    entry.handleRequest(request, response);
+  }
+
+  public void clear() {
+    myResponses.clear();
+  }
+
+  public int getCount() {
+    return myResponses.size();
+  }
+}
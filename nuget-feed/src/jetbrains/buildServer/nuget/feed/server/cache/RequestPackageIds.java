@@ -0,0 +1,103 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.cache;
+
+import jetbrains.buildServer.util.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves ids of packages a feed request depends on.
+ */
+public final class RequestPackageIds {
+  private static final Pattern PACKAGE_ENTITY = Pattern.compile("/Packages\\(Id='([^']+)'", Pattern.CASE_INSENSITIVE);
+  private static final Pattern FIND_PACKAGES_BY_ID = Pattern.compile("/FindPackagesById\\(\\)", Pattern.CASE_INSENSITIVE);
+  private static final Pattern GET_UPDATES = Pattern.compile("/GetUpdates\\(\\)", Pattern.CASE_INSENSITIVE);
+
+  private RequestPackageIds() {
+  }
+
+  /**
+   * Returns lower case ids of packages used in response.
+   *
+   * @param request is a feed request.
+   * @return set of ids or null if request could depend on any package.
+   */
+  @Nullable
+  public static Set<String> resolve(@NotNull final HttpServletRequest request) {
+    final String uri = decode(request.getRequestURI());
+    if (uri == null) {
+      return null;
+    }
+
+    final Matcher matcher = PACKAGE_ENTITY.matcher(uri);
+    if (matcher.find()) {
+      return Collections.singleton(matcher.group(1).toLowerCase(Locale.ENGLISH));
+    }
+
+    if (FIND_PACKAGES_BY_ID.matcher(uri).find()) {
+      return getIds(request.getParameter("id"));
+    }
+
+    if (GET_UPDATES.matcher(uri).find()) {
+      return getIds(request.getParameter("packageIds"));
+    }
+
+    return null;
+  }
+
+  @Nullable
+  private static Set<String> getIds(@Nullable final String parameter) {
+    if (parameter == null) {
+      return null;
+    }
+
+    String value = parameter.trim();
+    if (value.length() >= 2 && value.startsWith("'") && value.endsWith("'")) {
+      value = value.substring(1, value.length() - 1);
+    }
+
+    final Set<String> ids = new HashSet<>();
+    for (String id : StringUtil.split(value, "|")) {
+      if (!StringUtil.isEmptyOrSpaces(id)) {
+        ids.add(id.trim().toLowerCase(Locale.ENGLISH));
+      }
+    }
+
+    return ids.isEmpty() ? null : ids;
+  }
+
+  @Nullable
+  private static String decode(@Nullable final String uri) {
+    if (uri == null) {
+      return null;
+    }
+
+    try {
+      return URLDecoder.decode(uri, "UTF-8");
+    } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+      return uri;
+    }
+  }
+}
@@ -16,22 +16,35 @@
 
 package jetbrains.buildServer.nuget.feed.server.cache;
 
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import org.jetbrains.annotations.NotNull;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Created by Eugene Petrenko (eugene.petrenko@gmail.com)
  * Date: 22.04.13 22:34
+ *
+ * Keeps gzipped response content, identity and deflate representations
+ * are derived on the first request which accepts them.
  */
 public class ResponseCacheEntry {
   private final Map<String, String> myHeaders = new TreeMap<String, String>();
   private final byte[] myGZippedContent;
   private final int myStatus;
+  private volatile byte[] myContent;
+  private volatile byte[] myDeflatedContent;
 
   public ResponseCacheEntry(@NotNull final Map<String, String> headers,
                             @NotNull final byte[] GZippedContent,
@@ -41,15 +54,122 @@ public class ResponseCacheEntry {
     myStatus = status;
   }
 
+  /**
+   * @return approximate size of the entry in bytes.
+   */
+  public int getSize() {
+    int size = getSize(ResponseEncoding.GZIP) + getSize(ResponseEncoding.IDENTITY) + getSize(ResponseEncoding.DEFLATE);
+    for (Map.Entry<String, String> e : myHeaders.entrySet()) {
+      size += 2 * (e.getKey().length() + e.getValue().length());
+    }
+    return size;
+  }
+
+  /**
+   * @param encoding is a content encoding.
+   * @return size of the content representation in bytes, 0 if it was not created yet.
+   */
+  public int getSize(@NotNull final ResponseEncoding encoding) {
+    final byte[] content;
+    switch (encoding) {
+      case GZIP:
+        content = myGZippedContent;
+        break;
+      case IDENTITY:
+        content = myContent;
+        break;
+      default:
+        content = myDeflatedContent;
+    }
+    return content != null ? content.length : 0;
+  }
+
+  public int getStatus() {
+    return myStatus;
+  }
+
+  /**
+   * Creates content representation in the encoding ahead of requests.
+   *
+   * @param encoding is a content encoding.
+   */
+  public void prepareContent(@NotNull final ResponseEncoding encoding) throws IOException {
+    getContent(encoding);
+  }
+
   public void handleRequest(@NotNull final HttpServletRequest request,
                             @NotNull final HttpServletResponse response) throws Exception {
+    final ResponseEncoding encoding = ResponseEncoding.negotiate(request.getHeader("Accept-Encoding"),
+      TeamCityProperties.getBoolean("teamcity.nuget.feed.cache.deflate.enabled"));
+    final byte[] content = getContent(encoding);
+
     for (Map.Entry<String, String> e : myHeaders.entrySet()) {
       response.setHeader(e.getKey(), e.getValue());
     }
-    response.setHeader("Content-Encoding", "gzip");
+    if (encoding != ResponseEncoding.IDENTITY) {
+      response.setHeader("Content-Encoding", encoding.getName());
+    }
+    response.setHeader("Vary", "Accept-Encoding");
     response.setStatus(myStatus);
     ServletOutputStream stream = response.getOutputStream();
-    stream.write(myGZippedContent);
+    stream.write(content);
     stream.flush();
   }
+
+  @NotNull
+  private byte[] getContent(@NotNull final ResponseEncoding encoding) throws IOException {
+    switch (encoding) {
+      case GZIP:
+        return myGZippedContent;
+      case IDENTITY:
+        return getIdentityContent();
+      default:
+        return getDeflatedContent();
+    }
+  }
+
+  @NotNull
+  private byte[] getIdentityContent() throws IOException {
+    byte[] content = myContent;
+    if (content == null) {
+      synchronized (this) {
+        content = myContent;
+        if (content == null) {
+          final ByteArrayOutputStream output = new ByteArrayOutputStream(4 * myGZippedContent.length);
+          try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(myGZippedContent))) {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+              output.write(buffer, 0, read);
+            }
+          }
+          myContent = content = output.toByteArray();
+        }
+      }
+    }
+    return content;
+  }
+
+  @NotNull
+  private byte[] getDeflatedContent() throws IOException {
+    byte[] content = myDeflatedContent;
+    if (content == null) {
+      final byte[] identity = getIdentityContent();
+      synchronized (this) {
+        content = myDeflatedContent;
+        if (content == null) {
+          final Deflater deflater = new Deflater(
+            TeamCityProperties.getInteger("teamcity.nuget.feed.cache.deflate.level", Deflater.BEST_SPEED));
+          final ByteArrayOutputStream output = new ByteArrayOutputStream(myGZippedContent.length);
+          try (DeflaterOutputStream stream = new DeflaterOutputStream(output, deflater)) {
+            stream.write(identity);
+          } finally {
+            deflater.end();
+          }
+          myDeflatedContent = content = output.toByteArray();
+        }
+      }
+    }
+    return content;
+  }
 }
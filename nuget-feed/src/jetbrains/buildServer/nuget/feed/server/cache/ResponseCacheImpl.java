@@ -19,6 +19,7 @@ package jetbrains.buildServer.nuget.feed.server.cache;
 import com.intellij.openapi.diagnostic.Logger;
 import jetbrains.buildServer.serverSide.BuildServerAdapter;
 import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import jetbrains.buildServer.users.SUser;
 import jetbrains.buildServer.util.*;
 import jetbrains.buildServer.web.impl.TeamCityInternalKeys;
@@ -28,17 +29,24 @@ import org.jetbrains.annotations.NotNull;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Eugene Petrenko (eugene.petrenko@gmail.com)
  * Date: 22.04.13 22:41
  */
-public class ResponseCacheImpl implements ResponseCache {
+public class ResponseCacheImpl implements ResponseCache, ResponseCacheStatistics {
   private static final Logger LOG = Logger.getInstance(ResponseCacheImpl.class.getName());
-  private final Map<String, ResponseCacheEntry> myCache = new SoftValueHashMap<>();
+  private static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+  private final ResponseCacheStore myStore;
+  private final ConcurrentMap<String, CompletableFuture<ResponseCacheEntry>> myComputations = new ConcurrentHashMap<>();
+  private final AtomicLong myGeneration = new AtomicLong();
 
   public ResponseCacheImpl(@NotNull EventDispatcher<BuildServerListener> dispatcher) {
+    myStore = new ResponseCacheStore(TeamCityProperties.getLong("teamcity.nuget.feed.cache.maxSize", DEFAULT_MAX_SIZE));
     dispatcher.addListener(new BuildServerAdapter() {
       @Override
       public void cleanupFinished() {
@@ -49,9 +57,39 @@ public class ResponseCacheImpl implements ResponseCache {
   }
 
   public void resetCache() {
-    synchronized (myCache) {
-      myCache.clear();
-    }
+    myGeneration.incrementAndGet();
+    myStore.clear();
+  }
+
+  @Override
+  public void resetCache(@NotNull final String packageId) {
+    myGeneration.incrementAndGet();
+    myStore.invalidate(packageId);
+  }
+
+  @Override
+  public long getHitsCount() {
+    return myStore.getHitsCount();
+  }
+
+  @Override
+  public long getMissesCount() {
+    return myStore.getMissesCount();
+  }
+
+  @Override
+  public long getEvictionsCount() {
+    return myStore.getEvictionsCount();
+  }
+
+  @Override
+  public long getSize() {
+    return myStore.getSize();
+  }
+
+  @Override
+  public long getSize(@NotNull final ResponseEncoding encoding) {
+    return myStore.getSize(encoding);
   }
 
   @NotNull
@@ -83,27 +121,67 @@ public class ResponseCacheImpl implements ResponseCache {
   public void getOrCompute(@NotNull final HttpServletRequest request,
                            @NotNull final HttpServletResponse response,
                            @NotNull final ComputeAction action) throws Exception {
-    final String key = key(request);
-    final ResponseCacheEntry cached;
-    synchronized (myCache) {
-      cached = myCache.get(key);
+    // Responses of modification and batch requests depend on the request body
+    if (!"GET".equals(request.getMethod())) {
+      action.compute(request, response);
+      return;
     }
 
+    final String key = key(request);
+    final ResponseCacheEntry cached = myStore.get(key);
     if (cached != null) {
-      cached.handleRequest(request, response);
+      handleRequest(key, cached, request, response);
+      return;
+    }
+
+    // Concurrent requests with the same key wait for a single computation
+    final CompletableFuture<ResponseCacheEntry> computation = new CompletableFuture<>();
+    final CompletableFuture<ResponseCacheEntry> running = myComputations.putIfAbsent(key, computation);
+    if (running != null) {
+      final ResponseCacheEntry entry = running.get();
+      if (entry != null) {
+        handleRequest(key, entry, request, response);
+      } else {
+        action.compute(request, response);
+      }
       return;
     }
 
     LOG.debug("NuGet cache miss for: " + WebUtil.getRequestDump(request));
-    final ResponseWrapper wrapped = new ResponseWrapper(response);
+    final ResponseCacheEntry entry;
+    try {
+      final long generation = myGeneration.get();
+      final ResponseWrapper wrapped = new ResponseWrapper(response);
 
-    action.compute(request, wrapped);
+      action.compute(request, wrapped);
 
-    final ResponseCacheEntry entry = wrapped.build();
-    synchronized (myCache) {
-      myCache.put(key, entry);
+      entry = wrapped.build();
+      if (generation == myGeneration.get()) {
+        myStore.put(key, entry, RequestPackageIds.resolve(request));
+      }
+      computation.complete(entry);
+    } catch (Throwable e) {
+      computation.complete(null);
+      throw e;
+    } finally {
+      myComputations.remove(key, computation);
     }
 
+    handleRequest(key, entry, request, response);
+  }
+
+  /**
+   * Writes cached response, the entry size is updated when a new
+   * content encoding was created for the request.
+   */
+  private void handleRequest(@NotNull final String key,
+                             @NotNull final ResponseCacheEntry entry,
+                             @NotNull final HttpServletRequest request,
+                             @NotNull final HttpServletResponse response) throws Exception {
+    final int size = entry.getSize();
     entry.handleRequest(request, response);
+    if (entry.getSize() != size) {
+      myStore.update(key, entry);
+    }
   }
 }
@@ -16,10 +16,19 @@
 
 package jetbrains.buildServer.nuget.feed.server.cache;
 
+import org.jetbrains.annotations.NotNull;
+
 /**
  * Created by Eugene Petrenko (eugene.petrenko@gmail.com)
  * Date: 23.04.13 9:34
  */
 public interface ResponseCacheReset {
   void resetCache();
+
+  /**
+   * Resets cached responses which could contain the package.
+   *
+   * @param packageId is a package id.
+   */
+  void resetCache(@NotNull String packageId);
 }
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.cache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Segmented LRU storage of cached responses limited by the total size in bytes.
+ * Each entry is tagged with the package ids it depends on, entries without
+ * ids depend on the whole feed.
+ */
+public class ResponseCacheStore implements ResponseCacheStatistics {
+  private static final int SEGMENTS_COUNT = 16;
+  private static final int ENTRY_OVERHEAD = 64;
+
+  private final Segment[] mySegments = new Segment[SEGMENTS_COUNT];
+  private final long mySegmentMaxSize;
+  private final AtomicLong myHits = new AtomicLong();
+  private final AtomicLong myMisses = new AtomicLong();
+  private final AtomicLong myEvictions = new AtomicLong();
+
+  public ResponseCacheStore(final long maxSize) {
+    mySegmentMaxSize = maxSize / SEGMENTS_COUNT;
+    for (int i = 0; i < SEGMENTS_COUNT; i++) {
+      mySegments[i] = new Segment();
+    }
+  }
+
+  @Nullable
+  public ResponseCacheEntry get(@NotNull final String key) {
+    final Segment segment = getSegment(key);
+    final CachedItem item;
+    synchronized (segment) {
+      item = segment.myItems.get(key);
+    }
+
+    if (item == null) {
+      myMisses.incrementAndGet();
+      return null;
+    }
+
+    myHits.incrementAndGet();
+    return item.myEntry;
+  }
+
+  /**
+   * Stores the entry.
+   *
+   * @param key        is a cache key.
+   * @param entry      is a response.
+   * @param packageIds is a set of lower case package ids used in response, null if response depends on all packages.
+   */
+  public void put(@NotNull final String key,
+                  @NotNull final ResponseCacheEntry entry,
+                  @Nullable final Set<String> packageIds) {
+    final long size = ENTRY_OVERHEAD + 2L * key.length() + entry.getSize();
+    if (size > mySegmentMaxSize) {
+      return;
+    }
+
+    final Segment segment = getSegment(key);
+    synchronized (segment) {
+      final CachedItem previous = segment.myItems.put(key, new CachedItem(entry, size, packageIds));
+      if (previous != null) {
+        segment.mySize -= previous.mySize;
+      }
+      segment.mySize += size;
+      evict(segment);
+    }
+  }
+
+  /**
+   * Updates the size of the stored entry after new content representations were created.
+   *
+   * @param key   is a cache key.
+   * @param entry is a response.
+   */
+  public void update(@NotNull final String key, @NotNull final ResponseCacheEntry entry) {
+    final Segment segment = getSegment(key);
+    synchronized (segment) {
+      final CachedItem item = segment.myItems.get(key);
+      if (item == null || item.myEntry != entry) {
+        return;
+      }
+
+      final long size = ENTRY_OVERHEAD + 2L * key.length() + entry.getSize();
+      segment.mySize += size - item.mySize;
+      item.mySize = size;
+      evict(segment);
+    }
+  }
+
+  /**
+   * Removes entries which depend on the package id.
+   *
+   * @param packageId is a package id.
+   */
+  public void invalidate(@NotNull final String packageId) {
+    final String id = packageId.toLowerCase(Locale.ENGLISH);
+    for (Segment segment : mySegments) {
+      synchronized (segment) {
+        final Iterator<CachedItem> iterator = segment.myItems.values().iterator();
+        while (iterator.hasNext()) {
+          final CachedItem item = iterator.next();
+          if (item.myPackageIds == null || item.myPackageIds.contains(id)) {
+            segment.mySize -= item.mySize;
+            iterator.remove();
+          }
+        }
+      }
+    }
+  }
+
+  public void clear() {
+    for (Segment segment : mySegments) {
+      synchronized (segment) {
+        segment.myItems.clear();
+        segment.mySize = 0;
+      }
+    }
+  }
+
+  public int getCount() {
+    int count = 0;
+    for (Segment segment : mySegments) {
+      synchronized (segment) {
+        count += segment.myItems.size();
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public long getHitsCount() {
+    return myHits.get();
+  }
+
+  @Override
+  public long getMissesCount() {
+    return myMisses.get();
+  }
+
+  @Override
+  public long getEvictionsCount() {
+    return myEvictions.get();
+  }
+
+  @Override
+  public long getSize() {
+    long size = 0;
+    for (Segment segment : mySegments) {
+      synchronized (segment) {
+        size += segment.mySize;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @param encoding is a content encoding.
+   * @return size of cached content in the encoding in bytes.
+   */
+  @Override
+  public long getSize(@NotNull final ResponseEncoding encoding) {
+    long size = 0;
+    for (Segment segment : mySegments) {
+      synchronized (segment) {
+        for (CachedItem item : segment.myItems.values()) {
+          size += item.myEntry.getSize(encoding);
+        }
+      }
+    }
+    return size;
+  }
+
+  private void evict(@NotNull final Segment segment) {
+    final Iterator<CachedItem> iterator = segment.myItems.values().iterator();
+    while (segment.mySize > mySegmentMaxSize && iterator.hasNext()) {
+      segment.mySize -= iterator.next().mySize;
+      iterator.remove();
+      myEvictions.incrementAndGet();
+    }
+  }
+
+  @NotNull
+  private Segment getSegment(@NotNull final String key) {
+    final int hash = key.hashCode();
+    return mySegments[(hash ^ (hash >>> 16)) & (SEGMENTS_COUNT - 1)];
+  }
+
+  private static final class Segment {
+    private final LinkedHashMap<String, CachedItem> myItems = new LinkedHashMap<>(16, 0.75f, true);
+    private long mySize;
+  }
+
+  private static final class CachedItem {
+    private final ResponseCacheEntry myEntry;
+    private final Set<String> myPackageIds;
+    private long mySize;
+
+    private CachedItem(@NotNull final ResponseCacheEntry entry,
+                       final long size,
+                       @Nullable final Set<String> packageIds) {
+      myEntry = entry;
+      mySize = size;
+      myPackageIds = packageIds;
+    }
+  }
+}
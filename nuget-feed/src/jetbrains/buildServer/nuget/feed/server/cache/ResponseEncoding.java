@@ -0,0 +1,111 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.cache;
+
+import jetbrains.buildServer.util.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+
+/**
+ * Content encodings of cached responses.
+ */
+public enum ResponseEncoding {
+  GZIP("gzip"),
+  DEFLATE("deflate"),
+  IDENTITY("identity");
+
+  private final String myName;
+
+  ResponseEncoding(@NotNull final String name) {
+    myName = name;
+  }
+
+  @NotNull
+  public String getName() {
+    return myName;
+  }
+
+  /**
+   * Selects the response encoding by the Accept-Encoding request header.
+   * Gzip is preferred among equally acceptable encodings since it is stored
+   * in the cache, requests without the header get the identity encoding.
+   *
+   * @param acceptEncoding  is an Accept-Encoding header value.
+   * @param deflateEnabled  whether deflate encoding could be used.
+   * @return response encoding.
+   */
+  @NotNull
+  public static ResponseEncoding negotiate(@Nullable final String acceptEncoding, final boolean deflateEnabled) {
+    if (StringUtil.isEmptyOrSpaces(acceptEncoding)) {
+      return IDENTITY;
+    }
+
+    float gzip = -1;
+    float deflate = -1;
+    float identity = -1;
+    float any = -1;
+    for (String coding : acceptEncoding.split(",")) {
+      final int separator = coding.indexOf(';');
+      final String name = (separator < 0 ? coding : coding.substring(0, separator)).trim().toLowerCase(Locale.ENGLISH);
+      final float quality = separator < 0 ? 1 : getQuality(coding.substring(separator + 1));
+      switch (name) {
+        case "gzip":
+        case "x-gzip":
+          gzip = Math.max(gzip, quality);
+          break;
+        case "deflate":
+          deflate = Math.max(deflate, quality);
+          break;
+        case "identity":
+          identity = Math.max(identity, quality);
+          break;
+        case "*":
+          any = Math.max(any, quality);
+          break;
+      }
+    }
+
+    if (gzip < 0) gzip = any;
+    if (deflate < 0) deflate = any;
+    if (identity < 0) identity = any < 0 ? 1 : any;
+    if (!deflateEnabled) deflate = 0;
+
+    if (gzip > 0 && gzip >= deflate && gzip >= identity) {
+      return GZIP;
+    }
+    if (deflate > 0 && deflate >= identity) {
+      return DEFLATE;
+    }
+    return IDENTITY;
+  }
+
+  private static float getQuality(@NotNull final String parameters) {
+    for (String parameter : parameters.split(";")) {
+      final String value = parameter.trim();
+      if (value.startsWith("q=") || value.startsWith("Q=")) {
+        try {
+          return Float.parseFloat(value.substring(2).trim());
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+}
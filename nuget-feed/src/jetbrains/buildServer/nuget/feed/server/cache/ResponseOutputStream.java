@@ -22,6 +22,7 @@ import javax.servlet.ServletOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -33,7 +34,17 @@ public class ResponseOutputStream extends ServletOutputStream {
   private final AtomicBoolean myClosed = new AtomicBoolean(false);
 
   public ResponseOutputStream(@NotNull final OutputStream stream) throws IOException {
-    myStream = new GZIPOutputStream(stream);
+    this(stream, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param stream is a target stream.
+   * @param level  is a gzip compression level.
+   */
+  public ResponseOutputStream(@NotNull final OutputStream stream, final int level) throws IOException {
+    myStream = new GZIPOutputStream(stream, 8192) {{
+      def.setLevel(level);
+    }};
   }
 
   @Override
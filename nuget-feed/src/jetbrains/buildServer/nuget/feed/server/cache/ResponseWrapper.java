@@ -16,6 +16,7 @@
 
 package jetbrains.buildServer.nuget.feed.server.cache;
 
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import org.jetbrains.annotations.NotNull;
 
 import javax.servlet.ServletOutputStream;
@@ -27,6 +28,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 /**
  * Created by Eugene Petrenko (eugene.petrenko@gmail.com)
@@ -41,7 +43,8 @@ public class ResponseWrapper extends HttpServletResponseWrapper {
 
   public ResponseWrapper(@NotNull final HttpServletResponse response) throws IOException {
     super(response);
-    myOutput = new ResponseOutputStream(myCache);
+    myOutput = new ResponseOutputStream(myCache,
+      TeamCityProperties.getInteger("teamcity.nuget.feed.cache.compression.level", Deflater.DEFAULT_COMPRESSION));
     myWriter = new PrintWriter(new OutputStreamWriter(myOutput, "utf-8"), false);
   }
 
@@ -44,15 +44,18 @@ public class NuGetFeedController extends BaseController {
   private final NuGetFeedProvider myFeedProvider;
   private final NuGetServerSettings mySettings;
   private final RecentNuGetRequests myRequestsList;
+  private final NuGetFeedETags myETags;
 
   public NuGetFeedController(@NotNull final WebControllerManager web,
                              @NotNull final NuGetServerSettings settings,
                              @NotNull final RecentNuGetRequests requestsList,
-                             @NotNull final NuGetFeedProvider feedProvider) {
+                             @NotNull final NuGetFeedProvider feedProvider,
+                             @NotNull final NuGetFeedETags eTags) {
     mySettings = settings;
     myRequestsList = requestsList;
     myNuGetPath = settings.getNuGetFeedControllerPath();
     myFeedProvider = feedProvider;
+    myETags = eTags;
 
     setSupportedMethods(HttpMethod.GET, HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE);
     web.registerController(myNuGetPath + "/**", this);
@@ -95,7 +98,17 @@ public class NuGetFeedController extends BaseController {
       // error response according to OData spec for unsupported operations (modification operations)
       response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, UNSUPPORTED_REQUEST);
     } else {
-      feedHandler.handleRequest(requestWrapper, response);
+      // unchanged responses are confirmed without processing of the OData request
+      final String eTag = myETags.getETag(requestWrapper, feedHandler);
+      if (eTag != null) {
+        response.setHeader("ETag", eTag);
+      }
+
+      if (eTag != null && NuGetFeedETags.isNotModified(requestWrapper, eTag)) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      } else {
+        feedHandler.handleRequest(requestWrapper, response);
+      }
     }
 
     myRequestsList.reportFeedRequestFinished(pathAndQuery, new Date().getTime() - startTime);
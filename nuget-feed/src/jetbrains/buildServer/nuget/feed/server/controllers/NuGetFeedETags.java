@@ -0,0 +1,130 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.controllers;
+
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndex;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.serverSide.auth.AuthorityHolder;
+import jetbrains.buildServer.serverSide.auth.Permission;
+import jetbrains.buildServer.serverSide.auth.Permissions;
+import jetbrains.buildServer.serverSide.auth.SecurityContext;
+import jetbrains.buildServer.users.User;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+
+/**
+ * Computes entity tags of feed responses.
+ *
+ * Tag combines packages index generation, fingerprint of projects
+ * visible to the user and the request, so it changes whenever
+ * the response content could change.
+ */
+public class NuGetFeedETags {
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final PackagesIndex myIndex;
+  private final SecurityContext mySecurityContext;
+
+  public NuGetFeedETags(@NotNull final PackagesIndex index,
+                        @NotNull final SecurityContext securityContext) {
+    myIndex = index;
+    mySecurityContext = securityContext;
+  }
+
+  /**
+   * @param request is a feed request.
+   * @param handler is a feed handler which serves the request.
+   * @return strong entity tag or null if the response should not be tagged.
+   */
+  @Nullable
+  public String getETag(@NotNull final HttpServletRequest request, @NotNull final NuGetFeedHandler handler) {
+    if (!TeamCityProperties.getBooleanOrTrue("teamcity.nuget.feed.etags.enabled")) {
+      return null;
+    }
+
+    final String method = request.getMethod();
+    if (!"GET".equals(method) && !"HEAD".equals(method)) {
+      return null;
+    }
+
+    final long generation = myIndex.getGeneration();
+    long hash = FNV_OFFSET;
+    hash = hash(hash, handler.getClass().getName());
+    hash = hash(hash, String.valueOf(request.getRequestURL()));
+    hash = hash(hash, request.getQueryString());
+    hash = hash(hash, request.getHeader("Accept"));
+    hash = hash(hash, request.getHeader("Accept-Encoding"));
+    hash = hash ^ getPermissionsFingerprint(mySecurityContext.getAuthorityHolder());
+
+    return "\"" + Long.toHexString(generation) + "-" + Long.toHexString(hash) + "\"";
+  }
+
+  /**
+   * @param request is a feed request.
+   * @param eTag    is an entity tag of the current response.
+   * @return whether If-None-Match header contains the tag.
+   */
+  public static boolean isNotModified(@NotNull final HttpServletRequest request, @NotNull final String eTag) {
+    final String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch == null) {
+      return false;
+    }
+
+    for (String tag : ifNoneMatch.split(",")) {
+      String value = tag.trim();
+      if (value.startsWith("W/")) {
+        value = value.substring(2);
+      }
+      if (value.equals(eTag) || value.equals("*")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Feed contains only packages from projects the user could view.
+   */
+  private static long getPermissionsFingerprint(@NotNull final AuthorityHolder authorityHolder) {
+    final User user = authorityHolder.getAssociatedUser();
+    long fingerprint = hash(FNV_OFFSET, user != null ? String.valueOf(user.getId()) : null);
+
+    // sum does not depend on the projects order
+    long projects = 0;
+    for (Map.Entry<String, Permissions> entry : authorityHolder.getProjectsPermissions().entrySet()) {
+      if (entry.getValue().contains(Permission.VIEW_PROJECT)) {
+        projects += hash(FNV_OFFSET, entry.getKey()) * FNV_PRIME;
+      }
+    }
+
+    return fingerprint ^ projects;
+  }
+
+  private static long hash(long hash, @Nullable final String value) {
+    if (value != null) {
+      for (int i = 0; i < value.length(); i++) {
+        hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+      }
+    }
+    // separator keeps adjacent values distinct
+    return (hash ^ 0xffff) * FNV_PRIME;
+  }
+}
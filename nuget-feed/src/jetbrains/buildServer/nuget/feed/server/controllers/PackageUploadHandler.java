@@ -25,6 +25,7 @@ import jetbrains.buildServer.nuget.feed.server.NuGetFeedConstants;
 import jetbrains.buildServer.nuget.feed.server.NuGetUtils;
 import jetbrains.buildServer.nuget.feed.server.cache.ResponseCacheReset;
 import jetbrains.buildServer.nuget.feed.server.index.PackageAnalyzer;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndexUpdater;
 import jetbrains.buildServer.nuget.feed.server.index.impl.ODataDataFormat;
 import jetbrains.buildServer.serverSide.RunningBuildEx;
 import jetbrains.buildServer.serverSide.RunningBuildsCollection;
@@ -66,15 +67,18 @@ public class PackageUploadHandler implements NuGetFeedHandler {
   private final MetadataStorage myStorage;
   private final PackageAnalyzer myPackageAnalyzer;
   private final ResponseCacheReset myCacheReset;
+  private final PackagesIndexUpdater myIndexUpdater;
 
   public PackageUploadHandler(@NotNull final RunningBuildsCollection runningBuilds,
                               @NotNull final MetadataStorage storage,
                               @NotNull final PackageAnalyzer packageAnalyzer,
-                              @NotNull final ResponseCacheReset cacheReset) {
+                              @NotNull final ResponseCacheReset cacheReset,
+                              @NotNull final PackagesIndexUpdater indexUpdater) {
     myRunningBuilds = runningBuilds;
     myStorage = storage;
     myPackageAnalyzer = packageAnalyzer;
     myCacheReset = cacheReset;
+    myIndexUpdater = indexUpdater;
   }
 
   @Override
@@ -225,6 +229,11 @@ public class PackageUploadHandler implements NuGetFeedHandler {
       throw new PackageLoadException("Lack of Id or Version in NuGet package specification");
     }
 
+    // Package hash is calculated while analyzing the package contents
+    if (StringUtil.isEmptyOrSpaces(metadata.get(PACKAGE_HASH))) {
+      throw new PackageLoadException("Failed to compute NuGet package hash");
+    }
+
     final String key = NuGetUtils.getPackageKey(id, version);
     // Packages must not exists in the feed if `replace=true` query parameter was not specified
     if (!replace && myStorage.getEntriesByKey(NUGET_PROVIDER_ID, key).hasNext()) {
@@ -241,14 +250,6 @@ public class PackageUploadHandler implements NuGetFeedHandler {
     metadata.put(LAST_UPDATED, created);
     metadata.put(PUBLISHED, created);
 
-    try {
-      inputStream = file.getInputStream();
-      metadata.put(PACKAGE_HASH, myPackageAnalyzer.getSha512Hash(inputStream));
-      metadata.put(PACKAGE_HASH_ALGORITHM, PackageAnalyzer.SHA512);
-    } finally {
-      FileUtil.close(inputStream);
-    }
-
     LOG.info(String.format("Publishing nuget package %s:%s at path '%s' as a build artifact %s",
       id, version, path, LogUtil.describe(build)));
     try {
@@ -262,14 +263,19 @@ public class PackageUploadHandler implements NuGetFeedHandler {
       FileUtil.close(inputStream);
     }
 
+    final long buildId = build.getBuildId();
+    final boolean isPersonal = build.isPersonal();
     try {
-      myStorage.addBuildEntry(build.getBuildId(), NUGET_PROVIDER_ID, key, metadata, !build.isPersonal());
+      myStorage.addBuildEntry(buildId, NUGET_PROVIDER_ID, key, metadata, !isPersonal);
     } catch (Throwable e) {
       LOG.warnAndDebugDetails(String.format("Failed to update %s provider metadata for build %s. Error: %s",
         NUGET_PROVIDER_ID, build, e.getMessage()), e);
       throw e;
     }
 
-    myCacheReset.resetCache();
+    if (!isPersonal) {
+      myIndexUpdater.addPackage(buildId, key, metadata);
+    }
+    myCacheReset.resetCache(id);
   }
 }
@@ -1,16 +1,12 @@
 package jetbrains.buildServer.nuget.feed.server.index;
 
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.util.containers.SortedList;
 import jetbrains.buildServer.nuget.feed.server.NuGetServerSettings;
 import jetbrains.buildServer.nuget.feed.server.NuGetUtils;
-import jetbrains.buildServer.nuget.feed.server.index.impl.PackagesIndexImpl;
-import jetbrains.buildServer.nuget.feed.server.index.impl.SemanticVersionsComparators;
 import jetbrains.buildServer.nuget.server.version.FrameworkConstraints;
 import jetbrains.buildServer.nuget.server.version.SemanticVersion;
 import jetbrains.buildServer.nuget.server.version.VersionConstraint;
 import jetbrains.buildServer.nuget.server.version.VersionUtility;
-import jetbrains.buildServer.util.CollectionsUtil;
 import jetbrains.buildServer.util.StringUtil;
 import org.jetbrains.annotations.NotNull;
 
@@ -38,6 +34,11 @@ public class NuGetFeed {
     return myIndex.getAll();
   }
 
+  @NotNull
+  public List<NuGetIndexEntry> getLatestVersions(final boolean includePrerelease) {
+    return myIndex.getLatestVersions(includePrerelease);
+  }
+
   @NotNull
   public List<NuGetIndexEntry> find(@NotNull final Map<String, String> query) {
     if (query.size() == 2 && query.containsKey(ID) && query.containsKey(VERSION)) {
@@ -68,54 +69,18 @@ public class NuGetFeed {
     final String searchDetails = builder.toString();
     LOG.debug(searchDetails);
 
-    final List<NuGetIndexEntry> foundPackages = searchPackages(searchTerm,
-      filterByTargetFramework ? targetFramework : "",
+    final List<NuGetIndexEntry> packages = myIndex.search(searchTerm,
+      filterByTargetFramework ? requestedFrameworks : Collections.emptySet(),
       includePrerelease
     );
-    final List<NuGetIndexEntry> packages = CollectionsUtil.filterCollection(foundPackages, nugetPackage -> {
-      final Map<String, String> nugetPackageAttributes = nugetPackage.getAttributes();
-      final String id = nugetPackageAttributes.get(ID);
-      final String version = nugetPackageAttributes.get(VERSION);
-      final String isPrerelease = nugetPackageAttributes.get(IS_PRERELEASE);
-      final String frameworkConstraints = nugetPackageAttributes.get(PackagesIndex.TEAMCITY_FRAMEWORK_CONSTRAINTS);
-      if (!includePrerelease && Boolean.parseBoolean(isPrerelease)) {
-        LOG.debug(String.format("Skipped package (id:%s, version:%s) since its pre-released.", id, version));
-        return false;
-      }
-
-      if (filterByTargetFramework) {
-        final Set<String> packageFrameworkConstraints = FrameworkConstraints.convertFromString(frameworkConstraints);
-        if (!VersionUtility.isPackageCompatibleWithFrameworks(requestedFrameworks, packageFrameworkConstraints)) {
-          LOG.debug(String.format("Skipped package (id:%s, version:%s) since it doesn't match requested framework constraints.", id, version));
-          return false;
-        }
-      }
-
-      return true;
-    });
 
     LOG.debug(String.format("Found %d packages while " + searchDetails, packages.size()));
     return packages;
   }
 
-  @NotNull
-  private List<NuGetIndexEntry> searchPackages(final String searchTerm, final String targetFramework, boolean includePrerelease) {
-    if (StringUtil.isEmpty(searchTerm)) {
-      if (StringUtil.isNotEmpty(targetFramework)) {
-        return myIndex.search(Collections.singletonList(PackagesIndex.TEAMCITY_FRAMEWORK_CONSTRAINTS), targetFramework);
-      }
-
-      if (!includePrerelease) {
-        return myIndex.find(CollectionsUtil.asMap(IS_PRERELEASE, "false"));
-      }
-    }
-
-    return myIndex.search(PackagesIndexImpl.PACKAGE_ATTRIBUTES_TO_SEARCH, searchTerm);
-  }
-
   @NotNull
   public List<NuGetIndexEntry> findPackagesById(@NotNull final String id) {
-    final List<NuGetIndexEntry> packages = myIndex.find(CollectionsUtil.asMap(ID, id));
+    final List<NuGetIndexEntry> packages = myIndex.getVersions(id);
     LOG.debug(String.format("Found %s packages for id %s", packages.size(), id));
 
     return packages;
@@ -136,11 +101,18 @@ public class NuGetFeed {
       return Collections.emptyList();
     }
 
+    // all requested packages are resolved at once, parsed values are shared between them
+    final Map<String, List<NuGetIndexEntry>> packageVersions = myIndex.getVersions(packageIds);
+    final Map<String, SemanticVersion> parsedVersions = new HashMap<>();
+    final Map<String, VersionConstraint> parsedConstraints = new HashMap<>();
+    final Map<String, Boolean> compatibleFrameworks = new HashMap<>();
+    final boolean filterByTargetFramework = myServerSettings.isFilteringByTargetFrameworkEnabled() && !targetFrameworks.isEmpty();
+
     final List<NuGetIndexEntry> packages = new ArrayList<>();
     for (int i = 0; i < packageIds.size(); i++) {
       final String requestedPackageId = packageIds.get(i);
       final String versionString = versions.get(i);
-      final SemanticVersion requestedVersion = SemanticVersion.valueOf(versionString);
+      final SemanticVersion requestedVersion = parsedVersions.computeIfAbsent(versionString, SemanticVersion::valueOf);
       if (requestedVersion == null) {
         LOG.warn("Failed to create valid semantic version from string " + versionString);
         continue;
@@ -149,73 +121,43 @@ public class NuGetFeed {
       VersionConstraint versionConstraint = null;
       if (i < versionConstraints.size()) {
         final String versionConstraintString = versionConstraints.get(i);
-        versionConstraint = VersionConstraint.valueOf(versionConstraintString);
-        if (versionConstraint == null) {
-          LOG.warn("Failed to create valid version constraint from string " + versionConstraintString);
+        if (parsedConstraints.containsKey(versionConstraintString)) {
+          versionConstraint = parsedConstraints.get(versionConstraintString);
+        } else {
+          versionConstraint = VersionConstraint.valueOf(versionConstraintString);
+          if (versionConstraint == null) {
+            LOG.warn("Failed to create valid version constraint from string " + versionConstraintString);
+          }
+          parsedConstraints.put(versionConstraintString, versionConstraint);
         }
       }
 
-      packages.addAll(getUpdateOfPackageWithId(includeAllVersions, includePrerelease, targetFrameworks, requestedPackageId, requestedVersion, versionConstraint));
-    }
-
-    LOG.debug(String.format("%d updated package(s) found", packages.size()));
-    return packages;
-  }
-
-  private Collection<NuGetIndexEntry> getUpdateOfPackageWithId(final boolean includeAllVersions,
-                                                               final boolean includePreRelease,
-                                                               final Set<String> frameworkConstraints,
-                                                               final String requestedPackageId,
-                                                               final SemanticVersion requestedVersion,
-                                                               final VersionConstraint versionConstraint) {
-    final Comparator<NuGetIndexEntry> comparator = Collections.reverseOrder(SemanticVersionsComparators.getEntriesComparator());
-    final List<NuGetIndexEntry> result = new SortedList<>(comparator);
-
-    final Map<String, String> query = new HashMap<>();
-    query.put(ID, requestedPackageId);
-    if (!includePreRelease) {
-      query.put(IS_PRERELEASE, "false");
-    }
+      final List<NuGetIndexEntry> entries = packageVersions.get(requestedPackageId.toLowerCase(Locale.ROOT));
+      if (entries == null) continue;
+
+      // versions are sorted in ascending order, so the first match is the latest one
+      for (int j = entries.size() - 1; j >= 0; j--) {
+        final NuGetIndexEntry indexEntry = entries.get(j);
+        final SemanticVersion entryVersion = indexEntry.getSemanticVersion();
+        if (entryVersion == null) continue;
+        if (requestedVersion.compareTo(entryVersion) >= 0) break;
+
+        final Map<String, String> attributes = indexEntry.getAttributes();
+        if (!includePrerelease && Boolean.parseBoolean(attributes.get(IS_PRERELEASE))) continue;
+        if (versionConstraint != null && !versionConstraint.satisfies(entryVersion)) continue;
+        if (filterByTargetFramework && !compatibleFrameworks.computeIfAbsent(
+          attributes.get(PackagesIndex.TEAMCITY_FRAMEWORK_CONSTRAINTS),
+          constraints -> VersionUtility.isPackageCompatibleWithFrameworks(targetFrameworks, FrameworkConstraints.convertFromString(constraints)))) {
+          continue;
+        }
 
-    for (NuGetIndexEntry indexEntry : myIndex.find(query)) {
-      if (match(indexEntry, requestedVersion, includePreRelease, frameworkConstraints, versionConstraint)) {
         LOG.debug(String.format("Matched indexed package found for id:%s version:%s. %s", requestedPackageId, requestedVersion, indexEntry));
-        result.add(indexEntry);
+        packages.add(indexEntry);
+        if (!includeAllVersions) break;
       }
     }
 
-    if (includeAllVersions) {
-      return result;
-    }
-
-    if (result.isEmpty()) {
-      return Collections.emptyList();
-    }
-
-    return Collections.singletonList(result.get(0));
-  }
-
-  private boolean match(final NuGetIndexEntry indexEntry,
-                        final SemanticVersion requestedVersion,
-                        final boolean includePreRelease,
-                        final Set<String> targetFrameworks,
-                        final VersionConstraint versionConstraint) {
-    final Map<String, String> indexEntryAttributes = indexEntry.getAttributes();
-    if (!includePreRelease && Boolean.parseBoolean(indexEntryAttributes.get(IS_PRERELEASE))) {
-      return false;
-    }
-
-    if (myServerSettings.isFilteringByTargetFrameworkEnabled()) {
-      final String frameworkConstraints = indexEntryAttributes.get(PackagesIndex.TEAMCITY_FRAMEWORK_CONSTRAINTS);
-      final Set<String> packageFrameworkConstraints = FrameworkConstraints.convertFromString(frameworkConstraints);
-      if (!targetFrameworks.isEmpty() && !VersionUtility.isPackageCompatibleWithFrameworks(targetFrameworks, packageFrameworkConstraints)) {
-        return false;
-      }
-    }
-
-    final SemanticVersion entryVersion = SemanticVersion.valueOf(indexEntry.getPackageInfo().getVersion());
-    return entryVersion != null &&
-      (versionConstraint == null || versionConstraint.satisfies(entryVersion)) &&
-      requestedVersion.compareTo(entryVersion) < 0;
+    LOG.debug(String.format("%d updated package(s) found", packages.size()));
+    return packages;
   }
 }
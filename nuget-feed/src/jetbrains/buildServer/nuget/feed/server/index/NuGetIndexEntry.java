@@ -17,7 +17,9 @@
 package jetbrains.buildServer.nuget.feed.server.index;
 
 import jetbrains.buildServer.nuget.common.NuGetPackageInfo;
+import jetbrains.buildServer.nuget.server.version.SemanticVersion;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Map;
 
@@ -31,6 +33,7 @@ public class NuGetIndexEntry {
 
   @NotNull private final String myKey;
   @NotNull private final Map<String, String> myAttributes;
+  private volatile SemanticVersion mySemanticVersion;
 
   public NuGetIndexEntry(@NotNull String key,
                          @NotNull Map<String, String> attributes) {
@@ -58,6 +61,19 @@ public class NuGetIndexEntry {
     return new NuGetPackageInfo(myAttributes.get(ID), myAttributes.get(VERSION));
   }
 
+  /**
+   * @return parsed package version, it is parsed once per entry
+   */
+  @Nullable
+  public SemanticVersion getSemanticVersion() {
+    SemanticVersion version = mySemanticVersion;
+    if (version == null) {
+      version = SemanticVersion.valueOf(myAttributes.get(VERSION));
+      mySemanticVersion = version;
+    }
+    return version;
+  }
+
   @Override
   public String toString() {
     return "NuGetIndexEntry{" +
@@ -27,9 +27,13 @@ public class NuGetPackagesIndexer {
 
   @NotNull
   private final MetadataIndexerService myMetadataIndexerService;
+  @NotNull
+  private final PackagesIndexUpdater myIndexUpdater;
 
-  public NuGetPackagesIndexer(@NotNull final MetadataIndexerService metadataIndexerService) {
+  public NuGetPackagesIndexer(@NotNull final MetadataIndexerService metadataIndexerService,
+                              @NotNull final PackagesIndexUpdater indexUpdater) {
     myMetadataIndexerService = metadataIndexerService;
+    myIndexUpdater = indexUpdater;
   }
 
   /**
@@ -37,5 +41,6 @@ public class NuGetPackagesIndexer {
    */
   public void reindexAll() {
     myMetadataIndexerService.reindexProviderData(NuGetArtifactsMetadataProvider.NUGET_PROVIDER_ID);
+    myIndexUpdater.resetIndex();
   }
 }
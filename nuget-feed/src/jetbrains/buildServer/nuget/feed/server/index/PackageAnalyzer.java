@@ -19,6 +19,7 @@ package jetbrains.buildServer.nuget.feed.server.index;
 import jetbrains.buildServer.nuget.common.PackageLoadException;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
 import java.io.InputStream;
 import java.util.Map;
 
@@ -28,9 +29,18 @@ import java.util.Map;
 public interface PackageAnalyzer {
     String SHA512 = "SHA512";
 
+    /**
+     * Reads package metadata and SHA-512 hash in a single pass over the content.
+     */
     @NotNull
     Map<String, String> analyzePackage(@NotNull InputStream content) throws PackageLoadException;
 
+    /**
+     * Reads package metadata from a local package file, reusing results for byte-identical packages.
+     */
+    @NotNull
+    Map<String, String> analyzePackage(@NotNull File file) throws PackageLoadException;
+
     @NotNull
     String getSha512Hash(@NotNull InputStream content) throws PackageLoadException;
 }
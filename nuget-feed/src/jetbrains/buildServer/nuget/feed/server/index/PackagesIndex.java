@@ -21,6 +21,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
@@ -42,9 +43,48 @@ public interface PackagesIndex {
   @NotNull
   List<NuGetIndexEntry> find(@NotNull Map<String, String> query);
 
+  /**
+   * @param searchTerm        search query, all packages are returned for empty one
+   * @param targetFrameworks  frameworks packages should be compatible with, no constraints if empty
+   * @param includePrerelease whether pre-release packages should be returned
+   * @return found packages ordered by relevance
+   */
   @NotNull
-  List<NuGetIndexEntry> search(@NotNull Collection<String> keys, @NotNull String value);
+  List<NuGetIndexEntry> search(@NotNull String searchTerm, @NotNull Set<String> targetFrameworks, boolean includePrerelease);
 
   @NotNull
   List<NuGetIndexEntry> getByKey(String key);
+
+  /**
+   * @param packageId package id, case insensitive
+   * @return all versions of the package sorted in ascending order
+   */
+  @NotNull
+  List<NuGetIndexEntry> getVersions(@NotNull String packageId);
+
+  /**
+   * @param packageIds package ids, case insensitive
+   * @return all versions of each package sorted in ascending order by lower-cased package id
+   */
+  @NotNull
+  Map<String, List<NuGetIndexEntry>> getVersions(@NotNull Collection<String> packageIds);
+
+  /**
+   * @param includePrerelease whether pre-release versions could be selected
+   * @return the latest accessible version of each package
+   */
+  @NotNull
+  List<NuGetIndexEntry> getLatestVersions(boolean includePrerelease);
+
+  /**
+   * @return counters of all indexed packages regardless of access rights
+   */
+  @NotNull
+  PackagesIndexStatistics getStatistics();
+
+  /**
+   * @return index generation, it is changed on each packages modification and
+   * starts from a random value, so generations of different index instances do not match
+   */
+  long getGeneration();
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.index;
+
+/**
+ * Snapshot of the packages index counters.
+ */
+public class PackagesIndexStatistics {
+
+  private final long myPackagesCount;
+  private final long myPackageIdsCount;
+  private final long myBuildsCount;
+  private final long myPackagesSize;
+  private final long myPrereleasePackagesCount;
+
+  public PackagesIndexStatistics(final long packagesCount,
+                                 final long packageIdsCount,
+                                 final long buildsCount,
+                                 final long packagesSize,
+                                 final long prereleasePackagesCount) {
+    myPackagesCount = packagesCount;
+    myPackageIdsCount = packageIdsCount;
+    myBuildsCount = buildsCount;
+    myPackagesSize = packagesSize;
+    myPrereleasePackagesCount = prereleasePackagesCount;
+  }
+
+  public long getPackagesCount() {
+    return myPackagesCount;
+  }
+
+  /**
+   * @return number of unique package ids, case insensitive.
+   */
+  public long getPackageIdsCount() {
+    return myPackageIdsCount;
+  }
+
+  public long getBuildsCount() {
+    return myBuildsCount;
+  }
+
+  /**
+   * @return total size of packages in bytes.
+   */
+  public long getPackagesSize() {
+    return myPackagesSize;
+  }
+
+  public long getPrereleasePackagesCount() {
+    return myPrereleasePackagesCount;
+  }
+
+  /**
+   * @return share of pre-release packages in percents.
+   */
+  public int getPrereleasePercentage() {
+    return myPackagesCount == 0 ? 0 : (int) (myPrereleasePackagesCount * 100 / myPackagesCount);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Keeps resident packages index in sync with the metadata storage.
+ */
+public interface PackagesIndexUpdater {
+
+  /**
+   * Registers package which was just written into the metadata storage.
+   *
+   * @param buildId  build which contains the package
+   * @param key      package key
+   * @param metadata package metadata
+   */
+  void addPackage(long buildId, @NotNull String key, @NotNull Map<String, String> metadata);
+
+  /**
+   * Removes all packages of given builds from the index.
+   *
+   * @param buildIds ids of removed builds
+   */
+  void removeBuilds(@NotNull Collection<Long> buildIds);
+
+  /**
+   * Drops resident index, it will be reloaded from the metadata storage on next access.
+   */
+  void resetIndex();
+}
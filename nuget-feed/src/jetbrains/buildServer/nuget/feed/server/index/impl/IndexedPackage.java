@@ -0,0 +1,139 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.index.impl;
+
+import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import jetbrains.buildServer.nuget.server.version.SemanticVersion;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+import java.util.Map;
+
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+import static jetbrains.buildServer.nuget.feed.server.index.PackagesIndex.TEAMCITY_BUILD_TYPE_ID;
+
+/**
+ * Package entry stored in the resident packages index.
+ */
+public class IndexedPackage {
+
+  private final long myBuildId;
+  private final String myId;
+  private final String myLowerCaseId;
+  private final String myVersion;
+  private final SemanticVersion mySemanticVersion;
+  private final boolean myIsPrerelease;
+  private final String myBuildTypeId;
+  private volatile NuGetIndexEntry myEntry;
+
+  public IndexedPackage(final long buildId, @NotNull final NuGetIndexEntry entry) {
+    final Map<String, String> attributes = entry.getAttributes();
+    myBuildId = buildId;
+    myId = attributes.get(ID);
+    myLowerCaseId = myId.toLowerCase(Locale.ROOT);
+    myVersion = attributes.get(VERSION);
+    mySemanticVersion = SemanticVersion.valueOf(myVersion);
+    myIsPrerelease = Boolean.parseBoolean(attributes.get(IS_PRERELEASE));
+    myBuildTypeId = attributes.get(TEAMCITY_BUILD_TYPE_ID);
+    myEntry = entry;
+  }
+
+  @NotNull
+  public String getKey() {
+    return myEntry.getKey();
+  }
+
+  public long getBuildId() {
+    return myBuildId;
+  }
+
+  @NotNull
+  public String getId() {
+    return myId;
+  }
+
+  /**
+   * @return package id used as a key in the index, since ids are case insensitive.
+   */
+  @NotNull
+  public String getLowerCaseId() {
+    return myLowerCaseId;
+  }
+
+  @NotNull
+  public String getVersion() {
+    return myVersion;
+  }
+
+  @Nullable
+  public SemanticVersion getSemanticVersion() {
+    return mySemanticVersion;
+  }
+
+  public boolean isPrerelease() {
+    return myIsPrerelease;
+  }
+
+  @NotNull
+  public String getBuildTypeId() {
+    return myBuildTypeId;
+  }
+
+  @NotNull
+  public Map<String, String> getAttributes() {
+    return myEntry.getAttributes();
+  }
+
+  /**
+   * Returns index entry with given latest version flags, the cached
+   * entry is reused when its flags are the same.
+   */
+  @NotNull
+  public NuGetIndexEntry getEntry(final boolean isLatest, final boolean isAbsoluteLatest) {
+    final NuGetIndexEntry entry = myEntry;
+    if (hasFlags(entry, isLatest, isAbsoluteLatest)) {
+      return entry;
+    }
+
+    final PackageAttributes attributes = PackageAttributes.create(entry.getAttributes());
+    return new NuGetIndexEntry(entry.getKey(), attributes.withLatestFlags(isLatest, isAbsoluteLatest));
+  }
+
+  /**
+   * Updates cached entry to have given latest version flags.
+   */
+  public void setLatestFlags(final boolean isLatest, final boolean isAbsoluteLatest) {
+    myEntry = getEntry(isLatest, isAbsoluteLatest);
+  }
+
+  private static boolean hasFlags(@NotNull final NuGetIndexEntry entry,
+                                  final boolean isLatest,
+                                  final boolean isAbsoluteLatest) {
+    final Map<String, String> attributes = entry.getAttributes();
+    return isLatest == Boolean.parseBoolean(attributes.get(IS_LATEST_VERSION)) &&
+      isAbsoluteLatest == Boolean.parseBoolean(attributes.get(IS_ABSOLUTE_LATEST_VERSION));
+  }
+
+  @Override
+  public String toString() {
+    return "IndexedPackage{" +
+      "myKey='" + getKey() + '\'' +
+      ", myBuildId=" + myBuildId +
+      '}';
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.index.impl;
+
+import com.intellij.openapi.diagnostic.Logger;
+import jetbrains.buildServer.nuget.feed.server.index.NuGetServerStatisticsProvider;
+import jetbrains.buildServer.serverSide.*;
+import jetbrains.buildServer.serverSide.metadata.BuildMetadataEntry;
+import jetbrains.buildServer.serverSide.metadata.MetadataStorage;
+import jetbrains.buildServer.util.EventDispatcher;
+import jetbrains.buildServer.util.NamedDaemonThreadFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+import static jetbrains.buildServer.nuget.feed.server.index.PackagesIndex.TEAMCITY_BUILD_TYPE_ID;
+import static jetbrains.buildServer.nuget.feed.server.index.impl.NuGetArtifactsMetadataProvider.NUGET_PROVIDER_ID;
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+
+/**
+ * Rewrites legacy nuget metadata entries which lack build type id and creation
+ * dates, so they could be indexed without loading builds.
+ *
+ * Migration runs once in background after server startup. Converted entries
+ * are not selected again, so interrupted migration is resumed after restart.
+ */
+public class LegacyEntriesMigration implements NuGetServerStatisticsProvider {
+
+  private static final Logger LOG = Logger.getInstance(LegacyEntriesMigration.class.getName());
+
+  private static final String BATCH_SIZE_PROP = "teamcity.nuget.feed.migration.batch.size";
+  private static final String BATCH_PAUSE_PROP = "teamcity.nuget.feed.migration.batch.pause";
+  private static final int DEFAULT_BATCH_SIZE = 100;
+  private static final int DEFAULT_BATCH_PAUSE = 1000;
+
+  private static final String COMPLETED_STATE = "completed";
+  private static final String MIGRATED_STATE = "migrated";
+  private static final String SKIPPED_STATE = "skipped";
+
+  private static final String TOTAL_STAT = "Number of legacy items to migrate";
+  private static final String MIGRATED_STAT = "Number of migrated legacy items";
+  private static final String SKIPPED_STAT = "Number of skipped legacy items";
+
+  private final MetadataStorage myStorage;
+  private final BuildsManager myBuilds;
+  private final File myStateFile;
+  private volatile boolean myIsCompleted = false;
+  private volatile long myTotal = 0;
+  private volatile long myMigrated = 0;
+  private volatile long mySkipped = 0;
+  private volatile Thread myThread;
+
+  public LegacyEntriesMigration(@NotNull final MetadataStorage storage,
+                                @NotNull final BuildsManager builds,
+                                @NotNull final ServerPaths paths,
+                                @NotNull final SecurityContextEx securityContext,
+                                @NotNull final EventDispatcher<BuildServerListener> dispatcher) {
+    this(storage, builds, new File(paths.getPluginDataDirectory(), "nuget/legacy-entries-migration.properties"));
+    dispatcher.addListener(new BuildServerAdapter() {
+      @Override
+      public void serverStartup() {
+        super.serverStartup();
+        start(securityContext);
+      }
+
+      @Override
+      public void serverShutdown() {
+        super.serverShutdown();
+        stop();
+      }
+    });
+  }
+
+  public LegacyEntriesMigration(@NotNull final MetadataStorage storage,
+                                @NotNull final BuildsManager builds,
+                                @NotNull final File stateFile) {
+    myStorage = storage;
+    myBuilds = builds;
+    myStateFile = stateFile;
+    loadState();
+  }
+
+  /**
+   * @return true when all legacy entries were migrated, entries of removed builds are ignored.
+   */
+  public boolean isCompleted() {
+    return myIsCompleted;
+  }
+
+  /**
+   * Migrates legacy entries in the current thread.
+   */
+  public void migrate() {
+    if (myIsCompleted) return;
+
+    final long startTime = System.currentTimeMillis();
+    final List<BuildMetadataEntry> entries = new ArrayList<>();
+    final Iterator<BuildMetadataEntry> iterator = myStorage.getAllEntries(NUGET_PROVIDER_ID);
+    while (iterator.hasNext()) {
+      final BuildMetadataEntry entry = iterator.next();
+      if (entry.getMetadata().get(TEAMCITY_BUILD_TYPE_ID) == null) {
+        entries.add(entry);
+      }
+    }
+
+    myTotal = entries.size();
+    if (!entries.isEmpty()) {
+      LOG.info(String.format("Migrating %d legacy NuGet packages metadata entries", entries.size()));
+    }
+
+    final int batchSize = Math.max(1, TeamCityProperties.getInteger(BATCH_SIZE_PROP, DEFAULT_BATCH_SIZE));
+    final long batchPause = TeamCityProperties.getInteger(BATCH_PAUSE_PROP, DEFAULT_BATCH_PAUSE);
+    int failed = 0;
+    for (int i = 0; i < entries.size(); i++) {
+      if (Thread.currentThread().isInterrupted()) {
+        LOG.info("Legacy NuGet packages metadata migration was interrupted, it will be resumed after server restart");
+        return;
+      }
+
+      final BuildMetadataEntry entry = entries.get(i);
+      try {
+        if (migrate(entry)) {
+          myMigrated++;
+        } else {
+          mySkipped++;
+        }
+      } catch (Exception e) {
+        failed++;
+        LOG.warnAndDebugDetails("Failed to migrate legacy NuGet package metadata entry " + entry, e);
+      }
+
+      if ((i + 1) % batchSize == 0 && i + 1 < entries.size()) {
+        LOG.info(String.format("Migrated %d of %d legacy NuGet packages metadata entries", i + 1, entries.size()));
+        try {
+          Thread.sleep(batchPause);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    if (failed > 0) {
+      LOG.warn(String.format("Failed to migrate %d legacy NuGet packages metadata entries, migration will be retried after server restart", failed));
+      return;
+    }
+
+    myIsCompleted = true;
+    saveState();
+    if (!entries.isEmpty()) {
+      LOG.info(String.format("Migrated %d legacy NuGet packages metadata entries, skipped %d entries of removed builds in %d ms",
+        myMigrated, mySkipped, System.currentTimeMillis() - startTime));
+    }
+  }
+
+  @NotNull
+  @Override
+  public Map<String, Long> getIndexStatistics() {
+    final Map<String, Long> stats = new HashMap<>();
+    stats.put(TOTAL_STAT, myTotal);
+    stats.put(MIGRATED_STAT, myMigrated);
+    stats.put(SKIPPED_STAT, mySkipped);
+    return stats;
+  }
+
+  private void start(@NotNull final SecurityContextEx securityContext) {
+    if (myIsCompleted) return;
+
+    final Thread thread = new NamedDaemonThreadFactory("NuGet Legacy Packages Migration").newThread(() -> {
+      try {
+        // builds of all projects have to be resolved, otherwise live builds would look removed
+        securityContext.runAsSystem(this::migrate);
+      } catch (Throwable e) {
+        LOG.warnAndDebugDetails("Failed to migrate legacy NuGet packages metadata", e);
+      }
+    });
+    thread.setPriority(Thread.MIN_PRIORITY);
+    myThread = thread;
+    thread.start();
+  }
+
+  private void stop() {
+    final Thread thread = myThread;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * @return false if the build of entry was removed.
+   * @throws IllegalStateException if the build could not be migrated yet.
+   */
+  private boolean migrate(@NotNull final BuildMetadataEntry entry) {
+    final SBuild build = myBuilds.findBuildInstanceById(entry.getBuildId());
+    if (build == null) return false;
+    if (!(build instanceof SFinishedBuild)) {
+      throw new IllegalStateException("Build " + build.getBuildId() + " is not finished");
+    }
+    final SFinishedBuild finishedBuild = (SFinishedBuild) build;
+
+    final Map<String, String> metadata = new HashMap<>(entry.getMetadata());
+    final String created = ODataDataFormat.formatDate(finishedBuild.getFinishDate());
+    metadata.put(TEAMCITY_BUILD_TYPE_ID, build.getBuildTypeId());
+    metadata.put(CREATED, created);
+    metadata.put(LAST_UPDATED, created);
+    metadata.put(PUBLISHED, created);
+    myStorage.addBuildEntry(build.getBuildId(), NUGET_PROVIDER_ID, entry.getKey(), metadata, !build.isPersonal());
+    return true;
+  }
+
+  private void loadState() {
+    if (!myStateFile.isFile()) return;
+
+    final Properties state = new Properties();
+    try (InputStream stream = new FileInputStream(myStateFile)) {
+      state.load(stream);
+      myIsCompleted = Boolean.parseBoolean(state.getProperty(COMPLETED_STATE));
+      myMigrated = Long.parseLong(state.getProperty(MIGRATED_STATE, "0"));
+      mySkipped = Long.parseLong(state.getProperty(SKIPPED_STATE, "0"));
+      myTotal = myMigrated + mySkipped;
+    } catch (IOException | NumberFormatException e) {
+      LOG.warnAndDebugDetails("Failed to read legacy NuGet packages migration state " + myStateFile, e);
+    }
+  }
+
+  private void saveState() {
+    final Properties state = new Properties();
+    state.setProperty(COMPLETED_STATE, String.valueOf(myIsCompleted));
+    state.setProperty(MIGRATED_STATE, String.valueOf(myMigrated));
+    state.setProperty(SKIPPED_STATE, String.valueOf(mySkipped));
+
+    try {
+      Files.createDirectories(myStateFile.getParentFile().toPath());
+      try (OutputStream stream = new FileOutputStream(myStateFile)) {
+        state.store(stream, "NuGet legacy packages metadata migration");
+      }
+    } catch (IOException e) {
+      LOG.warnAndDebugDetails("Failed to write legacy NuGet packages migration state " + myStateFile, e);
+    }
+  }
+}
@@ -23,6 +23,7 @@ import jetbrains.buildServer.nuget.feed.server.NuGetServerSettings;
 import jetbrains.buildServer.nuget.feed.server.NuGetUtils;
 import jetbrains.buildServer.nuget.feed.server.cache.ResponseCacheReset;
 import jetbrains.buildServer.nuget.feed.server.index.PackageAnalyzer;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndexUpdater;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.serverSide.SBuildType;
 import jetbrains.buildServer.serverSide.TeamCityProperties;
@@ -32,13 +33,16 @@ import jetbrains.buildServer.serverSide.impl.LogUtil;
 import jetbrains.buildServer.serverSide.metadata.BuildMetadataProvider;
 import jetbrains.buildServer.serverSide.metadata.MetadataStorageWriter;
 import jetbrains.buildServer.util.FileUtil;
+import jetbrains.buildServer.util.NamedDaemonThreadFactory;
 import jetbrains.buildServer.util.StringUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
 import static jetbrains.buildServer.nuget.feed.server.index.PackagesIndex.*;
@@ -53,17 +57,30 @@ public class NuGetArtifactsMetadataProvider implements BuildMetadataProvider {
 
   public static final String NUGET_PROVIDER_ID = "nuget";
   private static final String TEAMCITY_NUGET_INDEX_PACKAGES_PROP_NAME = "teamcity.nuget.index.packages";
+  private static final String TEAMCITY_NUGET_INDEX_THREADS_PROP_NAME = "teamcity.nuget.index.packages.threads";
+  private static final int DEFAULT_INDEX_THREADS = 4;
 
   private final ResponseCacheReset myReset;
   private final NuGetServerSettings myFeedSettings;
   private final PackageAnalyzer myPackageAnalyzer;
+  private final PackagesIndexUpdater myIndexUpdater;
+  private final ExecutorService myExecutor;
 
   public NuGetArtifactsMetadataProvider(@NotNull final ResponseCacheReset reset,
                                         @NotNull final NuGetServerSettings feedSettings,
-                                        @NotNull final PackageAnalyzer packageAnalyzer) {
+                                        @NotNull final PackageAnalyzer packageAnalyzer,
+                                        @NotNull final PackagesIndexUpdater indexUpdater) {
     myReset = reset;
     myFeedSettings = feedSettings;
     myPackageAnalyzer = packageAnalyzer;
+    myIndexUpdater = indexUpdater;
+
+    final int threads = TeamCityProperties.getInteger(TEAMCITY_NUGET_INDEX_THREADS_PROP_NAME,
+      Math.min(DEFAULT_INDEX_THREADS, Runtime.getRuntime().availableProcessors()));
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(), new NamedDaemonThreadFactory("NuGet Packages Indexer"));
+    executor.allowCoreThreadTimeOut(true);
+    myExecutor = executor;
   }
 
   @NotNull
@@ -90,16 +107,31 @@ public class NuGetArtifactsMetadataProvider implements BuildMetadataProvider {
     final Set<BuildArtifact> packages = new HashSet<>();
     visitArtifacts(build.getArtifacts(BuildArtifactsViewMode.VIEW_ALL).getRootArtifact(), packages);
 
+    // Packages are analyzed in parallel, while metadata storage is updated sequentially
+    final Map<BuildArtifact, Future<Map<String, String>>> results = new LinkedHashMap<>();
     for (final BuildArtifact aPackage : packages) {
       LOG.info("Indexing NuGet package from artifact " + aPackage.getRelativePath() + " of build " + LogUtil.describe(build));
       try {
-        final Map<String, String> metadata = generateMetadataForPackage(build, aPackage);
-        myReset.resetCache();
+        results.put(aPackage, myExecutor.submit(() -> generateMetadataForPackage(build, aPackage)));
+      } catch (RejectedExecutionException e) {
+        LOG.info(String.format("Skip NuGet metadata generation for build %s. NuGet packages indexer is stopped.", LogUtil.describe(build)));
+        return;
+      }
+    }
+
+    for (Map.Entry<BuildArtifact, Future<Map<String, String>>> result : results.entrySet()) {
+      final BuildArtifact aPackage = result.getKey();
+      try {
+        final Map<String, String> metadata = getResult(result.getValue());
         final String id = metadata.get(ID);
         final String version = metadata.get(NORMALIZED_VERSION);
         if (!StringUtil.isEmptyOrSpaces(id) && !StringUtil.isEmptyOrSpaces(version)) {
           final String key = NuGetUtils.getPackageKey(id, version);
           store.addParameters(key, metadata);
+          if (!build.isPersonal()) {
+            myIndexUpdater.addPackage(build.getBuildId(), key, metadata);
+          }
+          myReset.resetCache(id);
           LOG.debug("Added entry to NuGet package index with a key " + key);
         } else {
           LOG.warn("Failed to resolve NuGet package Id, package ignored: " + aPackage);
@@ -112,33 +144,45 @@ public class NuGetArtifactsMetadataProvider implements BuildMetadataProvider {
     }
   }
 
-  private Map<String, String> generateMetadataForPackage(@NotNull SBuild build, @NotNull BuildArtifact artifact) throws PackageLoadException {
-    final Map<String,String> metadata;
-    InputStream inputStream = null;
+  public void dispose() {
+    // queued tasks are cancelled to release builds waiting for their results
+    for (Runnable task : myExecutor.shutdownNow()) {
+      if (task instanceof Future) {
+        ((Future<?>) task).cancel(false);
+      }
+    }
+  }
 
+  @NotNull
+  private static Map<String, String> getResult(@NotNull final Future<Map<String, String>> future) throws Throwable {
     try {
-      inputStream = artifact.getInputStream();
-      metadata = myPackageAnalyzer.analyzePackage(inputStream);
-    } catch (IOException e) {
-      throw new PackageLoadException("Failed to read build artifact data");
-    } finally {
-      FileUtil.close(inputStream);
+      return future.get();
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    }
+  }
+
+  private Map<String, String> generateMetadataForPackage(@NotNull SBuild build, @NotNull BuildArtifact artifact) throws PackageLoadException {
+    final Map<String,String> metadata;
+    final File packageFile = new File(build.getArtifactsDirectory(), artifact.getRelativePath());
+    if (packageFile.isFile()) {
+      metadata = myPackageAnalyzer.analyzePackage(packageFile);
+    } else {
+      InputStream inputStream = null;
+      try {
+        inputStream = artifact.getInputStream();
+        metadata = myPackageAnalyzer.analyzePackage(inputStream);
+      } catch (IOException e) {
+        throw new PackageLoadException("Failed to read build artifact data");
+      } finally {
+        FileUtil.close(inputStream);
+      }
     }
 
     metadata.put(PACKAGE_SIZE, String.valueOf(artifact.getSize()));
     metadata.put(TEAMCITY_ARTIFACT_RELPATH, artifact.getRelativePath());
     metadata.put(TEAMCITY_BUILD_TYPE_ID, build.getBuildTypeId());
 
-    try {
-      inputStream = artifact.getInputStream();
-      metadata.put(PACKAGE_HASH, myPackageAnalyzer.getSha512Hash(inputStream));
-      metadata.put(PACKAGE_HASH_ALGORITHM, PackageAnalyzer.SHA512);
-    } catch (IOException e) {
-      throw new PackageLoadException("Failed to read build artifact data");
-    } finally {
-      FileUtil.close(inputStream);
-    }
-
     final Date finishDate = build.getFinishDate();
     final String created = ODataDataFormat.formatDate(finishDate != null ? finishDate : new Date());
     metadata.put(CREATED, created);
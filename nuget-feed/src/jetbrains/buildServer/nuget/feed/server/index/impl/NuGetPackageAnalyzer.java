@@ -17,15 +17,19 @@
 package jetbrains.buildServer.nuget.feed.server.index.impl;
 
 import com.google.common.collect.Lists;
+import com.intellij.openapi.diagnostic.Logger;
 import jetbrains.buildServer.nuget.common.PackageLoadException;
 import jetbrains.buildServer.nuget.feed.server.index.PackageAnalyzer;
 import jetbrains.buildServer.nuget.server.version.FrameworkConstraints;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import jetbrains.buildServer.util.FileUtil;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.*;
 
 import static jetbrains.buildServer.nuget.feed.server.index.PackagesIndex.TEAMCITY_FRAMEWORK_CONSTRAINTS;
@@ -36,6 +40,23 @@ import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
  */
 public class NuGetPackageAnalyzer implements PackageAnalyzer {
 
+    private static final Logger LOG = Logger.getInstance(NuGetPackageAnalyzer.class.getName());
+    private static final int BUFFER_SIZE = 8192;
+    private static final String ANALYSIS_CACHE_SIZE_PROP = "teamcity.nuget.feed.analysis.cache.size";
+    private static final int DEFAULT_ANALYSIS_CACHE_SIZE = 1000;
+
+    private final Map<String, Map<String, String>> myAnalysisCache;
+
+    public NuGetPackageAnalyzer() {
+        final int cacheSize = TeamCityProperties.getInteger(ANALYSIS_CACHE_SIZE_PROP, DEFAULT_ANALYSIS_CACHE_SIZE);
+        myAnalysisCache = Collections.synchronizedMap(new LinkedHashMap<String, Map<String, String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
     @NotNull
     @Override
     public Map<String, String> analyzePackage(@NotNull final InputStream content) throws PackageLoadException {
@@ -43,9 +64,16 @@ public class NuGetPackageAnalyzer implements PackageAnalyzer {
         final FrameworkConstraintsCalculator frameworkConstraintsCalculator = new FrameworkConstraintsCalculator();
         final List<NuGetPackageStructureAnalyser> analysers = Lists.newArrayList(frameworkConstraintsCalculator, packageItemsFactory);
 
-        final InputStream inputStream = new BufferedInputStream(content);
+        // Package hash is calculated in the same pass as the package structure analysis
+        final MessageDigest digest = DigestUtils.getSha512Digest();
+        final InputStream inputStream = new DigestInputStream(new BufferedInputStream(content), digest);
+        String hash = null;
         try {
             new NuGetPackageStructureVisitor(analysers).visit(inputStream);
+            drain(inputStream);
+            hash = encodeHash(digest.digest());
+        } catch (IOException e) {
+            LOG.debug("Failed to compute SHA-512 for package: " + e.getMessage());
         } finally {
             FileUtil.close(inputStream);
         }
@@ -53,6 +81,47 @@ public class NuGetPackageAnalyzer implements PackageAnalyzer {
         final Map<String, String> metadata = packageItemsFactory.getItems();
         metadata.put(TEAMCITY_FRAMEWORK_CONSTRAINTS, FrameworkConstraints.convertToString(frameworkConstraintsCalculator.getPackageConstraints()));
         metadata.put(LAST_UPDATED, ODataDataFormat.formatDate(new Date()));
+        if (hash != null) {
+            metadata.put(PACKAGE_HASH, hash);
+            metadata.put(PACKAGE_HASH_ALGORITHM, SHA512);
+        }
+
+        return metadata;
+    }
+
+    @NotNull
+    @Override
+    public Map<String, String> analyzePackage(@NotNull final File file) throws PackageLoadException {
+        final String hash;
+        try {
+            hash = getSha512Hash(new FileInputStream(file));
+        } catch (FileNotFoundException e) {
+            throw new PackageLoadException("Failed to read package file " + file.getName(), e);
+        }
+
+        // Byte-identical packages are often republished across builds
+        final Map<String, String> cached = myAnalysisCache.get(hash);
+        if (cached != null) {
+            LOG.debug("Using cached analysis results for NuGet package " + file.getName());
+            final Map<String, String> metadata = new HashMap<>(cached);
+            metadata.put(LAST_UPDATED, ODataDataFormat.formatDate(new Date()));
+            return metadata;
+        }
+
+        final LocalNuGetPackageItemsFactory packageItemsFactory = new LocalNuGetPackageItemsFactory();
+        final FrameworkConstraintsCalculator frameworkConstraintsCalculator = new FrameworkConstraintsCalculator();
+        final List<NuGetPackageStructureAnalyser> analysers = Lists.newArrayList(frameworkConstraintsCalculator, packageItemsFactory);
+        new NuGetPackageStructureVisitor(analysers).visit(file);
+
+        final Map<String, String> metadata = packageItemsFactory.getItems();
+        metadata.put(TEAMCITY_FRAMEWORK_CONSTRAINTS, FrameworkConstraints.convertToString(frameworkConstraintsCalculator.getPackageConstraints()));
+        metadata.put(LAST_UPDATED, ODataDataFormat.formatDate(new Date()));
+        metadata.put(PACKAGE_HASH, hash);
+        metadata.put(PACKAGE_HASH_ALGORITHM, SHA512);
+
+        if (metadata.containsKey(ID)) {
+            myAnalysisCache.put(hash, Collections.unmodifiableMap(new HashMap<>(metadata)));
+        }
 
         return metadata;
     }
@@ -62,13 +131,27 @@ public class NuGetPackageAnalyzer implements PackageAnalyzer {
     public String getSha512Hash(@NotNull InputStream content) throws PackageLoadException {
         final InputStream inputStream = new BufferedInputStream(content);
         try {
-            final byte[] hash = DigestUtils.sha512(inputStream);
-            //Buggy commons.codes added unnecessary newlines
-            return Base64.encodeBase64String(hash).replaceAll("[\r\n]+", "");
+            return encodeHash(DigestUtils.sha512(inputStream));
         } catch (IOException e) {
             throw new PackageLoadException("Failed to compute SHA-512 for package");
         } finally {
             FileUtil.close(inputStream);
         }
     }
+
+    /**
+     * Reads the rest of the stream, e.g. zip central directory which is not consumed by the zip reader.
+     */
+    private static void drain(@NotNull final InputStream inputStream) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        //noinspection StatementWithEmptyBody
+        while (inputStream.read(buffer) >= 0) {
+        }
+    }
+
+    @NotNull
+    private static String encodeHash(@NotNull final byte[] hash) {
+        //Buggy commons.codes added unnecessary newlines
+        return Base64.encodeBase64String(hash).replaceAll("[\r\n]+", "");
+    }
 }
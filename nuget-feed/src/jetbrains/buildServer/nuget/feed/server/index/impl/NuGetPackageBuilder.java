@@ -40,10 +40,16 @@ public class NuGetPackageBuilder {
   private String myExternalId = null;
 
   public NuGetPackageBuilder(@NotNull final BuildMetadataEntry entry) {
-    myMetadata = new HashMap<>(entry.getMetadata());
+    this(entry.getKey(), entry.getBuildId(), entry.getMetadata());
+  }
+
+  public NuGetPackageBuilder(@NotNull final String key,
+                             final long buildId,
+                             @NotNull final Map<String, String> metadata) {
+    myMetadata = new HashMap<>(metadata);
     myVersion = myMetadata.get(VERSION);
-    myKey = entry.getKey();
-    myBuildId = entry.getBuildId();
+    myKey = key;
+    myBuildId = buildId;
     setMetadata(TEAMCITY_BUILD_ID, String.valueOf(myBuildId));
   }
 
@@ -123,7 +129,7 @@ public class NuGetPackageBuilder {
     if (myMetadata.get(IS_ABSOLUTE_LATEST_VERSION) == null) setIsAbsoluteLatest(false);
     return new NuGetIndexEntry(
             myKey,
-            myMetadata
+            PackageAttributes.create(myMetadata)
     );
   }
 }
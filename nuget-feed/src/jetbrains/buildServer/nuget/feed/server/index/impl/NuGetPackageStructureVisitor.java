@@ -28,10 +28,13 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.Enumeration;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -90,13 +93,60 @@ public class NuGetPackageStructureVisitor {
     }
   }
 
+  /**
+   * Visits package file using zip central directory, so only .nuspec entry is inflated.
+   */
+  public void visit(@NotNull File file) throws PackageLoadException {
+    if(myAnalysers.isEmpty()) return;
+    ZipFile zipFile = null;
+    try {
+      zipFile = new ZipFile(file);
+      final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry zipEntry = entries.nextElement();
+        if(zipEntry.isDirectory()) continue;
+        final String zipEntryName = zipEntry.getName();
+        for(NuGetPackageStructureAnalyser analyser : myAnalysers){
+          analyser.analyseEntry(zipEntryName);
+        }
+        if (zipEntryName.endsWith(FeedConstants.NUSPEC_FILE_EXTENSION)) {
+          LOG.debug(String.format("Nuspec file found on path %s in NuGet package", zipEntryName));
+          final InputStream entryStream = zipFile.getInputStream(zipEntry);
+          final NuspecFileContent nuspecContent;
+          try {
+            nuspecContent = readNuspecFileContent(new BufferedInputStream(entryStream));
+          } finally {
+            FileUtil.close(entryStream);
+          }
+          if (nuspecContent == null)
+            LOG.warn("Failed to read .nuspec file content from NuGet package");
+          else {
+            for(NuGetPackageStructureAnalyser analyser : myAnalysers){
+              analyser.analyseNuspecFile(nuspecContent);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new PackageLoadException("Failed to read content of NuGet package " + file.getName(), e);
+    } finally {
+      if (zipFile != null) {
+        try {
+          zipFile.close();
+        } catch (IOException e) {
+          LOG.debug(e);
+        }
+      }
+    }
+  }
+
   @Nullable
-  private NuspecFileContent readNuspecFileContent(final ZipInputStream finalZipInputStream) throws IOException {
+  private NuspecFileContent readNuspecFileContent(final InputStream finalInputStream) throws IOException {
     try {
       final Element document = FileUtil.parseDocument(new InputStream() {
         @Override
         public int read() throws IOException {
-          return finalZipInputStream.read();
+          return finalInputStream.read();
         }
 
         @Override
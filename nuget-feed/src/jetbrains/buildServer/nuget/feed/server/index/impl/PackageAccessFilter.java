@@ -0,0 +1,32 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.index.impl;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Per-request check applied on top of the resident packages index.
+ */
+public interface PackageAccessFilter {
+  boolean isAccessible(@NotNull String buildTypeId);
+
+  /**
+   * @return filter instance to be used within a single request.
+   */
+  @NotNull
+  PackageAccessFilter createCopy();
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.index.impl;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import jetbrains.buildServer.nuget.feed.server.NuGetUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+import static jetbrains.buildServer.nuget.feed.server.index.PackagesIndex.*;
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+
+/**
+ * Compact immutable package attributes stored in the packages index.
+ *
+ * Known keys share a single schema, boolean, numeric and date values are
+ * kept as primitives, repeated values are interned and chunked values
+ * are joined on first access.
+ */
+public final class PackageAttributes extends AbstractMap<String, String> {
+
+  private static final byte STRING = 0;
+  private static final byte POOLED = 1;
+  private static final byte BOOLEAN = 2;
+  private static final byte NUMBER = 3;
+  private static final byte DATE = 4;
+
+  private static final String TRUE = Boolean.TRUE.toString();
+  private static final String FALSE = Boolean.FALSE.toString();
+  private static final String DATE_PREFIX = "j";
+
+  private static final String[] KEYS;
+  private static final byte[] KINDS;
+  private static final Map<String, Integer> SLOTS = new HashMap<>();
+  private static final long NUMBER_SLOTS;
+  private static final long VALUE_SLOTS;
+
+  private static final Interner<String> POOL = Interners.newWeakInterner();
+  private static final long[] NO_NUMBERS = new long[0];
+  private static final String[] NO_EXTRAS = new String[0];
+
+  static {
+    final Map<String, Byte> schema = new LinkedHashMap<>();
+    // boolean slots go first to fit into an int
+    schema.put(IS_LATEST_VERSION, BOOLEAN);
+    schema.put(IS_ABSOLUTE_LATEST_VERSION, BOOLEAN);
+    schema.put(IS_PRERELEASE, BOOLEAN);
+    schema.put(REQUIRE_LICENSE_ACCEPTANCE, BOOLEAN);
+    schema.put(PACKAGE_SIZE, NUMBER);
+    schema.put(TEAMCITY_BUILD_ID, NUMBER);
+    schema.put(CREATED, DATE);
+    schema.put(LAST_UPDATED, DATE);
+    schema.put(PUBLISHED, DATE);
+    schema.put(ID, POOLED);
+    schema.put(VERSION, POOLED);
+    schema.put(NORMALIZED_VERSION, POOLED);
+    schema.put(AUTHORS, POOLED);
+    schema.put(COPYRIGHT, POOLED);
+    schema.put(DEPENDENCIES, POOLED);
+    schema.put(ICON_URL, POOLED);
+    schema.put(LANGUAGE, POOLED);
+    schema.put(PROJECT_URL, POOLED);
+    schema.put(LICENSE_URL, POOLED);
+    schema.put(LICENSE_NAMES, POOLED);
+    schema.put(LICENSE_REPORT_URL, POOLED);
+    schema.put(REPORT_ABUSE_URL, POOLED);
+    schema.put(TAGS, POOLED);
+    schema.put(MIN_CLIENT_VERSION, POOLED);
+    schema.put(PACKAGE_HASH_ALGORITHM, POOLED);
+    schema.put(TEAMCITY_BUILD_TYPE_ID, POOLED);
+    schema.put(TEAMCITY_FRAMEWORK_CONSTRAINTS, POOLED);
+    schema.put(DESCRIPTION, STRING);
+    schema.put(RELEASE_NOTES, STRING);
+    schema.put(SUMMARY, STRING);
+    schema.put(TITLE, STRING);
+    schema.put(PACKAGE_HASH, STRING);
+    schema.put(TEAMCITY_ARTIFACT_RELPATH, STRING);
+    schema.put(TEAMCITY_DOWNLOAD_URL, STRING);
+
+    KEYS = new String[schema.size()];
+    KINDS = new byte[schema.size()];
+    long numberSlots = 0;
+    long valueSlots = 0;
+    int slot = 0;
+    for (Map.Entry<String, Byte> entry : schema.entrySet()) {
+      KEYS[slot] = entry.getKey();
+      KINDS[slot] = entry.getValue();
+      SLOTS.put(entry.getKey(), slot);
+      if (isNumber(KINDS[slot])) numberSlots |= 1L << slot;
+      if (isValue(KINDS[slot])) valueSlots |= 1L << slot;
+      slot++;
+    }
+    NUMBER_SLOTS = numberSlots;
+    VALUE_SLOTS = valueSlots;
+  }
+
+  private final long myPresent;
+  private final int myBooleans;
+  private final long[] myNumbers;
+  private final Object[] myValues;
+  private final String[] myExtras;
+
+  private PackageAttributes(final long present,
+                            final int booleans,
+                            @NotNull final long[] numbers,
+                            @NotNull final Object[] values,
+                            @NotNull final String[] extras) {
+    myPresent = present;
+    myBooleans = booleans;
+    myNumbers = numbers;
+    myValues = values;
+    myExtras = extras;
+  }
+
+  /**
+   * Creates compact attributes from the given map, chunked values are merged into a single key.
+   */
+  @NotNull
+  public static PackageAttributes create(@NotNull final Map<String, String> attributes) {
+    if (attributes instanceof PackageAttributes) {
+      return (PackageAttributes) attributes;
+    }
+
+    final Set<String> chunkKeys = new HashSet<>();
+    for (String key : attributes.keySet()) {
+      for (int index = 1; attributes.containsKey(key + index); index++) {
+        chunkKeys.add(key + index);
+      }
+    }
+
+    long present = 0;
+    int booleans = 0;
+    final long[] numbers = new long[KEYS.length];
+    final Object[] values = new Object[KEYS.length];
+    final List<String> extras = new ArrayList<>();
+
+    for (Map.Entry<String, String> entry : attributes.entrySet()) {
+      final String key = entry.getKey();
+      final String value = entry.getValue();
+      if (value == null || chunkKeys.contains(key)) continue;
+
+      final Integer slot = SLOTS.get(key);
+      if (slot == null) {
+        extras.add(key);
+        extras.add(NuGetUtils.getValue(attributes, key));
+        continue;
+      }
+
+      final byte kind = KINDS[slot];
+      final String[] chunks = getChunks(attributes, key);
+      final Long number = chunks == null && isNumber(kind) ? parseNumber(kind, value) : null;
+      if (chunks == null && kind == BOOLEAN && (TRUE.equals(value) || FALSE.equals(value))) {
+        if (TRUE.equals(value)) booleans |= 1 << slot;
+      } else if (number != null) {
+        numbers[slot] = number;
+      } else if (isValue(kind)) {
+        values[slot] = chunks != null ? chunks : kind == POOLED ? POOL.intern(value) : value;
+      } else {
+        extras.add(key);
+        extras.add(NuGetUtils.getValue(attributes, key));
+        continue;
+      }
+      present |= 1L << slot;
+    }
+
+    return new PackageAttributes(
+      present,
+      booleans,
+      compact(present & NUMBER_SLOTS, numbers),
+      compact(present & VALUE_SLOTS, values),
+      extras.isEmpty() ? NO_EXTRAS : extras.toArray(new String[extras.size()]));
+  }
+
+  /**
+   * @return attributes with given latest version flags sharing the rest of data with this instance.
+   */
+  @NotNull
+  public PackageAttributes withLatestFlags(final boolean isLatest, final boolean isAbsoluteLatest) {
+    final int latest = 1 << SLOTS.get(IS_LATEST_VERSION);
+    final int absoluteLatest = 1 << SLOTS.get(IS_ABSOLUTE_LATEST_VERSION);
+    int booleans = myBooleans & ~latest & ~absoluteLatest;
+    if (isLatest) booleans |= latest;
+    if (isAbsoluteLatest) booleans |= absoluteLatest;
+
+    final long present = myPresent | latest | absoluteLatest;
+    if (present == myPresent && booleans == myBooleans) {
+      return this;
+    }
+
+    return new PackageAttributes(present, booleans, myNumbers, myValues, withoutExtras(IS_LATEST_VERSION, IS_ABSOLUTE_LATEST_VERSION));
+  }
+
+  /**
+   * Checks whether attributes were created from the same package data,
+   * values are not compared, so it is cheap for large attributes.
+   *
+   * @return true if attributes share values and have the same flags.
+   */
+  public boolean hasSameData(@NotNull final PackageAttributes attributes) {
+    return myValues == attributes.myValues &&
+      myNumbers == attributes.myNumbers &&
+      myPresent == attributes.myPresent &&
+      myBooleans == attributes.myBooleans &&
+      Arrays.equals(myExtras, attributes.myExtras);
+  }
+
+  @Override
+  public String get(final Object key) {
+    final Integer slot = SLOTS.get(key);
+    if (slot != null && (myPresent & (1L << slot)) != 0) {
+      return getValue(slot);
+    }
+
+    for (int i = 0; i < myExtras.length; i += 2) {
+      if (myExtras[i].equals(key)) return myExtras[i + 1];
+    }
+
+    return null;
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public int size() {
+    return Long.bitCount(myPresent) + myExtras.length / 2;
+  }
+
+  @NotNull
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return new AbstractSet<Entry<String, String>>() {
+      @NotNull
+      @Override
+      public Iterator<Entry<String, String>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public boolean contains(final Object o) {
+        if (!(o instanceof Entry)) return false;
+        final Entry<?, ?> entry = (Entry<?, ?>) o;
+        final String value = get(entry.getKey());
+        return value != null && value.equals(entry.getValue());
+      }
+
+      @Override
+      public int size() {
+        return PackageAttributes.this.size();
+      }
+    };
+  }
+
+  @NotNull
+  private String getValue(final int slot) {
+    switch (KINDS[slot]) {
+      case BOOLEAN:
+        return (myBooleans & (1 << slot)) != 0 ? TRUE : FALSE;
+      case NUMBER:
+        return String.valueOf(myNumbers[indexOf(slot, NUMBER_SLOTS)]);
+      case DATE:
+        return DATE_PREFIX + myNumbers[indexOf(slot, NUMBER_SLOTS)];
+      default:
+        final int index = indexOf(slot, VALUE_SLOTS);
+        final Object value = myValues[index];
+        if (value instanceof String) {
+          return (String) value;
+        }
+
+        final String joined = join((String[]) value);
+        myValues[index] = joined;
+        return joined;
+    }
+  }
+
+  private int indexOf(final int slot, final long slots) {
+    return Long.bitCount(myPresent & slots & ((1L << slot) - 1));
+  }
+
+  @NotNull
+  private String[] withoutExtras(@NotNull final String... keys) {
+    if (myExtras.length == 0) return myExtras;
+
+    final List<String> extras = new ArrayList<>(myExtras.length);
+    for (int i = 0; i < myExtras.length; i += 2) {
+      if (Arrays.asList(keys).contains(myExtras[i])) continue;
+      extras.add(myExtras[i]);
+      extras.add(myExtras[i + 1]);
+    }
+
+    return extras.toArray(new String[extras.size()]);
+  }
+
+  @Nullable
+  private static String[] getChunks(@NotNull final Map<String, String> attributes, @NotNull final String key) {
+    if (!attributes.containsKey(key + 1)) return null;
+
+    final List<String> chunks = new ArrayList<>();
+    String value = attributes.get(key);
+    for (int index = 1; value != null; index++) {
+      chunks.add(value);
+      value = attributes.get(key + index);
+    }
+
+    return chunks.toArray(new String[chunks.size()]);
+  }
+
+  @NotNull
+  private static String join(@NotNull final String[] chunks) {
+    final StringBuilder sb = new StringBuilder();
+    for (String chunk : chunks) {
+      sb.append(chunk);
+    }
+    return sb.toString();
+  }
+
+  @Nullable
+  private static Long parseNumber(final byte kind, @NotNull final String value) {
+    final String text;
+    if (kind == DATE) {
+      if (!value.startsWith(DATE_PREFIX)) return null;
+      text = value.substring(DATE_PREFIX.length());
+    } else {
+      text = value;
+    }
+
+    try {
+      final long number = Long.parseLong(text);
+      // keep only values which are rendered back to the same text
+      return String.valueOf(number).equals(text) ? number : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  @NotNull
+  private static long[] compact(final long slots, @NotNull final long[] numbers) {
+    if (slots == 0) return NO_NUMBERS;
+
+    final long[] result = new long[Long.bitCount(slots)];
+    int index = 0;
+    for (int slot = 0; slot < numbers.length; slot++) {
+      if ((slots & (1L << slot)) != 0) result[index++] = numbers[slot];
+    }
+    return result;
+  }
+
+  @NotNull
+  private static Object[] compact(final long slots, @NotNull final Object[] values) {
+    final Object[] result = new Object[Long.bitCount(slots)];
+    int index = 0;
+    for (int slot = 0; slot < values.length; slot++) {
+      if ((slots & (1L << slot)) != 0) result[index++] = values[slot];
+    }
+    return result;
+  }
+
+  private static boolean isNumber(final byte kind) {
+    return kind == NUMBER || kind == DATE;
+  }
+
+  private static boolean isValue(final byte kind) {
+    return kind == STRING || kind == POOLED;
+  }
+
+  private class EntryIterator implements Iterator<Entry<String, String>> {
+    private long myRemaining = myPresent;
+    private int myExtra = 0;
+
+    @Override
+    public boolean hasNext() {
+      return myRemaining != 0 || myExtra < myExtras.length;
+    }
+
+    @Override
+    public Entry<String, String> next() {
+      if (myRemaining != 0) {
+        final int slot = Long.numberOfTrailingZeros(myRemaining);
+        myRemaining &= myRemaining - 1;
+        return new SimpleImmutableEntry<>(KEYS[slot], getValue(slot));
+      }
+
+      if (myExtra >= myExtras.length) {
+        throw new NoSuchElementException();
+      }
+
+      final Entry<String, String> entry = new SimpleImmutableEntry<>(myExtras[myExtra], myExtras[myExtra + 1]);
+      myExtra += 2;
+      return entry;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.index.impl;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Immutable list of a package versions sorted in ascending order
+ * with precomputed latest and latest stable versions.
+ */
+public class PackageVersions {
+
+  private static final Comparator<IndexedPackage> VERSIONS_COMPARATOR = SemanticVersionsComparators.getPackageVersionsComparator();
+
+  private final IndexedPackage[] myVersions;
+  private final IndexedPackage myLatest;
+  private final IndexedPackage myAbsoluteLatest;
+
+  private PackageVersions(@NotNull final IndexedPackage[] versions) {
+    myVersions = versions;
+    myAbsoluteLatest = versions[versions.length - 1];
+
+    IndexedPackage latest = null;
+    for (int i = versions.length - 1; i >= 0; i--) {
+      if (!versions[i].isPrerelease()) {
+        latest = versions[i];
+        break;
+      }
+    }
+    myLatest = latest;
+  }
+
+  @NotNull
+  public static PackageVersions create(@NotNull final Collection<IndexedPackage> packages) {
+    final IndexedPackage[] versions = packages.toArray(new IndexedPackage[packages.size()]);
+    Arrays.sort(versions, VERSIONS_COMPARATOR);
+    return updateFlags(null, new PackageVersions(versions));
+  }
+
+  @NotNull
+  public static PackageVersions add(@Nullable final PackageVersions current, @NotNull final IndexedPackage data) {
+    if (current == null) {
+      return updateFlags(null, new PackageVersions(new IndexedPackage[]{data}));
+    }
+
+    final IndexedPackage[] versions = current.myVersions;
+    int index = Arrays.binarySearch(versions, data, VERSIONS_COMPARATOR);
+    if (index < 0) {
+      index = -index - 1;
+    }
+
+    final IndexedPackage[] newVersions = new IndexedPackage[versions.length + 1];
+    System.arraycopy(versions, 0, newVersions, 0, index);
+    newVersions[index] = data;
+    System.arraycopy(versions, index, newVersions, index + 1, versions.length - index);
+
+    data.setLatestFlags(false, false);
+    return updateFlags(current, new PackageVersions(newVersions));
+  }
+
+  /**
+   * @return new versions list or null if no versions left.
+   */
+  @Nullable
+  public static PackageVersions remove(@NotNull final PackageVersions current, @NotNull final IndexedPackage data) {
+    final IndexedPackage[] versions = current.myVersions;
+    int index = -1;
+    for (int i = 0; i < versions.length; i++) {
+      if (versions[i] == data) {
+        index = i;
+        break;
+      }
+    }
+
+    if (index < 0) return current;
+    if (versions.length == 1) return null;
+
+    final IndexedPackage[] newVersions = new IndexedPackage[versions.length - 1];
+    System.arraycopy(versions, 0, newVersions, 0, index);
+    System.arraycopy(versions, index + 1, newVersions, index, versions.length - index - 1);
+    return updateFlags(current, new PackageVersions(newVersions));
+  }
+
+  @NotNull
+  public List<IndexedPackage> getVersions() {
+    return Collections.unmodifiableList(Arrays.asList(myVersions));
+  }
+
+  @Nullable
+  public IndexedPackage getLatest() {
+    return myLatest;
+  }
+
+  @NotNull
+  public IndexedPackage getAbsoluteLatest() {
+    return myAbsoluteLatest;
+  }
+
+  @NotNull
+  private static PackageVersions updateFlags(@Nullable final PackageVersions previous,
+                                             @NotNull final PackageVersions versions) {
+    if (previous == null) {
+      for (IndexedPackage data : versions.myVersions) {
+        versions.setFlags(data);
+      }
+      return versions;
+    }
+
+    if (previous.myLatest != null) versions.setFlags(previous.myLatest);
+    versions.setFlags(previous.myAbsoluteLatest);
+    if (versions.myLatest != null) versions.setFlags(versions.myLatest);
+    versions.setFlags(versions.myAbsoluteLatest);
+    return versions;
+  }
+
+  private void setFlags(@NotNull final IndexedPackage data) {
+    data.setLatestFlags(data == myLatest, data == myAbsoluteLatest);
+  }
+}
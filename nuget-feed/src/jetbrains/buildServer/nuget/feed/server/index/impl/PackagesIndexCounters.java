@@ -0,0 +1,82 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.index.impl;
+
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndexStatistics;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.PACKAGE_SIZE;
+
+/**
+ * Counters of the resident packages index updated on each index change.
+ */
+public class PackagesIndexCounters {
+
+  private final Map<String, Integer> myPackageIds = new HashMap<>();
+  private final Map<Long, Integer> myBuilds = new HashMap<>();
+  private long myPackagesCount = 0;
+  private long myPackagesSize = 0;
+  private long myPrereleasePackagesCount = 0;
+
+  public synchronized void add(@NotNull final IndexedPackage data) {
+    myPackagesCount++;
+    myPackagesSize += getPackageSize(data);
+    if (data.isPrerelease()) myPrereleasePackagesCount++;
+    myPackageIds.merge(data.getLowerCaseId(), 1, Integer::sum);
+    myBuilds.merge(data.getBuildId(), 1, Integer::sum);
+  }
+
+  public synchronized void remove(@NotNull final IndexedPackage data) {
+    myPackagesCount--;
+    myPackagesSize -= getPackageSize(data);
+    if (data.isPrerelease()) myPrereleasePackagesCount--;
+    myPackageIds.computeIfPresent(data.getLowerCaseId(), (key, count) -> count > 1 ? count - 1 : null);
+    myBuilds.computeIfPresent(data.getBuildId(), (key, count) -> count > 1 ? count - 1 : null);
+  }
+
+  public synchronized void clear() {
+    myPackageIds.clear();
+    myBuilds.clear();
+    myPackagesCount = 0;
+    myPackagesSize = 0;
+    myPrereleasePackagesCount = 0;
+  }
+
+  @NotNull
+  public synchronized PackagesIndexStatistics getStatistics() {
+    return new PackagesIndexStatistics(
+      myPackagesCount,
+      myPackageIds.size(),
+      myBuilds.size(),
+      myPackagesSize,
+      myPrereleasePackagesCount);
+  }
+
+  private static long getPackageSize(@NotNull final IndexedPackage data) {
+    final String size = data.getAttributes().get(PACKAGE_SIZE);
+    if (size == null) return 0;
+
+    try {
+      return Long.parseLong(size);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -16,23 +16,34 @@
 
 package jetbrains.buildServer.nuget.feed.server.index.impl;
 
-import com.google.common.collect.Lists;
 import com.intellij.openapi.diagnostic.Logger;
 import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
 import jetbrains.buildServer.nuget.feed.server.index.NuGetServerStatisticsProvider;
 import jetbrains.buildServer.nuget.feed.server.index.PackagesIndex;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndexStatistics;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndexUpdater;
 import jetbrains.buildServer.nuget.feed.server.index.impl.latest.LatestCalculator;
 import jetbrains.buildServer.nuget.feed.server.index.impl.latest.LatestVersionsCalculator;
-import jetbrains.buildServer.nuget.feed.server.index.impl.transform.IsLatestFieldTransformation;
-import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.nuget.feed.server.index.impl.transform.SamePackagesFilterTransformation;
+import jetbrains.buildServer.serverSide.BuildServerAdapter;
+import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.SBuildType;
+import jetbrains.buildServer.serverSide.SFinishedBuild;
 import jetbrains.buildServer.serverSide.metadata.BuildMetadataEntry;
 import jetbrains.buildServer.serverSide.metadata.MetadataStorage;
 import jetbrains.buildServer.util.CollectionsUtil;
 import jetbrains.buildServer.util.Converter;
+import jetbrains.buildServer.util.EventDispatcher;
+import jetbrains.buildServer.util.NamedDaemonThreadFactory;
+import jetbrains.buildServer.util.filters.Filter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadFactory;
 
 import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
 import static jetbrains.buildServer.nuget.feed.server.index.impl.NuGetArtifactsMetadataProvider.NUGET_PROVIDER_ID;
@@ -41,31 +52,93 @@ import static jetbrains.buildServer.nuget.feed.server.index.impl.NuGetArtifactsM
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
  *         Date: 19.10.11 16:18
  */
-public class PackagesIndexImpl implements PackagesIndex, NuGetServerStatisticsProvider {
+public class PackagesIndexImpl implements PackagesIndex, PackagesIndexUpdater, NuGetServerStatisticsProvider {
 
   private static final Logger LOG = Logger.getInstance(PackagesIndexImpl.class.getName());
 
-  public static final Collection<String> PACKAGE_ATTRIBUTES_TO_SEARCH = Lists.newArrayList(
-    ID, TITLE, TAGS, DESCRIPTION, AUTHORS, SUMMARY);
-
-  private static final String TOTAL_NUMBER_OF_ITEMS_STAT = "Total number of items in index";
-  private static final String NUMBER_OF_INDEXED_BUILDS_STAT = "Number of indexed builds";
+  private static final String NUMBER_OF_PACKAGES_STAT = "Number of packages in index";
+  private static final String NUMBER_OF_PACKAGE_BUILDS_STAT = "Number of builds with packages in index";
   private static final String NUMBER_OF_PACKAGE_IDS_STAT = "Number of unique package Ids";
+  private static final String TOTAL_SIZE_OF_PACKAGES_STAT = "Total size of packages in bytes";
+  private static final String NUMBER_OF_PRERELEASE_PACKAGES_STAT = "Number of pre-release packages";
 
   private final MetadataStorage myStorage;
+  private final PackagesIndexSnapshot mySnapshot;
   private final Collection<PackageTransformation> myTransformations;
+  private final Collection<PackageTransformation> myIndexTransformations = new ArrayList<>();
+  private final Collection<PackageAccessFilter> myAccessFilters = new ArrayList<>();
+
+  private final Object myLock = new Object();
+  private final Map<String, IndexedPackage> myPackagesByKey = new ConcurrentHashMap<>();
+  private final NavigableMap<String, PackageVersions> myPackagesById = new ConcurrentSkipListMap<>();
+  private final PackagesSearchIndex mySearchIndex = new PackagesSearchIndex();
+  private final PackagesIndexCounters myCounters = new PackagesIndexCounters();
+  private volatile boolean myIsLoaded = false;
+  private volatile long myHighWaterMark = 0;
+  private volatile int myResetCount = 0;
+  // entity tags issued before a server restart must not match the reloaded index
+  private volatile long myGeneration = new Random().nextLong();
+  private final Object mySnapshotLock = new Object();
+  private final ThreadFactory myThreadFactory = new NamedDaemonThreadFactory("NuGet Packages Index Snapshot");
 
+  public PackagesIndexImpl(@NotNull final MetadataStorage storage,
+                           @NotNull final Collection<PackageTransformation> transformations,
+                           @NotNull final EventDispatcher<BuildServerListener> dispatcher) {
+    this(storage, transformations, dispatcher, null);
+  }
 
   public PackagesIndexImpl(@NotNull final MetadataStorage storage,
-                           @NotNull final Collection<PackageTransformation> transformations) {
+                           @NotNull final Collection<PackageTransformation> transformations,
+                           @NotNull final EventDispatcher<BuildServerListener> dispatcher,
+                           @Nullable final PackagesIndexSnapshot snapshot) {
     myStorage = storage;
+    mySnapshot = snapshot;
     myTransformations = new ArrayList<>(transformations);
+
+    // access checks depend on the current user, so they are applied on each request,
+    // packages with the same key are resolved by the index itself in favor of newer builds
+    for (PackageTransformation transformation : transformations) {
+      if (transformation instanceof PackageAccessFilter) {
+        myAccessFilters.add((PackageAccessFilter) transformation);
+      } else if (!(transformation instanceof SamePackagesFilterTransformation)) {
+        myIndexTransformations.add(transformation);
+      }
+    }
+
+    dispatcher.addListener(new BuildServerAdapter() {
+      @Override
+      public void entriesDeleted(@NotNull Collection<SFinishedBuild> removedEntries) {
+        super.entriesDeleted(removedEntries);
+        removeBuilds(CollectionsUtil.convertCollection(removedEntries, SBuild::getBuildId));
+      }
+
+      @Override
+      public void buildTypeExternalIdChanged(@NotNull SBuildType buildType,
+                                             @NotNull String oldExternalId,
+                                             @NotNull String newExternalId) {
+        super.buildTypeExternalIdChanged(buildType, oldExternalId, newExternalId);
+        // download urls contain build type external id
+        resetIndex();
+      }
+
+      @Override
+      public void serverShutdown() {
+        super.serverShutdown();
+        saveSnapshot();
+      }
+    });
   }
 
   @NotNull
   @Override
   public List<NuGetIndexEntry> getAll() {
-    return decorateMetadata(myStorage.getAllEntries(NUGET_PROVIDER_ID));
+    ensureLoaded();
+    final Collection<PackageAccessFilter> filters = getAccessFilters();
+    final List<NuGetIndexEntry> result = new ArrayList<>(myPackagesByKey.size());
+    for (PackageVersions versions : myPackagesById.values()) {
+      selectPackages(filters, versions, versions.getVersions(), result);
+    }
+    return result;
   }
 
   @NotNull
@@ -77,30 +150,476 @@ public class PackagesIndexImpl implements PackagesIndex, NuGetServerStatisticsPr
   @NotNull
   @Override
   public List<NuGetIndexEntry> find(@NotNull Map<String, String> query) {
-    return decorateMetadata(myStorage.findEntriesWithKeyValuePairs(NUGET_PROVIDER_ID, query, true));
+    ensureLoaded();
+    final Collection<PackageAccessFilter> filters = getAccessFilters();
+    final Collection<PackageVersions> candidates;
+    final String id = query.get(ID);
+    if (id != null) {
+      final PackageVersions versions = myPackagesById.get(id.toLowerCase(Locale.ROOT));
+      candidates = versions != null ? Collections.singletonList(versions) : Collections.emptyList();
+    } else {
+      candidates = myPackagesById.values();
+    }
+
+    final List<NuGetIndexEntry> result = new ArrayList<>();
+    for (PackageVersions versions : candidates) {
+      final List<IndexedPackage> packages = CollectionsUtil.filterCollection(versions.getVersions(), data -> {
+        for (Map.Entry<String, String> entry : query.entrySet()) {
+          final String value = data.getAttributes().get(entry.getKey());
+          if (value == null || !value.equalsIgnoreCase(entry.getValue())) return false;
+        }
+        return true;
+      });
+      selectPackages(filters, versions, packages, result);
+    }
+    return result;
   }
 
   @NotNull
-  public List<NuGetIndexEntry> search(@NotNull Collection<String> keys, @NotNull String value) {
-    return decorateMetadata(myStorage.findEntriesWithValue(NUGET_PROVIDER_ID, value, keys, true));
+  @Override
+  public List<NuGetIndexEntry> search(@NotNull final String searchTerm,
+                                      @NotNull final Set<String> targetFrameworks,
+                                      final boolean includePrerelease) {
+    ensureLoaded();
+    final Collection<PackageAccessFilter> filters = getAccessFilters();
+    final BitSet compatibleFrameworks = targetFrameworks.isEmpty() ? null : mySearchIndex.getCompatibleFrameworks(targetFrameworks);
+    final Filter<IndexedPackage> filter = data -> (includePrerelease || !data.isPrerelease()) &&
+      (compatibleFrameworks == null || mySearchIndex.isCompatible(data, compatibleFrameworks));
+
+    final Map<IndexedPackage, Integer> relevance = mySearchIndex.search(searchTerm);
+    if (relevance == null) {
+      final List<NuGetIndexEntry> result = new ArrayList<>();
+      for (PackageVersions versions : myPackagesById.values()) {
+        selectPackages(filters, versions, CollectionsUtil.filterCollection(versions.getVersions(), filter), result);
+      }
+      return result;
+    }
+
+    final List<IndexedPackage> packages = CollectionsUtil.filterCollection(relevance.keySet(), filter);
+    final Comparator<IndexedPackage> packagesComparator = SemanticVersionsComparators.getPackagesComparator();
+    packages.sort((o1, o2) -> {
+      final int result = Integer.compare(relevance.get(o2), relevance.get(o1));
+      return result != 0 ? result : packagesComparator.compare(o1, o2);
+    });
+
+    final List<NuGetIndexEntry> result = new ArrayList<>(packages.size());
+    for (IndexedPackage data : packages) {
+      final PackageVersions versions = myPackagesById.get(data.getLowerCaseId());
+      if (versions != null) {
+        selectPackages(filters, versions, Collections.singletonList(data), result);
+      }
+    }
+    return result;
   }
 
   @NotNull
   @Override
   public List<NuGetIndexEntry> getByKey(String key) {
-    return decorateMetadata(myStorage.getEntriesByKey(NUGET_PROVIDER_ID, key));
+    ensureLoaded();
+    final Collection<PackageAccessFilter> filters = getAccessFilters();
+    final IndexedPackage data = myPackagesByKey.get(key);
+    if (data == null) {
+      return Collections.emptyList();
+    }
+
+    final PackageVersions versions = myPackagesById.get(data.getLowerCaseId());
+    if (versions == null) {
+      return Collections.emptyList();
+    }
+
+    final List<NuGetIndexEntry> result = new ArrayList<>(1);
+    selectPackages(filters, versions, Collections.singletonList(data), result);
+    return result;
   }
 
-  private List<NuGetIndexEntry> decorateMetadata(Iterator<BuildMetadataEntry> entries) {
-    if (TeamCityProperties.getBoolean("teamcity.nuget.simple.feed.sort")) {
-      final Collection<PackageTransformation> transformations = getTranslatorsSimple();
-      return convertCollection(entries, source -> {
-        final NuGetPackageBuilder pb = applyTransformation(source, transformations);
-        if (pb == null) return null;
-        return pb.build();
-      });
+  @NotNull
+  @Override
+  public List<NuGetIndexEntry> getVersions(@NotNull String packageId) {
+    ensureLoaded();
+    final Collection<PackageAccessFilter> filters = getAccessFilters();
+    final PackageVersions versions = myPackagesById.get(packageId.toLowerCase(Locale.ROOT));
+    if (versions == null) {
+      return Collections.emptyList();
     }
 
+    final List<NuGetIndexEntry> result = new ArrayList<>();
+    selectPackages(filters, versions, versions.getVersions(), result);
+    return result;
+  }
+
+  @NotNull
+  @Override
+  public Map<String, List<NuGetIndexEntry>> getVersions(@NotNull final Collection<String> packageIds) {
+    ensureLoaded();
+    final Collection<PackageAccessFilter> filters = getAccessFilters();
+    final Map<String, List<NuGetIndexEntry>> result = new HashMap<>();
+    for (String packageId : packageIds) {
+      final String id = packageId.toLowerCase(Locale.ROOT);
+      if (result.containsKey(id)) continue;
+
+      final PackageVersions versions = myPackagesById.get(id);
+      if (versions == null) {
+        result.put(id, Collections.emptyList());
+        continue;
+      }
+
+      final List<NuGetIndexEntry> entries = new ArrayList<>(versions.getVersions().size());
+      selectPackages(filters, versions, versions.getVersions(), entries);
+      result.put(id, entries);
+    }
+    return result;
+  }
+
+  @NotNull
+  @Override
+  public List<NuGetIndexEntry> getLatestVersions(final boolean includePrerelease) {
+    ensureLoaded();
+    final Collection<PackageAccessFilter> filters = getAccessFilters();
+    final List<NuGetIndexEntry> result = new ArrayList<>(myPackagesById.size());
+    for (PackageVersions versions : myPackagesById.values()) {
+      final IndexedPackage latest = findLatest(filters, versions, includePrerelease);
+      if (latest != null) {
+        selectPackages(filters, versions, Collections.singletonList(latest), result);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void addPackage(long buildId, @NotNull String key, @NotNull Map<String, String> metadata) {
+    final IndexedPackage data;
+    try {
+      data = createPackage(new NuGetPackageBuilder(key, buildId, metadata), getIndexTransformations());
+    } catch (Exception ex) {
+      LOG.warnAndDebugDetails(String.format("Failed to add NuGet package %s from build %d into index", key, buildId), ex);
+      return;
+    }
+
+    if (data == null) return;
+
+    synchronized (myLock) {
+      putPackage(data);
+    }
+  }
+
+  @Override
+  public void removeBuilds(@NotNull Collection<Long> buildIds) {
+    final Set<Long> removedBuilds = new HashSet<>(buildIds);
+    final Set<String> removedKeys = new HashSet<>();
+
+    synchronized (myLock) {
+      for (IndexedPackage data : myPackagesByKey.values()) {
+        if (removedBuilds.contains(data.getBuildId())) {
+          removedKeys.add(data.getKey());
+        }
+      }
+
+      for (String key : removedKeys) {
+        final IndexedPackage data = myPackagesByKey.remove(key);
+        if (data != null) {
+          removeVersion(data);
+        }
+      }
+    }
+
+    addPackages(removedKeys, removedBuilds);
+  }
+
+  @Override
+  public void resetIndex() {
+    synchronized (myLock) {
+      myPackagesByKey.clear();
+      myPackagesById.clear();
+      mySearchIndex.clear();
+      myCounters.clear();
+      myHighWaterMark = 0;
+      myResetCount++;
+      myGeneration++;
+      myIsLoaded = false;
+      if (mySnapshot != null) {
+        mySnapshot.delete();
+      }
+    }
+  }
+
+  /**
+   * Writes loaded index into the snapshot used on the next server start.
+   */
+  public void saveSnapshot() {
+    if (mySnapshot == null || !myIsLoaded) return;
+
+    synchronized (mySnapshotLock) {
+      final long startTime = System.currentTimeMillis();
+      final long highWaterMark = myHighWaterMark;
+      final List<IndexedPackage> packages = new ArrayList<>(myPackagesByKey.values());
+      mySnapshot.save(highWaterMark, packages);
+      LOG.info(String.format("Saved %d NuGet packages into index snapshot in %d ms",
+        packages.size(), System.currentTimeMillis() - startTime));
+    }
+  }
+
+  private void ensureLoaded() {
+    if (myIsLoaded) return;
+
+    synchronized (myLock) {
+      if (!myIsLoaded) {
+        loadPackages();
+        myIsLoaded = true;
+      }
+    }
+  }
+
+  private void loadPackages() {
+    final long startTime = System.currentTimeMillis();
+    final PackagesIndexSnapshot.Data snapshot = mySnapshot != null ? mySnapshot.load() : null;
+    // packages could be already reported before index was loaded
+    final Map<String, IndexedPackage> packages = new HashMap<>(myPackagesByKey);
+    final Collection<PackageTransformation> transformations = getIndexTransformations();
+    if (snapshot != null) {
+      for (NuGetPackageBuilder builder : snapshot.getPackages()) {
+        try {
+          collectPackage(packages, builder, transformations);
+        } catch (Exception ex) {
+          LOG.warnAndDebugDetails("Failed to load nuget package from index snapshot. Key: " + builder.getKey(), ex);
+        }
+      }
+    } else {
+      final Iterator<BuildMetadataEntry> entries = myStorage.getAllEntries(NUGET_PROVIDER_ID);
+      while (entries.hasNext()) {
+        final BuildMetadataEntry entry = entries.next();
+        try {
+          collectPackage(packages, new NuGetPackageBuilder(entry), transformations);
+        } catch (Exception ex) {
+          LOG.warnAndDebugDetails("Failed to convert build metadata entry to nuget package. Entry: " + entry.toString(), ex);
+        }
+      }
+    }
+
+    final Map<String, List<IndexedPackage>> packagesById = new HashMap<>();
+    long highWaterMark = snapshot != null ? snapshot.getHighWaterMark() : 0;
+    for (IndexedPackage data : packages.values()) {
+      packagesById.computeIfAbsent(data.getLowerCaseId(), id -> new ArrayList<>()).add(data);
+      highWaterMark = Math.max(highWaterMark, data.getBuildId());
+    }
+
+    myPackagesByKey.clear();
+    myPackagesByKey.putAll(packages);
+    myPackagesById.clear();
+    for (Map.Entry<String, List<IndexedPackage>> entry : packagesById.entrySet()) {
+      myPackagesById.put(entry.getKey(), PackageVersions.create(entry.getValue()));
+    }
+    mySearchIndex.clear();
+    myCounters.clear();
+    for (IndexedPackage data : packages.values()) {
+      mySearchIndex.add(data);
+      myCounters.add(data);
+    }
+    myHighWaterMark = highWaterMark;
+    myGeneration++;
+
+    LOG.info(String.format("Loaded %d NuGet packages into index from %s in %d ms",
+      packages.size(), snapshot != null ? "snapshot" : "metadata storage", System.currentTimeMillis() - startTime));
+
+    if (mySnapshot == null) return;
+    if (snapshot != null) {
+      final Set<IndexedPackage> snapshotPackages = new HashSet<>(packages.values());
+      final int resetCount = myResetCount;
+      runInBackground(() -> replayEntries(snapshotPackages, snapshot.getHighWaterMark(), resetCount));
+    } else {
+      runInBackground(this::saveSnapshot);
+    }
+  }
+
+  private static void collectPackage(@NotNull final Map<String, IndexedPackage> packages,
+                                     @NotNull final NuGetPackageBuilder builder,
+                                     @NotNull final Collection<PackageTransformation> transformations) {
+    final IndexedPackage data = createPackage(builder, transformations);
+    if (data == null) return;
+
+    // newer builds override packages with the same key
+    final IndexedPackage current = packages.get(data.getKey());
+    if (current == null || current.getBuildId() <= data.getBuildId()) {
+      packages.put(data.getKey(), data);
+    }
+  }
+
+  /**
+   * Brings index loaded from the snapshot up to date with metadata storage:
+   * entries missing in the snapshot are added and deleted ones are removed.
+   * Only new entries are passed through index transformations.
+   *
+   * @param snapshotPackages packages loaded from the snapshot
+   * @param highWaterMark    highest build id in the snapshot
+   * @param resetCount       index resets count, replay stops when index is reset
+   */
+  private void replayEntries(@NotNull final Set<IndexedPackage> snapshotPackages,
+                             final long highWaterMark,
+                             final int resetCount) {
+    final long startTime = System.currentTimeMillis();
+    final Set<IndexedPackage> stalePackages = new HashSet<>(snapshotPackages);
+    int replayed = 0;
+
+    final Iterator<BuildMetadataEntry> entries = myStorage.getAllEntries(NUGET_PROVIDER_ID);
+    while (entries.hasNext()) {
+      if (resetCount != myResetCount) return;
+
+      final BuildMetadataEntry entry = entries.next();
+      final IndexedPackage current = myPackagesByKey.get(entry.getKey());
+      if (entry.getBuildId() <= highWaterMark && current != null && current.getBuildId() >= entry.getBuildId()) {
+        if (current.getBuildId() == entry.getBuildId()) {
+          stalePackages.remove(current);
+        }
+        continue;
+      }
+
+      addPackage(entry.getBuildId(), entry.getKey(), entry.getMetadata());
+      replayed++;
+    }
+
+    final Set<String> removedKeys = new HashSet<>();
+    synchronized (myLock) {
+      if (resetCount != myResetCount) return;
+
+      for (IndexedPackage data : stalePackages) {
+        if (myPackagesByKey.remove(data.getKey(), data)) {
+          removeVersion(data);
+          removedKeys.add(data.getKey());
+        }
+      }
+    }
+
+    addPackages(removedKeys, Collections.emptySet());
+    LOG.info(String.format("Replayed %d NuGet packages newer than index snapshot and removed %d deleted packages in %d ms",
+      replayed, removedKeys.size(), System.currentTimeMillis() - startTime));
+
+    saveSnapshot();
+  }
+
+  /**
+   * Adds packages with given keys from metadata storage.
+   *
+   * @param keys           package keys
+   * @param excludedBuilds builds to ignore
+   */
+  private void addPackages(@NotNull final Collection<String> keys, @NotNull final Set<Long> excludedBuilds) {
+    // same packages could be still published by other builds
+    for (String key : keys) {
+      final Iterator<BuildMetadataEntry> entries = myStorage.getEntriesByKey(NUGET_PROVIDER_ID, key);
+      while (entries.hasNext()) {
+        final BuildMetadataEntry entry = entries.next();
+        if (excludedBuilds.contains(entry.getBuildId())) continue;
+        addPackage(entry.getBuildId(), entry.getKey(), entry.getMetadata());
+      }
+    }
+  }
+
+  private void runInBackground(@NotNull final Runnable task) {
+    myThreadFactory.newThread(() -> {
+      try {
+        task.run();
+      } catch (Exception ex) {
+        LOG.warnAndDebugDetails("Failed to update NuGet packages index snapshot", ex);
+      }
+    }).start();
+  }
+
+  private void putPackage(@NotNull final IndexedPackage data) {
+    // newer builds override packages with the same key
+    final IndexedPackage current = myPackagesByKey.get(data.getKey());
+    if (current != null && current.getBuildId() > data.getBuildId()) return;
+
+    myPackagesByKey.put(data.getKey(), data);
+    myHighWaterMark = Math.max(myHighWaterMark, data.getBuildId());
+    if (current != null) {
+      removeVersion(current);
+    }
+
+    final String id = data.getLowerCaseId();
+    myPackagesById.put(id, PackageVersions.add(myPackagesById.get(id), data));
+    mySearchIndex.add(data);
+    myCounters.add(data);
+    myGeneration++;
+  }
+
+  private void removeVersion(@NotNull final IndexedPackage data) {
+    myGeneration++;
+    mySearchIndex.remove(data);
+    myCounters.remove(data);
+    final String id = data.getLowerCaseId();
+    final PackageVersions versions = myPackagesById.get(id);
+    if (versions == null) return;
+
+    final PackageVersions newVersions = PackageVersions.remove(versions, data);
+    if (newVersions != null) {
+      myPackagesById.put(id, newVersions);
+    } else {
+      myPackagesById.remove(id);
+    }
+  }
+
+  @Nullable
+  private static IndexedPackage createPackage(@NotNull final NuGetPackageBuilder builder,
+                                              @NotNull final Collection<PackageTransformation> transformations) {
+    if (applyTransformation(builder, transformations) == null) return null;
+    final NuGetIndexEntry entry = builder.build();
+    if (entry == null) return null;
+    return new IndexedPackage(builder.getBuildId(), entry);
+  }
+
+  /**
+   * Applies access filters and computes latest version flags among accessible versions.
+   *
+   * @param filters  access filters of the request
+   * @param versions all versions of the package
+   * @param packages selected versions of the package
+   * @param result   collection to add index entries to
+   */
+  private static void selectPackages(@NotNull final Collection<PackageAccessFilter> filters,
+                                     @NotNull final PackageVersions versions,
+                                     @NotNull final List<IndexedPackage> packages,
+                                     @NotNull final List<NuGetIndexEntry> result) {
+    boolean computed = false;
+    IndexedPackage latest = null;
+    IndexedPackage absoluteLatest = null;
+
+    for (IndexedPackage data : packages) {
+      if (!isAccessible(filters, data)) continue;
+
+      if (!computed) {
+        latest = findLatest(filters, versions, false);
+        absoluteLatest = findLatest(filters, versions, true);
+        computed = true;
+      }
+
+      result.add(data.getEntry(data == latest, data == absoluteLatest));
+    }
+  }
+
+  @Nullable
+  private static IndexedPackage findLatest(@NotNull final Collection<PackageAccessFilter> filters,
+                                           @NotNull final PackageVersions versions,
+                                           final boolean includePrerelease) {
+    final IndexedPackage latest = includePrerelease ? versions.getAbsoluteLatest() : versions.getLatest();
+    if (latest == null || isAccessible(filters, latest)) return latest;
+
+    final List<IndexedPackage> packages = versions.getVersions();
+    for (int i = packages.size() - 1; i >= 0; i--) {
+      final IndexedPackage data = packages.get(i);
+      if (!includePrerelease && data.isPrerelease()) continue;
+      if (isAccessible(filters, data)) return data;
+    }
+    return null;
+  }
+
+  private static boolean isAccessible(@NotNull final Collection<PackageAccessFilter> filters,
+                                      @NotNull final IndexedPackage data) {
+    for (PackageAccessFilter filter : filters) {
+      if (!filter.isAccessible(data.getBuildTypeId())) return false;
+    }
+    return true;
+  }
+
+  private List<NuGetIndexEntry> decorateMetadata(Iterator<BuildMetadataEntry> entries) {
     final Collection<PackageTransformation> translators = getTranslators(); //contains processing state!
     final LatestCalculator latestPackages = new LatestVersionsCalculator();
     final List<NuGetPackageBuilder> result = convertCollection(entries, source -> {
@@ -121,54 +640,76 @@ public class PackagesIndexImpl implements PackagesIndex, NuGetServerStatisticsPr
 
   @NotNull
   private Collection<PackageTransformation> getTranslators() {
-    List<PackageTransformation> list = new ArrayList<>(myTransformations.size() + 1);
+    List<PackageTransformation> list = new ArrayList<>(myTransformations.size());
     for (PackageTransformation t : myTransformations) {
       list.add(t.createCopy());
     }
     return list;
   }
 
+  /**
+   * @return access filters for a single request, they remember checks made for each build type.
+   */
+  @NotNull
+  private Collection<PackageAccessFilter> getAccessFilters() {
+    List<PackageAccessFilter> list = new ArrayList<>(myAccessFilters.size());
+    for (PackageAccessFilter filter : myAccessFilters) {
+      list.add(filter.createCopy());
+    }
+    return list;
+  }
+
   @NotNull
-  private Collection<PackageTransformation> getTranslatorsSimple() {
-    final Collection<PackageTransformation> pts = getTranslators();
-    pts.add(new IsLatestFieldTransformation());
-    return pts;
+  private Collection<PackageTransformation> getIndexTransformations() {
+    List<PackageTransformation> list = new ArrayList<>(myIndexTransformations.size());
+    for (PackageTransformation t : myIndexTransformations) {
+      list.add(t.createCopy());
+    }
+    return list;
   }
 
   @Nullable
   private static NuGetPackageBuilder applyTransformation(@NotNull final BuildMetadataEntry entry,
                                                          @NotNull final Collection<PackageTransformation> transformations) {
     try {
-      final NuGetPackageBuilder pb = new NuGetPackageBuilder(entry);
-      for (PackageTransformation transformation : transformations) {
-        if (transformation.applyTransformation(pb) == PackageTransformation.Status.SKIP) return null;
-      }
-      return pb;
+      return applyTransformation(new NuGetPackageBuilder(entry), transformations);
     } catch (Exception ex) {
       LOG.warnAndDebugDetails("Failed to convert build metadata entry to nuget package. Entry: " + entry.toString(), ex);
       return null;
     }
   }
 
-  @NotNull
-  public Map<String, Long> getIndexStatistics() {
-    final Iterator<BuildMetadataEntry> entries = myStorage.getAllEntries(NUGET_PROVIDER_ID);
+  @Nullable
+  private static NuGetPackageBuilder applyTransformation(@NotNull final NuGetPackageBuilder pb,
+                                                         @NotNull final Collection<PackageTransformation> transformations) {
+    for (PackageTransformation transformation : transformations) {
+      if (transformation.applyTransformation(pb) == PackageTransformation.Status.SKIP) return null;
+    }
+    return pb;
+  }
 
-    long totalItemsNumber = 0;
-    Set<Long> buildIds = new HashSet<>();
-    Set<String> packageIds = new HashSet<>();
+  @NotNull
+  @Override
+  public PackagesIndexStatistics getStatistics() {
+    ensureLoaded();
+    return myCounters.getStatistics();
+  }
 
-    while (entries.hasNext()) {
-      final BuildMetadataEntry entry = entries.next();
-      totalItemsNumber++;
-      buildIds.add(entry.getBuildId());
-      packageIds.add(entry.getMetadata().get(ID));
-    }
+  @Override
+  public long getGeneration() {
+    ensureLoaded();
+    return myGeneration;
+  }
 
+  @NotNull
+  public Map<String, Long> getIndexStatistics() {
+    final PackagesIndexStatistics statistics = getStatistics();
     final Map<String, Long> stats = new HashMap<>();
-    stats.put(TOTAL_NUMBER_OF_ITEMS_STAT, totalItemsNumber);
-    stats.put(NUMBER_OF_INDEXED_BUILDS_STAT, (long) buildIds.size());
-    stats.put(NUMBER_OF_PACKAGE_IDS_STAT, (long) packageIds.size());
+    stats.put(NUMBER_OF_PACKAGES_STAT, statistics.getPackagesCount());
+    stats.put(NUMBER_OF_PACKAGE_BUILDS_STAT, statistics.getBuildsCount());
+    stats.put(NUMBER_OF_PACKAGE_IDS_STAT, statistics.getPackageIdsCount());
+    stats.put(TOTAL_SIZE_OF_PACKAGES_STAT, statistics.getPackagesSize());
+    stats.put(NUMBER_OF_PRERELEASE_PACKAGES_STAT, statistics.getPrereleasePackagesCount());
     return stats;
   }
 
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.index.impl;
+
+import com.intellij.openapi.diagnostic.Logger;
+import jetbrains.buildServer.serverSide.ServerPaths;
+import jetbrains.buildServer.util.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Binary snapshot of the packages index stored on the server to
+ * avoid reading whole metadata storage on startup.
+ *
+ * Snapshot contains transformed package attributes together with
+ * the highest indexed build id.
+ */
+public class PackagesIndexSnapshot {
+
+  private static final Logger LOG = Logger.getInstance(PackagesIndexSnapshot.class.getName());
+  private static final int MAGIC = 0x4E475049;
+  private static final int FORMAT_VERSION = 1;
+  // sizes of empty records: key length, build id and attributes count; name and value lengths
+  private static final int PACKAGE_MIN_SIZE = 16;
+  private static final int ATTRIBUTE_MIN_SIZE = 8;
+
+  private final File myFile;
+
+  public PackagesIndexSnapshot(@NotNull final ServerPaths paths) {
+    this(new File(paths.getPluginDataDirectory(), "nuget/packages-index.bin"));
+  }
+
+  public PackagesIndexSnapshot(@NotNull final File file) {
+    myFile = file;
+  }
+
+  /**
+   * Loads snapshot from the disk.
+   *
+   * @return snapshot or null if it does not exist or could not be read.
+   */
+  @Nullable
+  public Data load() {
+    if (!myFile.isFile()) return null;
+
+    // file is read through a stream rather than mapped, since a live mapping
+    // prevents replacing or deleting the snapshot on Windows
+    final long size = myFile.length();
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile), 64 * 1024))) {
+      if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+        LOG.info("Ignoring NuGet packages index snapshot of unsupported format " + myFile);
+        return null;
+      }
+
+      final long highWaterMark = input.readLong();
+      final SnapshotReader reader = new SnapshotReader(input, size);
+      final int count = reader.readCount(PACKAGE_MIN_SIZE);
+      final List<NuGetPackageBuilder> packages = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        final String key = reader.read();
+        final long buildId = input.readLong();
+        final int attributesCount = reader.readCount(ATTRIBUTE_MIN_SIZE);
+        final Map<String, String> attributes = new HashMap<>(attributesCount * 2);
+        for (int j = 0; j < attributesCount; j++) {
+          attributes.put(reader.read(), reader.read());
+        }
+        packages.add(new NuGetPackageBuilder(key, buildId, attributes));
+      }
+
+      return new Data(highWaterMark, packages);
+    } catch (IOException | IllegalArgumentException e) {
+      LOG.warnAndDebugDetails("Failed to read NuGet packages index snapshot " + myFile, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes snapshot to the disk, previous snapshot is replaced only when write succeeds.
+   *
+   * @param highWaterMark is a highest build id of indexed packages.
+   * @param packages      is a list of indexed packages.
+   */
+  public void save(final long highWaterMark, @NotNull final Collection<IndexedPackage> packages) {
+    final File parent = myFile.getParentFile();
+    final File tempFile = new File(parent, myFile.getName() + ".tmp");
+    try {
+      Files.createDirectories(parent.toPath());
+      try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeLong(highWaterMark);
+        output.writeInt(packages.size());
+        for (IndexedPackage data : packages) {
+          final Map<String, String> attributes = data.getAttributes();
+          writeString(output, data.getKey());
+          output.writeLong(data.getBuildId());
+          output.writeInt(attributes.size());
+          for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            writeString(output, entry.getKey());
+            writeString(output, entry.getValue());
+          }
+        }
+      }
+      Files.move(tempFile.toPath(), myFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOG.warnAndDebugDetails("Failed to write NuGet packages index snapshot " + myFile, e);
+      FileUtil.delete(tempFile);
+    }
+  }
+
+  /**
+   * Removes snapshot, so the next index load reads metadata storage.
+   */
+  public void delete() {
+    FileUtil.delete(myFile);
+  }
+
+  private static void writeString(@NotNull final DataOutputStream output, @NotNull final String value) throws IOException {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private static class SnapshotReader {
+    private final DataInputStream myInput;
+    private final long mySize;
+    private byte[] myBytes = new byte[256];
+
+    private SnapshotReader(@NotNull final DataInputStream input, final long size) {
+      myInput = input;
+      mySize = size;
+    }
+
+    private int readCount(final int recordSize) throws IOException {
+      final int count = myInput.readInt();
+      if (count < 0 || count > mySize / recordSize) {
+        throw new IllegalArgumentException("Invalid records count " + count);
+      }
+      return count;
+    }
+
+    @NotNull
+    private String read() throws IOException {
+      final int length = myInput.readInt();
+      if (length < 0 || length > mySize) {
+        throw new IllegalArgumentException("Invalid string length " + length);
+      }
+
+      if (myBytes.length < length) {
+        myBytes = new byte[Math.max(length, myBytes.length * 2)];
+      }
+      myInput.readFully(myBytes, 0, length);
+      return new String(myBytes, 0, length, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Packages loaded from the snapshot.
+   */
+  public static class Data {
+    private final long myHighWaterMark;
+    private final List<NuGetPackageBuilder> myPackages;
+
+    private Data(final long highWaterMark, @NotNull final List<NuGetPackageBuilder> packages) {
+      myHighWaterMark = highWaterMark;
+      myPackages = packages;
+    }
+
+    /**
+     * @return highest build id of packages in the snapshot.
+     */
+    public long getHighWaterMark() {
+      return myHighWaterMark;
+    }
+
+    @NotNull
+    public List<NuGetPackageBuilder> getPackages() {
+      return myPackages;
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.index.impl;
+
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndex;
+import jetbrains.buildServer.nuget.server.version.FrameworkConstraints;
+import jetbrains.buildServer.nuget.server.version.FrameworkRegistry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+
+/**
+ * Inverted index over tokenized package attributes with
+ * precomputed target frameworks of packages.
+ *
+ * Updates should be performed under the packages index lock.
+ */
+public class PackagesSearchIndex {
+
+  private static final Map<String, Integer> FIELD_WEIGHTS = new LinkedHashMap<>();
+  private static final int EXACT_MATCH_FACTOR = 2;
+  private static final int EXACT_ID_BONUS = 100;
+
+  static {
+    FIELD_WEIGHTS.put(ID, 10);
+    FIELD_WEIGHTS.put(TITLE, 5);
+    FIELD_WEIGHTS.put(TAGS, 3);
+    FIELD_WEIGHTS.put(SUMMARY, 2);
+    FIELD_WEIGHTS.put(DESCRIPTION, 1);
+    FIELD_WEIGHTS.put(AUTHORS, 1);
+  }
+
+  private final NavigableMap<String, Map<IndexedPackage, Integer>> myTokens = new ConcurrentSkipListMap<>();
+  private final Map<IndexedPackage, BitSet> myPackageFrameworks = new ConcurrentHashMap<>();
+  // frameworks are never removed from registry to keep ids of indexed packages valid
+  private final FrameworkRegistry myFrameworks = new FrameworkRegistry();
+
+  public void add(@NotNull final IndexedPackage data) {
+    for (Map.Entry<String, Integer> entry : getTokens(data).entrySet()) {
+      myTokens.computeIfAbsent(entry.getKey(), token -> new ConcurrentHashMap<>()).put(data, entry.getValue());
+    }
+
+    final Set<String> frameworks = FrameworkConstraints.convertFromString(data.getAttributes().get(PackagesIndex.TEAMCITY_FRAMEWORK_CONSTRAINTS));
+    if (!frameworks.isEmpty()) {
+      final BitSet bits = myFrameworks.getFrameworks(frameworks);
+      if (bits != null) {
+        myPackageFrameworks.put(data, bits);
+      }
+    }
+  }
+
+  public void remove(@NotNull final IndexedPackage data) {
+    for (String token : getTokens(data).keySet()) {
+      final Map<IndexedPackage, Integer> packages = myTokens.get(token);
+      if (packages == null) continue;
+
+      packages.remove(data);
+      if (packages.isEmpty()) {
+        myTokens.remove(token);
+      }
+    }
+
+    myPackageFrameworks.remove(data);
+  }
+
+  public void clear() {
+    myTokens.clear();
+    myPackageFrameworks.clear();
+  }
+
+  /**
+   * Finds packages which contain all terms of the search query as
+   * tokens or token prefixes.
+   *
+   * @param searchTerm search query
+   * @return relevance of found packages or null if query does not contain any terms
+   */
+  @Nullable
+  public Map<IndexedPackage, Integer> search(@NotNull final String searchTerm) {
+    final List<String> terms = tokenize(searchTerm);
+    if (terms.isEmpty()) {
+      return null;
+    }
+
+    Map<IndexedPackage, Integer> result = null;
+    for (String term : new LinkedHashSet<>(terms)) {
+      final Map<IndexedPackage, Integer> matches = new HashMap<>();
+      for (Map.Entry<String, Map<IndexedPackage, Integer>> entry : getTokensWithPrefix(term).entrySet()) {
+        final int factor = entry.getKey().length() == term.length() ? EXACT_MATCH_FACTOR : 1;
+        for (Map.Entry<IndexedPackage, Integer> match : entry.getValue().entrySet()) {
+          if (result != null && !result.containsKey(match.getKey())) continue;
+          matches.merge(match.getKey(), match.getValue() * factor, Math::max);
+        }
+      }
+
+      if (result != null) {
+        for (Map.Entry<IndexedPackage, Integer> match : matches.entrySet()) {
+          match.setValue(match.getValue() + result.get(match.getKey()));
+        }
+      }
+
+      result = matches;
+      if (result.isEmpty()) break;
+    }
+
+    final String lowerCaseTerm = searchTerm.trim().toLowerCase(Locale.ROOT);
+    for (Map.Entry<IndexedPackage, Integer> match : result.entrySet()) {
+      if (match.getKey().getLowerCaseId().equals(lowerCaseTerm)) {
+        match.setValue(match.getValue() + EXACT_ID_BONUS);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * @param frameworks requested target frameworks
+   * @return set of indexed frameworks compatible with requested ones
+   */
+  @NotNull
+  public BitSet getCompatibleFrameworks(@NotNull final Set<String> frameworks) {
+    return myFrameworks.getCompatibleFrameworks(frameworks);
+  }
+
+  /**
+   * @param data                 package
+   * @param compatibleFrameworks result of {@link #getCompatibleFrameworks(Set)}
+   * @return whether package does not have framework constraints or supports one of compatible frameworks
+   */
+  public boolean isCompatible(@NotNull final IndexedPackage data, @NotNull final BitSet compatibleFrameworks) {
+    final BitSet frameworks = myPackageFrameworks.get(data);
+    return frameworks == null || frameworks.intersects(compatibleFrameworks);
+  }
+
+  @NotNull
+  private SortedMap<String, Map<IndexedPackage, Integer>> getTokensWithPrefix(@NotNull final String prefix) {
+    return myTokens.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+  }
+
+  @NotNull
+  private static Map<String, Integer> getTokens(@NotNull final IndexedPackage data) {
+    final Map<String, Integer> tokens = new HashMap<>();
+    final Map<String, String> attributes = data.getAttributes();
+    for (Map.Entry<String, Integer> field : FIELD_WEIGHTS.entrySet()) {
+      final String value = attributes.get(field.getKey());
+      if (value == null) continue;
+
+      for (String token : tokenize(value)) {
+        tokens.merge(token, field.getValue(), Math::max);
+      }
+    }
+    return tokens;
+  }
+
+  @NotNull
+  private static List<String> tokenize(@NotNull final String text) {
+    final List<String> tokens = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      final boolean isTokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (isTokenChar && start < 0) {
+        start = i;
+      } else if (!isTokenChar && start >= 0) {
+        tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        start = -1;
+      }
+    }
+    return tokens;
+  }
+}
@@ -22,6 +22,9 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.Comparator;
 
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.ID;
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.VERSION;
+
 /**
  * Created 18.03.13 15:50
  *
@@ -49,17 +52,37 @@ public class SemanticVersionsComparators {
   public static Comparator<NuGetIndexEntry> getEntriesComparator() {
     return new Comparator<NuGetIndexEntry>() {
       public int compare(@NotNull NuGetIndexEntry o1, @NotNull NuGetIndexEntry o2) {
-        final String id1 = o1.getPackageInfo().getId();
-        final String id2 = o2.getPackageInfo().getId();
+        final String id1 = o1.getAttributes().get(ID);
+        final String id2 = o2.getAttributes().get(ID);
 
         int cmp;
         if ((cmp = id1.compareTo(id2)) != 0) return cmp;
 
-        final String v1 = o1.getPackageInfo().getVersion();
-        final String v2 = o2.getPackageInfo().getVersion();
+        final SemanticVersion v1 = o1.getSemanticVersion();
+        final SemanticVersion v2 = o2.getSemanticVersion();
+        if (v1 != null && v2 != null) return v1.compareTo(v2);
 
-        return SemanticVersion.compareAsVersions(v1, v2);
+        return o1.getAttributes().get(VERSION).compareTo(o2.getAttributes().get(VERSION));
       }
     };
   }
+
+  @NotNull
+  public static Comparator<IndexedPackage> getPackagesComparator() {
+    final Comparator<IndexedPackage> versionsComparator = getPackageVersionsComparator();
+    return (o1, o2) -> {
+      int cmp;
+      if ((cmp = o1.getLowerCaseId().compareTo(o2.getLowerCaseId())) != 0) return cmp;
+      return versionsComparator.compare(o1, o2);
+    };
+  }
+
+  @NotNull
+  public static Comparator<IndexedPackage> getPackageVersionsComparator() {
+    return (o1, o2) -> {
+      final SemanticVersion v1 = o1.getSemanticVersion();
+      final SemanticVersion v2 = o2.getSemanticVersion();
+      return v1 != null && v2 != null ? v1.compareTo(v2) : o1.getVersion().compareTo(o2.getVersion());
+    };
+  }
 }
@@ -17,54 +17,74 @@
 package jetbrains.buildServer.nuget.feed.server.index.impl.transform;
 
 import jetbrains.buildServer.nuget.feed.server.index.impl.NuGetPackageBuilder;
+import jetbrains.buildServer.nuget.feed.server.index.impl.PackageAccessFilter;
 import jetbrains.buildServer.nuget.feed.server.index.impl.PackageTransformation;
-import jetbrains.buildServer.serverSide.ProjectManager;
 import jetbrains.buildServer.serverSide.auth.AuthUtil;
+import jetbrains.buildServer.serverSide.auth.AuthorityHolder;
 import jetbrains.buildServer.serverSide.auth.SecurityContext;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
  *         Date: 18.01.12 20:30
  */
-public class AccessCheckTransformation implements PackageTransformation {
-  private final ProjectManager myProjects;
+public class AccessCheckTransformation implements PackageTransformation, PackageAccessFilter {
+  private final BuildTypesCache myBuildTypes;
   private final SecurityContext myContext;
+  private final AuthorityHolder myAuthorityHolder;
+  private final Map<String, Boolean> myAccessibleBuildTypes;
 
-  public AccessCheckTransformation(@NotNull final ProjectManager projects,
+  public AccessCheckTransformation(@NotNull final BuildTypesCache buildTypes,
                                    @NotNull final SecurityContext context) {
-    myProjects = projects;
+    this(buildTypes, context, null);
+  }
+
+  /**
+   * @param authorityHolder is an authority of the request user, when specified
+   *                        access to each build type is checked only once.
+   */
+  private AccessCheckTransformation(@NotNull final BuildTypesCache buildTypes,
+                                    @NotNull final SecurityContext context,
+                                    @Nullable final AuthorityHolder authorityHolder) {
+    myBuildTypes = buildTypes;
     myContext = context;
+    myAuthorityHolder = authorityHolder;
+    myAccessibleBuildTypes = authorityHolder != null ? new HashMap<>() : null;
   }
 
-  @Nullable
-  private String safeFindProjectId(@NotNull final String buildTypeId) {
-    try {
-      return myProjects.findProjectId(buildTypeId);
-    } catch (RuntimeException e) {
-      return null;
+  public boolean isAccessible(@NotNull final String buildTypeId) {
+    if (myAccessibleBuildTypes == null) {
+      return isAccessible(myContext.getAuthorityHolder(), buildTypeId);
     }
+
+    return myAccessibleBuildTypes.computeIfAbsent(buildTypeId, id -> isAccessible(myAuthorityHolder, id));
   }
 
-  private boolean isAccessible(@Nullable final String buildTypeId) {
-    if (buildTypeId == null) return false;
+  private boolean isAccessible(@NotNull final AuthorityHolder authorityHolder, @NotNull final String buildTypeId) {
     //TODO: move it into BuildMetadataStorage instead.
     //check access to the entry
-    final String projectId = safeFindProjectId(buildTypeId);
+    final String projectId = myBuildTypes.findProjectId(buildTypeId);
     //no project no chance
     if (projectId == null) return false;
     //check project access
-    return AuthUtil.hasReadAccessTo(myContext.getAuthorityHolder(), projectId);
+    return AuthUtil.hasReadAccessTo(authorityHolder, projectId);
   }
 
   @NotNull
   public Status applyTransformation(@NotNull NuGetPackageBuilder builder) {
-    return isAccessible(builder.getBuildTypeId()) ? Status.CONTINUE : Status.SKIP;
+    final String buildTypeId = builder.getBuildTypeId();
+    return buildTypeId != null && isAccessible(buildTypeId) ? Status.CONTINUE : Status.SKIP;
   }
 
+  /**
+   * @return copy bound to the current user which remembers access checks results.
+   */
   @NotNull
-  public PackageTransformation createCopy() {
-    return this;
+  public AccessCheckTransformation createCopy() {
+    return new AccessCheckTransformation(myBuildTypes, myContext, myContext.getAuthorityHolder());
   }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.index.impl.transform;
+
+import jetbrains.buildServer.serverSide.*;
+import jetbrains.buildServer.util.EventDispatcher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches build type lookups made by package transformations,
+ * since packages of many entries share the same build types.
+ *
+ * Cache is reset on build types and projects structure changes.
+ */
+public class BuildTypesCache {
+
+  private static final String CACHE_SIZE_PROP = "teamcity.nuget.feed.buildTypes.cache.size";
+  private static final int DEFAULT_CACHE_SIZE = 10000;
+  private static final String NOT_FOUND = "";
+
+  private final ProjectManager myProjects;
+  private volatile Entries myEntries = new Entries();
+
+  public BuildTypesCache(@NotNull final ProjectManager projects,
+                         @NotNull final EventDispatcher<BuildServerListener> dispatcher) {
+    myProjects = projects;
+    dispatcher.addListener(new BuildServerAdapter() {
+      @Override
+      public void buildTypeRegistered(@NotNull SBuildType buildType) {
+        reset();
+      }
+
+      @Override
+      public void buildTypeUnregistered(@NotNull SBuildType buildType) {
+        reset();
+      }
+
+      @Override
+      public void buildTypeMoved(@NotNull SBuildType buildType, @NotNull SProject original) {
+        reset();
+      }
+
+      @Override
+      public void buildTypeExternalIdChanged(@NotNull SBuildType buildType,
+                                             @NotNull String oldExternalId,
+                                             @NotNull String newExternalId) {
+        reset();
+      }
+
+      @Override
+      public void projectMoved(@NotNull SProject project, @NotNull SProject originalParentProject) {
+        reset();
+      }
+
+      @Override
+      public void projectRemoved(@NotNull String projectId) {
+        reset();
+      }
+    });
+  }
+
+  /**
+   * @return internal id of the build type project or null if build type was not found.
+   */
+  @Nullable
+  public String findProjectId(@NotNull final String buildTypeId) {
+    final Entries entries = myEntries;
+    String projectId = entries.myProjectIds.get(buildTypeId);
+    if (projectId == null) {
+      try {
+        projectId = myProjects.findProjectId(buildTypeId);
+      } catch (RuntimeException e) {
+        return null;
+      }
+      put(entries.myProjectIds, buildTypeId, projectId);
+    }
+
+    return toValue(projectId);
+  }
+
+  /**
+   * @return external id of the build type or null if build type was not found.
+   */
+  @Nullable
+  public String findExternalId(@NotNull final String buildTypeId) {
+    final Entries entries = myEntries;
+    String externalId = entries.myExternalIds.get(buildTypeId);
+    if (externalId == null) {
+      final SBuildType buildType = myProjects.findBuildTypeById(buildTypeId);
+      externalId = buildType != null ? buildType.getExternalId() : null;
+      put(entries.myExternalIds, buildTypeId, externalId);
+    }
+
+    return toValue(externalId);
+  }
+
+  public void reset() {
+    // values resolved concurrently with reset are stored into the replaced entries
+    myEntries = new Entries();
+  }
+
+  private static void put(@NotNull final Map<String, String> cache,
+                          @NotNull final String key,
+                          @Nullable final String value) {
+    if (cache.size() >= TeamCityProperties.getInteger(CACHE_SIZE_PROP, DEFAULT_CACHE_SIZE)) {
+      cache.clear();
+    }
+    cache.put(key, value != null ? value : NOT_FOUND);
+  }
+
+  @Nullable
+  private static String toValue(@Nullable final String value) {
+    return value == null || NOT_FOUND.equals(value) ? null : value;
+  }
+
+  private static final class Entries {
+    private final Map<String, String> myProjectIds = new ConcurrentHashMap<>();
+    private final Map<String, String> myExternalIds = new ConcurrentHashMap<>();
+  }
+}
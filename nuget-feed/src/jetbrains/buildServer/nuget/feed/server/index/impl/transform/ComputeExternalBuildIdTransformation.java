@@ -18,8 +18,6 @@ package jetbrains.buildServer.nuget.feed.server.index.impl.transform;
 
 import jetbrains.buildServer.nuget.feed.server.index.impl.NuGetPackageBuilder;
 import jetbrains.buildServer.nuget.feed.server.index.impl.PackageTransformation;
-import jetbrains.buildServer.serverSide.ProjectManager;
-import jetbrains.buildServer.serverSide.SBuildType;
 import jetbrains.buildServer.version.ServerVersionHolder;
 import org.jetbrains.annotations.NotNull;
 
@@ -29,10 +27,10 @@ import org.jetbrains.annotations.NotNull;
  * @author Eugene Petrenko (eugene.petrenko@jetbrains.com)
  */
 public class ComputeExternalBuildIdTransformation implements PackageTransformation {
-  private final ProjectManager myProjects;
+  private final BuildTypesCache myBuildTypes;
 
-  public ComputeExternalBuildIdTransformation(@NotNull final ProjectManager projects) {
-    myProjects = projects;
+  public ComputeExternalBuildIdTransformation(@NotNull final BuildTypesCache buildTypes) {
+    myBuildTypes = buildTypes;
   }
 
   @NotNull
@@ -46,10 +44,10 @@ public class ComputeExternalBuildIdTransformation implements PackageTransformati
       return Status.CONTINUE;
     }
 
-    final SBuildType externalBuildTypeId = myProjects.findBuildTypeById(buildTypeId);
-    if (externalBuildTypeId == null) return Status.SKIP;
+    final String externalId = myBuildTypes.findExternalId(buildTypeId);
+    if (externalId == null) return Status.SKIP;
 
-    builder.setBuildTypeExternalId(externalBuildTypeId.getExternalId());
+    builder.setBuildTypeExternalId(externalId);
     return Status.CONTINUE;
   }
 
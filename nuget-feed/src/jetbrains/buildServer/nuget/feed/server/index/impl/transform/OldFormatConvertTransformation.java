@@ -16,6 +16,7 @@
 
 package jetbrains.buildServer.nuget.feed.server.index.impl.transform;
 
+import jetbrains.buildServer.nuget.feed.server.index.impl.LegacyEntriesMigration;
 import jetbrains.buildServer.nuget.feed.server.index.impl.NuGetPackageBuilder;
 import jetbrains.buildServer.nuget.feed.server.index.impl.ODataDataFormat;
 import jetbrains.buildServer.nuget.feed.server.index.impl.PackageTransformation;
@@ -33,9 +34,12 @@ import org.jetbrains.annotations.Nullable;
 public class OldFormatConvertTransformation implements PackageTransformation {
 
   private final BuildsManager myBuilds;
+  private final LegacyEntriesMigration myMigration;
 
-  public OldFormatConvertTransformation(@NotNull final BuildsManager builds) {
+  public OldFormatConvertTransformation(@NotNull final BuildsManager builds,
+                                        @NotNull final LegacyEntriesMigration migration) {
     myBuilds = builds;
+    myMigration = migration;
   }
 
   @Nullable
@@ -65,6 +69,9 @@ public class OldFormatConvertTransformation implements PackageTransformation {
   @NotNull
   public Status applyTransformation(@NotNull NuGetPackageBuilder builder) {
     if (builder.getBuildTypeId() == null) {
+      // entries left after migration belong to removed builds
+      if (myMigration.isCompleted()) return Status.SKIP;
+
       final String buildTypeId = findBuildTypeId(builder);
       if (buildTypeId == null) return Status.SKIP;
 
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.odata4j;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.odata4j.stax2.QName2;
+import org.odata4j.stax2.XMLWriter2;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * XML writer producing the same output as {@link ManualXMLWriter3}.
+ *
+ * Markup is collected in a pooled character buffer which is written to the
+ * target writer in large blocks. Special characters are found by lookup
+ * in the ASCII escape table, unescaped runs of values and constant markup
+ * are copied into the buffer without creating intermediate strings.
+ */
+public class BufferedXMLWriter implements XMLWriter2 {
+
+  private static final int BUFFER_SIZE = 32 * 1024;
+  private static final int MAX_POOLED_BUFFERS = 16;
+  private static final Queue<char[]> BUFFERS = new ConcurrentLinkedQueue<>();
+  private static final char[][] ESCAPES = new char[128][];
+  private static final char[] DOCUMENT_START = "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"yes\" ?>".toCharArray();
+  private static final char[] XMLNS = " xmlns=\"".toCharArray();
+  private static final char[] XMLNS_PREFIX = " xmlns:".toCharArray();
+  private static final char[] ATTRIBUTE_START = "=\"".toCharArray();
+  private static final char[] END_TAG_START = "</".toCharArray();
+  private static final char[] EMPTY_TAG_END = "/>".toCharArray();
+
+  static {
+    ESCAPES['<'] = "&lt;".toCharArray();
+    ESCAPES['"'] = "&quot;".toCharArray();
+    ESCAPES['>'] = "&gt;".toCharArray();
+    ESCAPES['\''] = "&apos;".toCharArray();
+    ESCAPES['&'] = "&amp;".toCharArray();
+  }
+
+  private final Writer myWriter;
+  private final List<QName2> myElements = new ArrayList<>();
+  private char[] myBuffer;
+  private int myLength;
+  private boolean myIsStartElementOpen;
+
+  public BufferedXMLWriter(@NotNull final Writer writer) {
+    myWriter = writer;
+    final char[] buffer = BUFFERS.poll();
+    myBuffer = buffer != null ? buffer : new char[BUFFER_SIZE];
+  }
+
+  public void startDocument() {
+    append(DOCUMENT_START);
+  }
+
+  public void endDocument() {
+    while (!myElements.isEmpty()) {
+      endElement(myElements.get(myElements.size() - 1).getLocalPart());
+    }
+
+    try {
+      flushBuffer();
+      myWriter.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
+    releaseBuffer();
+  }
+
+  public void startElement(String name) {
+    startElement(new QName2(name));
+  }
+
+  public void startElement(QName2 qname) {
+    startElement(qname, null);
+  }
+
+  public void startElement(QName2 qname, String xmlns) {
+    ensureStartElementClosed();
+    append('<');
+    appendName(qname);
+
+    if (xmlns != null) {
+      append(XMLNS);
+      append(xmlns);
+      append('"');
+    }
+
+    myIsStartElementOpen = true;
+    myElements.add(qname);
+  }
+
+  public void endElement(String localName) {
+    if (myElements.isEmpty()) {
+      throw new EmptyStackException();
+    }
+
+    final QName2 startElementName = myElements.remove(myElements.size() - 1);
+    if (!startElementName.getLocalPart().equals(localName)) {
+      throw new IllegalArgumentException();
+    }
+
+    if (myIsStartElementOpen) {
+      append(EMPTY_TAG_END);
+      myIsStartElementOpen = false;
+      return;
+    }
+
+    append(END_TAG_START);
+    appendName(startElementName);
+    append('>');
+  }
+
+  public void writeAttribute(String localName, String value) {
+    writeAttribute(new QName2(localName), value);
+  }
+
+  public void writeAttribute(QName2 qname, String value) {
+    if (!myIsStartElementOpen) {
+      throw new IllegalStateException();
+    }
+
+    append(' ');
+    appendName(qname);
+    append(ATTRIBUTE_START);
+    appendEscaped(value);
+    append('"');
+  }
+
+  public void writeNamespace(String prefix, String namespaceUri) {
+    if (!myIsStartElementOpen) {
+      throw new IllegalStateException();
+    }
+
+    append(XMLNS_PREFIX);
+    append(prefix);
+    append(ATTRIBUTE_START);
+    append(namespaceUri);
+    append('"');
+  }
+
+  public void writeText(String content) {
+    ensureStartElementClosed();
+    appendEscaped(content);
+  }
+
+  private void ensureStartElementClosed() {
+    if (myIsStartElementOpen) {
+      append('>');
+      myIsStartElementOpen = false;
+    }
+  }
+
+  private void appendName(@NotNull final QName2 qname) {
+    final String prefix = qname.getPrefix();
+    if (prefix != null) {
+      append(prefix);
+      append(':');
+    }
+    append(qname.getLocalPart());
+  }
+
+  private void appendEscaped(@Nullable final String value) {
+    if (value == null) {
+      return;
+    }
+
+    final int length = value.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c < ESCAPES.length) {
+        final char[] escape = ESCAPES[c];
+        if (escape != null) {
+          append(value, start, i);
+          append(escape);
+          start = i + 1;
+        }
+      }
+    }
+
+    append(value, start, length);
+  }
+
+  private void append(final char c) {
+    if (myLength == myBuffer.length) {
+      flushBufferSafe();
+    }
+    myBuffer[myLength++] = c;
+  }
+
+  private void append(@NotNull final char[] chars) {
+    if (myLength + chars.length > myBuffer.length) {
+      flushBufferSafe();
+    }
+    System.arraycopy(chars, 0, myBuffer, myLength, chars.length);
+    myLength += chars.length;
+  }
+
+  private void append(@NotNull final String value) {
+    append(value, 0, value.length());
+  }
+
+  private void append(@NotNull final String value, final int start, final int end) {
+    int offset = start;
+    while (offset < end) {
+      if (myLength == myBuffer.length) {
+        flushBufferSafe();
+      }
+
+      final int count = Math.min(end - offset, myBuffer.length - myLength);
+      value.getChars(offset, offset + count, myBuffer, myLength);
+      myLength += count;
+      offset += count;
+    }
+  }
+
+  private void flushBufferSafe() {
+    try {
+      flushBuffer();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    if (myLength > 0) {
+      myWriter.write(myBuffer, 0, myLength);
+      myLength = 0;
+    }
+  }
+
+  private void releaseBuffer() {
+    if (myBuffer.length == BUFFER_SIZE && BUFFERS.size() < MAX_POOLED_BUFFERS) {
+      BUFFERS.offer(myBuffer);
+    }
+    myBuffer = new char[0];
+  }
+}
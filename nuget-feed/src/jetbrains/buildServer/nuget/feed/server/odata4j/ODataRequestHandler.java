@@ -19,6 +19,7 @@ package jetbrains.buildServer.nuget.feed.server.odata4j;
 import com.intellij.openapi.diagnostic.Logger;
 import com.sun.jersey.spi.container.servlet.ServletContainer;
 import jetbrains.buildServer.controllers.BaseController;
+import jetbrains.buildServer.nuget.feed.server.cache.MetadataResponseCache;
 import jetbrains.buildServer.nuget.feed.server.cache.ResponseCache;
 import jetbrains.buildServer.nuget.feed.server.controllers.NuGetFeedHandler;
 import jetbrains.buildServer.serverSide.TeamCityProperties;
@@ -41,10 +42,13 @@ public class ODataRequestHandler implements NuGetFeedHandler {
 
   private ServletContainer myContainer;
   private final ResponseCache myCache;
+  private final MetadataResponseCache myMetadataCache;
 
   public ODataRequestHandler(@NotNull final NuGetProducerHolder producer,
-                             @NotNull final ResponseCache cache) {
+                             @NotNull final ResponseCache cache,
+                             @NotNull final MetadataResponseCache metadataCache) {
     myCache = cache;
+    myMetadataCache = metadataCache;
     try {
       myContainer = Util.doUnderContextClassLoader(getClass().getClassLoader(), () -> {
         ServletContainer sc = new ServletContainer(new NuGetODataApplication(producer));
@@ -65,7 +69,9 @@ public class ODataRequestHandler implements NuGetFeedHandler {
     }
 
     final ResponseCache.ComputeAction action = this::processFeedRequest;
-    if (TeamCityProperties.getBoolean("teamcity.nuget.feed.use.cache")) {
+    if (MetadataResponseCache.isMetadataRequest(request)) {
+      myMetadataCache.handleRequest("odata4j", request, response, action);
+    } else if (TeamCityProperties.getBoolean("teamcity.nuget.feed.use.cache")) {
       myCache.getOrCompute(request, response, action);
     } else {
       action.compute(request, response);
@@ -85,7 +91,7 @@ public class ODataRequestHandler implements NuGetFeedHandler {
   private static final DomXMLFactoryProvider2 DOM_XML_FACTORY_PROVIDER_2 = new DomXMLFactoryProvider2() {
     @Override
     public XMLWriterFactory2 newXMLWriterFactory2() {
-      return ManualXMLWriter3::new;
+      return BufferedXMLWriter::new;
     }
   };
 }
@@ -17,6 +17,7 @@
 package jetbrains.buildServer.nuget.feed.server.olingo;
 
 import com.intellij.openapi.diagnostic.Logger;
+import jetbrains.buildServer.nuget.feed.server.cache.MetadataResponseCache;
 import jetbrains.buildServer.nuget.feed.server.cache.ResponseCache;
 import jetbrains.buildServer.nuget.feed.server.controllers.NuGetFeedHandler;
 import jetbrains.buildServer.nuget.feed.server.olingo.processor.NuGetServiceFactory;
@@ -36,16 +37,21 @@ public class OlingoRequestHandler implements NuGetFeedHandler {
   private static final Logger LOG = Logger.getInstance(OlingoRequestHandler.class.getName());
   private final NuGetServiceFactory myServiceFactory;
   private final ResponseCache myCache;
+  private final MetadataResponseCache myMetadataCache;
 
   public OlingoRequestHandler(@NotNull final NuGetServiceFactory serviceFactory,
-                              @NotNull final ResponseCache cache) {
+                              @NotNull final ResponseCache cache,
+                              @NotNull final MetadataResponseCache metadataCache) {
     myServiceFactory = serviceFactory;
     myCache = cache;
+    myMetadataCache = metadataCache;
   }
 
   @Override
   public void handleRequest(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response) throws Exception {
-    if (TeamCityProperties.getBoolean("teamcity.nuget.feed.use.cache")) {
+    if (MetadataResponseCache.isMetadataRequest(request)) {
+      myMetadataCache.handleRequest("olingo", request, response, this::processFeedRequest);
+    } else if (TeamCityProperties.getBoolean("teamcity.nuget.feed.use.cache")) {
       myCache.getOrCompute(request, response, this::processFeedRequest);
     } else {
       processFeedRequest(request, response);
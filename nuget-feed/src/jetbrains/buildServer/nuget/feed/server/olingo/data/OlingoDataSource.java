@@ -20,6 +20,7 @@ import jetbrains.buildServer.nuget.feed.server.MetadataConstants;
 import jetbrains.buildServer.nuget.feed.server.NuGetAPIVersion;
 import jetbrains.buildServer.nuget.feed.server.index.NuGetFeed;
 import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import jetbrains.buildServer.util.CollectionsUtil;
 import jetbrains.buildServer.util.StringUtil;
 import org.apache.olingo.odata2.api.edm.EdmEntitySet;
 import org.apache.olingo.odata2.api.edm.EdmException;
@@ -81,11 +82,35 @@ public class OlingoDataSource {
    */
   @NotNull
   public List<?> readData(@NotNull final EdmEntitySet entitySet) throws ODataHttpException, EdmException {
-    if (MetadataConstants.ENTITY_SET_NAME.equals(entitySet.getName())) {
+    return readData(entitySet, PackagesQuery.ALL);
+  }
+
+  /**
+   * Retrieves entity set data matching the query.
+   *
+   * @param entitySet is a target entity set.
+   * @param query     is a query resolved by the packages index.
+   * @return data
+   */
+  @NotNull
+  public List<NuGetIndexEntry> readData(@NotNull final EdmEntitySet entitySet,
+                                        @NotNull final PackagesQuery query) throws ODataHttpException, EdmException {
+    if (!MetadataConstants.ENTITY_SET_NAME.equals(entitySet.getName())) {
+      throw new ODataNotImplementedException();
+    }
+
+    if (query.isEmpty()) {
       return myFeed.getAll();
     }
 
-    throw new ODataNotImplementedException();
+    final List<NuGetIndexEntry> entries;
+    if (query.getId() != null) {
+      entries = myFeed.findPackagesById(query.getId());
+    } else {
+      entries = myFeed.getLatestVersions(query.isAbsoluteLatestVersion());
+    }
+
+    return CollectionsUtil.filterCollection(entries, query::matches);
   }
 
   /**
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.olingo.data;
+
+import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+
+/**
+ * Conditions on packages entity set which could be resolved by the packages index.
+ */
+public class PackagesQuery {
+
+  public static final PackagesQuery ALL = new PackagesQuery(null, false, false);
+
+  private final String myId;
+  private final boolean myIsLatestVersion;
+  private final boolean myIsAbsoluteLatestVersion;
+
+  public PackagesQuery(@Nullable final String id,
+                       final boolean isLatestVersion,
+                       final boolean isAbsoluteLatestVersion) {
+    myId = id;
+    myIsLatestVersion = isLatestVersion;
+    myIsAbsoluteLatestVersion = isAbsoluteLatestVersion;
+  }
+
+  /**
+   * @return package id, case insensitive
+   */
+  @Nullable
+  public String getId() {
+    return myId;
+  }
+
+  public boolean isLatestVersion() {
+    return myIsLatestVersion;
+  }
+
+  public boolean isAbsoluteLatestVersion() {
+    return myIsAbsoluteLatestVersion;
+  }
+
+  public boolean isEmpty() {
+    return myId == null && !myIsLatestVersion && !myIsAbsoluteLatestVersion;
+  }
+
+  /**
+   * Checks conditions against attributes of index entry.
+   */
+  public boolean matches(@NotNull final NuGetIndexEntry entry) {
+    final Map<String, String> attributes = entry.getAttributes();
+    if (myId != null && !myId.equalsIgnoreCase(attributes.get(ID))) return false;
+    if (myIsLatestVersion && !Boolean.parseBoolean(attributes.get(IS_LATEST_VERSION))) return false;
+    if (myIsAbsoluteLatestVersion && !Boolean.parseBoolean(attributes.get(IS_ABSOLUTE_LATEST_VERSION))) return false;
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "PackagesQuery{" +
+      "myId='" + myId + '\'' +
+      ", myIsLatestVersion=" + myIsLatestVersion +
+      ", myIsAbsoluteLatestVersion=" + myIsAbsoluteLatestVersion +
+      '}';
+  }
+}
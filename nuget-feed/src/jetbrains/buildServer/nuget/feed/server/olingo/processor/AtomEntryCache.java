@@ -0,0 +1,188 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.olingo.processor;
+
+import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import jetbrains.buildServer.nuget.feed.server.index.impl.PackageAttributes;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.IS_ABSOLUTE_LATEST_VERSION;
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.IS_LATEST_VERSION;
+
+/**
+ * Segmented LRU cache of serialized Atom feed entries limited by the total size in bytes.
+ *
+ * Fragments are stored per feed, i.e. service root and entity type of the API
+ * version, and package key. Each fragment keeps the index entry it was rendered
+ * from and is reused only for the same entry or an entry sharing its indexed
+ * attributes, so fragments of changed packages are replaced on the next request.
+ */
+public class AtomEntryCache {
+  private static final long DEFAULT_MAX_SIZE = 32L * 1024 * 1024;
+  private static final int SEGMENTS_COUNT = 16;
+  private static final int ENTRY_OVERHEAD = 64;
+
+  private final Segment[] mySegments = new Segment[SEGMENTS_COUNT];
+  private final long mySegmentMaxSize;
+
+  public AtomEntryCache() {
+    this(TeamCityProperties.getLong("teamcity.nuget.feed.entries.cache.maxSize", DEFAULT_MAX_SIZE));
+  }
+
+  public AtomEntryCache(final long maxSize) {
+    mySegmentMaxSize = maxSize / SEGMENTS_COUNT;
+    for (int i = 0; i < SEGMENTS_COUNT; i++) {
+      mySegments[i] = new Segment();
+    }
+  }
+
+  /**
+   * @param feedKey is a feed key.
+   * @param entry   is an index entry.
+   * @return serialized entry or null if it was not cached or entry was changed.
+   */
+  @Nullable
+  public byte[] get(@NotNull final String feedKey, @NotNull final NuGetIndexEntry entry) {
+    final String key = getKey(feedKey, entry);
+    final Segment segment = getSegment(key);
+    final Fragment fragment;
+    synchronized (segment) {
+      fragment = segment.myFragments.get(key);
+    }
+
+    if (fragment == null || !fragment.isRenderedFrom(entry)) {
+      return null;
+    }
+
+    return fragment.myContent;
+  }
+
+  /**
+   * Stores serialized entry replacing the previous one.
+   *
+   * @param feedKey is a feed key.
+   * @param entry   is an index entry.
+   * @param content is a serialized entry.
+   */
+  public void put(@NotNull final String feedKey, @NotNull final NuGetIndexEntry entry, @NotNull final byte[] content) {
+    final String key = getKey(feedKey, entry);
+    final Fragment fragment = new Fragment(entry, content, ENTRY_OVERHEAD + 2L * key.length() + content.length);
+    if (fragment.mySize > mySegmentMaxSize) {
+      return;
+    }
+
+    final Segment segment = getSegment(key);
+    synchronized (segment) {
+      final Fragment previous = segment.myFragments.put(key, fragment);
+      if (previous != null) {
+        segment.mySize -= previous.mySize;
+      }
+      segment.mySize += fragment.mySize;
+
+      final Iterator<Fragment> fragments = segment.myFragments.values().iterator();
+      while (segment.mySize > mySegmentMaxSize && fragments.hasNext()) {
+        segment.mySize -= fragments.next().mySize;
+        fragments.remove();
+      }
+    }
+  }
+
+  public void clear() {
+    for (Segment segment : mySegments) {
+      synchronized (segment) {
+        segment.myFragments.clear();
+        segment.mySize = 0;
+      }
+    }
+  }
+
+  public int getCount() {
+    int count = 0;
+    for (Segment segment : mySegments) {
+      synchronized (segment) {
+        count += segment.myFragments.size();
+      }
+    }
+    return count;
+  }
+
+  public long getSize() {
+    long size = 0;
+    for (Segment segment : mySegments) {
+      synchronized (segment) {
+        size += segment.mySize;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Latest version flags depend on the request access filters, so
+   * both variants of the package entry could be cached.
+   */
+  @NotNull
+  private static String getKey(@NotNull final String feedKey, @NotNull final NuGetIndexEntry entry) {
+    final Map<String, String> attributes = entry.getAttributes();
+    return feedKey + " " + entry.getKey() + " " +
+      Boolean.parseBoolean(attributes.get(IS_LATEST_VERSION)) + " " +
+      Boolean.parseBoolean(attributes.get(IS_ABSOLUTE_LATEST_VERSION));
+  }
+
+  @NotNull
+  private Segment getSegment(@NotNull final String key) {
+    final int hash = key.hashCode();
+    return mySegments[(hash ^ (hash >>> 16)) & (SEGMENTS_COUNT - 1)];
+  }
+
+  private static final class Segment {
+    private final LinkedHashMap<String, Fragment> myFragments = new LinkedHashMap<>(16, 0.75f, true);
+    private long mySize;
+  }
+
+  private static final class Fragment {
+    private final NuGetIndexEntry myEntry;
+    private final byte[] myContent;
+    private final long mySize;
+
+    private Fragment(@NotNull final NuGetIndexEntry entry, @NotNull final byte[] content, final long size) {
+      myEntry = entry;
+      myContent = content;
+      mySize = size;
+    }
+
+    /**
+     * Entries of the packages index with other latest version flags share
+     * attributes data, other entries are not compared by values.
+     */
+    private boolean isRenderedFrom(@NotNull final NuGetIndexEntry entry) {
+      if (myEntry == entry) return true;
+
+      final Map<String, String> attributes = myEntry.getAttributes();
+      final Map<String, String> otherAttributes = entry.getAttributes();
+      if (attributes == otherAttributes) return true;
+
+      return attributes instanceof PackageAttributes && otherAttributes instanceof PackageAttributes &&
+        ((PackageAttributes) attributes).hasSameData((PackageAttributes) otherAttributes);
+    }
+  }
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.olingo.processor;
+
+import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import org.apache.olingo.odata2.api.edm.*;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.core.commons.ContentType;
+import org.apache.olingo.odata2.core.commons.Encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Serializes entity set data into an Atom feed as UTF-8 bytes.
+ *
+ * Produces the same document as EntityProvider.writeFeed, but reads property
+ * values directly from the data objects and renders entries one by one
+ * while the stream is consumed, so neither value maps nor the whole
+ * response are kept in memory. Rendered entries are reused
+ * from the {@link AtomEntryCache} when possible.
+ */
+public class AtomFeedStream extends InputStream {
+
+    private static final String SCHEME = "http://schemas.microsoft.com/ado/2007/08/dataservices/scheme";
+    private static final String FEED_START = "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+            "<feed xmlns=\"http://www.w3.org/2005/Atom\"" +
+            " xmlns:m=\"http://schemas.microsoft.com/ado/2007/08/dataservices/metadata\"" +
+            " xmlns:d=\"http://schemas.microsoft.com/ado/2007/08/dataservices\" xml:base=\"";
+    private static final String MEDIA_VALUE = "/$value";
+    private static final List<String> SUPPORTED_TARGET_PATHS = Arrays.asList(
+            EdmTargetPath.SYNDICATION_TITLE,
+            EdmTargetPath.SYNDICATION_UPDATED,
+            EdmTargetPath.SYNDICATION_AUTHORNAME);
+    private static final EdmSimpleType DATE_TIME_OFFSET = EdmSimpleTypeKind.DateTimeOffset.getEdmSimpleTypeInstance();
+
+    private final FeedType feedType;
+    private final Iterator<NuGetIndexEntry> entries;
+    private final Function<NuGetIndexEntry, ?> mapper;
+    private final BeanPropertyAccess valueAccess;
+    private final AtomEntryCache cache;
+    private final String nextLink;
+    private final Chunk chunk = new Chunk();
+    private final Writer writer = new OutputStreamWriter(chunk, StandardCharsets.UTF_8);
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean finished;
+
+    private AtomFeedStream(final FeedType feedType, final Iterator<NuGetIndexEntry> entries,
+                           final Function<NuGetIndexEntry, ?> mapper, final BeanPropertyAccess valueAccess,
+                           final AtomEntryCache cache, final String nextLink) {
+        this.feedType = feedType;
+        this.entries = entries;
+        this.mapper = mapper;
+        this.valueAccess = valueAccess;
+        this.cache = cache;
+        this.nextLink = nextLink;
+    }
+
+    /**
+     * @param contentType is a negotiated response content type.
+     * @return true if response should be written as an Atom document.
+     */
+    public static boolean isAtom(final String contentType) {
+        return ContentType.createAsCustom(contentType).getODataFormat() == ContentType.ODataFormat.ATOM;
+    }
+
+    /**
+     * Checks whether feed for the entity set could be written by this stream:
+     * entity type should be a media link entry with simple properties only,
+     * without concurrency tokens and with standard syndication mappings.
+     *
+     * @param entitySet is a target entity set.
+     * @return true if supported.
+     */
+    public static boolean isSupported(final EdmEntitySet entitySet) throws EdmException {
+        final EdmEntityType entityType = entitySet.getEntityType();
+        if (!entityType.hasStream() || !entityType.getNavigationPropertyNames().isEmpty()) {
+            return false;
+        }
+
+        final Set<String> targetPaths = new HashSet<>();
+        for (final String propertyName : entityType.getPropertyNames()) {
+            final EdmProperty property = (EdmProperty) entityType.getProperty(propertyName);
+            if (!property.isSimple() || property.getMimeType() != null) {
+                return false;
+            }
+
+            final EdmMapping mapping = property.getMapping();
+            if (mapping != null && mapping.getMediaResourceMimeTypeKey() != null) {
+                return false;
+            }
+
+            final EdmFacets facets = property.getFacets();
+            if (facets != null && facets.getConcurrencyMode() == EdmConcurrencyMode.Fixed) {
+                return false;
+            }
+
+            final EdmCustomizableFeedMappings feedMappings = property.getCustomizableFeedMappings();
+            if (feedMappings != null) {
+                if (feedMappings.getFcNsUri() != null || Boolean.FALSE.equals(feedMappings.isFcKeepInContent())) {
+                    return false;
+                }
+
+                final String targetPath = feedMappings.getFcTargetPath();
+                if (targetPath != null && (!SUPPORTED_TARGET_PATHS.contains(targetPath) || !targetPaths.add(targetPath))) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates a feed stream, feed header is rendered immediately.
+     *
+     * @param entitySet   is a target entity set, should be {@link #isSupported(EdmEntitySet) supported}.
+     * @param serviceRoot is a service root.
+     * @param entries     is a list of feed entries.
+     * @param mapper      maps entries into data objects, should depend only on the service root.
+     * @param valueAccess provides property values of data objects.
+     * @param cache       is a cache of rendered entries or null.
+     * @param inlineCount is an inline count or null.
+     * @param nextLink    is a next page link or null.
+     * @return stream of feed content.
+     */
+    public static AtomFeedStream create(final EdmEntitySet entitySet, final URI serviceRoot,
+                                        final List<NuGetIndexEntry> entries,
+                                        final Function<NuGetIndexEntry, ?> mapper,
+                                        final BeanPropertyAccess valueAccess, final AtomEntryCache cache,
+                                        final Integer inlineCount, final String nextLink) throws ODataException {
+        final FeedType feedType = new FeedType(entitySet, serviceRoot);
+        final AtomFeedStream stream = new AtomFeedStream(feedType, entries.iterator(), mapper, valueAccess, cache, nextLink);
+        try {
+            stream.writeHeader(inlineCount);
+        } catch (IOException e) {
+            throw new ODataException(e);
+        }
+        stream.setBuffer(stream.chunk.getBuffer(), stream.chunk.size());
+
+        return stream;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        if (!ensureAvailable()) {
+            return -1;
+        }
+
+        final int count = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, bytes, offset, count);
+        position += count;
+
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (position >= limit) {
+            if (finished) {
+                return false;
+            }
+
+            if (entries.hasNext()) {
+                nextEntry(entries.next());
+            } else {
+                chunk.reset();
+                writeFooter();
+                setBuffer(chunk.getBuffer(), chunk.size());
+                finished = true;
+            }
+        }
+
+        return true;
+    }
+
+    private void nextEntry(final NuGetIndexEntry entry) throws IOException {
+        byte[] fragment = cache != null ? cache.get(feedType.key, entry) : null;
+        if (fragment != null) {
+            setBuffer(fragment, fragment.length);
+            return;
+        }
+
+        chunk.reset();
+        try {
+            writeEntry(mapper.apply(entry));
+        } catch (ODataException e) {
+            throw new IOException("Failed to write feed entry", e);
+        }
+
+        if (cache != null) {
+            fragment = chunk.toByteArray();
+            cache.put(feedType.key, entry, fragment);
+            setBuffer(fragment, fragment.length);
+        } else {
+            setBuffer(chunk.getBuffer(), chunk.size());
+        }
+    }
+
+    private void setBuffer(final byte[] bytes, final int length) {
+        buffer = bytes;
+        position = 0;
+        limit = length;
+    }
+
+    private void writeHeader(final Integer inlineCount) throws IOException, ODataException {
+        writer.write(FEED_START);
+        writeAttribute(feedType.serviceRoot.toASCIIString());
+        writer.write("\"><id>");
+        writeText(feedType.serviceRoot + feedType.entitySetLink);
+        writer.write("</id><title type=\"text\">");
+        writeText(feedType.entitySetName);
+        writer.write("</title><updated>");
+        writeText(DATE_TIME_OFFSET.valueToString(new Date(), EdmLiteralKind.DEFAULT, null));
+        writer.write("</updated><author><name></name></author><link href=\"");
+        writeAttribute(feedType.entitySetLink);
+        writer.write("\" rel=\"self\" title=\"");
+        writeAttribute(feedType.entitySetName);
+        writer.write("\"></link>");
+        if (inlineCount != null) {
+            writer.write("<m:count>");
+            writer.write(String.valueOf(inlineCount));
+            writer.write("</m:count>");
+        }
+        writer.flush();
+    }
+
+    private void writeFooter() throws IOException {
+        if (nextLink != null) {
+            writer.write("<link href=\"");
+            writeAttribute(nextLink);
+            writer.write("\" rel=\"next\"></link>");
+        }
+        writer.write("</feed>");
+        writer.flush();
+    }
+
+    private void writeEntry(final Object data) throws IOException, ODataException {
+        final String selfLink = feedType.entitySetLink + "(" + getEntryKey(data) + ")";
+        final String mediaLink = selfLink + MEDIA_VALUE;
+
+        writer.write("<entry><id>");
+        writeText(feedType.serviceRoot.toASCIIString() + selfLink);
+        writer.write("</id><title type=\"text\">");
+        if (feedType.titleProperty != null) {
+            final String title = feedType.titleProperty.toString(getValue(data, feedType.titleProperty));
+            if (title != null) {
+                writeText(title);
+            }
+        } else {
+            writeText(feedType.entitySetName);
+        }
+        writer.write("</title><updated>");
+        writeText(getUpdated(data));
+        writer.write("</updated>");
+
+        if (feedType.authorProperty != null) {
+            final String author = feedType.authorProperty.toString(getValue(data, feedType.authorProperty));
+            if (author != null) {
+                writer.write("<author><name>");
+                writeText(author);
+                writer.write("</name></author>");
+            }
+        }
+
+        writer.write("<category term=\"");
+        writeAttribute(feedType.entityTypeName);
+        writer.write("\" scheme=\"" + SCHEME + "\"></category><link href=\"");
+        writeAttribute(selfLink);
+        writer.write("\" rel=\"edit\" title=\"");
+        writeAttribute(feedType.entityTypeTitle);
+        writer.write("\"></link>");
+
+        String mimeType = (String) valueAccess.getPropertyValue(data, feedType.mimeTypeKey);
+        if (mimeType == null) {
+            mimeType = ContentType.APPLICATION_OCTET_STREAM.toString();
+        }
+        String source = (String) valueAccess.getPropertyValue(data, feedType.sourceKey);
+        if (source == null) {
+            source = mediaLink;
+        }
+
+        writer.write("<link href=\"");
+        writeAttribute(mediaLink);
+        writer.write("\" rel=\"edit-media\" type=\"");
+        writeAttribute(mimeType);
+        writer.write("\"></link><content type=\"");
+        writeAttribute(mimeType);
+        writer.write("\" src=\"");
+        writeAttribute(source);
+        writer.write("\"/><m:properties>");
+
+        for (final PropertyType property : feedType.properties) {
+            final String value = property.toString(getValue(data, property));
+            if (value == null) {
+                writer.write(property.nullElement);
+            } else {
+                writer.write(property.startElement);
+                writeText(value);
+                writer.write(property.endElement);
+            }
+        }
+
+        writer.write("</m:properties></entry>");
+        writer.flush();
+    }
+
+    private String getEntryKey(final Object data) throws ODataException {
+        final StringBuilder key = new StringBuilder();
+        for (final PropertyType property : feedType.keyProperties) {
+            if (key.length() > 0) {
+                key.append(',');
+            }
+            if (feedType.keyProperties.size() > 1) {
+                key.append(Encoder.encode(property.name)).append('=');
+            }
+            key.append(Encoder.encode(property.type.valueToString(
+                    getValue(data, property), EdmLiteralKind.URI, property.facets)));
+        }
+
+        return key.toString();
+    }
+
+    private String getUpdated(final Object data) throws ODataException {
+        final Object value = feedType.updatedProperty != null ? getValue(data, feedType.updatedProperty) : null;
+        if (value == null) {
+            return DATE_TIME_OFFSET.valueToString(new Date(), EdmLiteralKind.DEFAULT, null);
+        }
+
+        return DATE_TIME_OFFSET.valueToString(value, EdmLiteralKind.DEFAULT, feedType.updatedProperty.facets);
+    }
+
+    private Object getValue(final Object data, final PropertyType property) throws ODataException {
+        return valueAccess.getPropertyValue(data, property.property);
+    }
+
+    private void writeText(final String value) throws IOException {
+        writeEscaped(value, false);
+    }
+
+    private void writeAttribute(final String value) throws IOException {
+        writeEscaped(value, true);
+    }
+
+    private void writeEscaped(final String value, final boolean attribute) throws IOException {
+        int start = 0;
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final String replacement;
+            switch (value.charAt(i)) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = attribute ? "&quot;" : null;
+                    break;
+                default:
+                    replacement = null;
+            }
+
+            if (replacement != null) {
+                writer.write(value, start, i - start);
+                writer.write(replacement);
+                start = i + 1;
+            }
+        }
+
+        writer.write(value, start, length - start);
+    }
+
+    /**
+     * Feed metadata resolved once per request.
+     */
+    private static final class FeedType {
+        private final String key;
+        private final URI serviceRoot;
+        private final String entitySetName;
+        private final String entitySetLink;
+        private final String entityTypeName;
+        private final String entityTypeTitle;
+        private final String mimeTypeKey;
+        private final String sourceKey;
+        private final List<PropertyType> properties = new ArrayList<>();
+        private final List<PropertyType> keyProperties = new ArrayList<>();
+        private PropertyType titleProperty;
+        private PropertyType updatedProperty;
+        private PropertyType authorProperty;
+
+        private FeedType(final EdmEntitySet entitySet, final URI serviceRoot) throws EdmException {
+            final EdmEntityType entityType = entitySet.getEntityType();
+            final EdmEntityContainer container = entitySet.getEntityContainer();
+            final EdmMapping mapping = entityType.getMapping();
+
+            this.serviceRoot = serviceRoot;
+            entitySetName = entitySet.getName();
+            entitySetLink = (container.isDefaultEntityContainer() ? "" : Encoder.encode(container.getName()) + ".")
+                    + Encoder.encode(entitySetName);
+            entityTypeName = entityType.getNamespace() + "." + entityType.getName();
+            entityTypeTitle = entityType.getName();
+            mimeTypeKey = mapping != null ? mapping.getMediaResourceMimeTypeKey() : null;
+            sourceKey = mapping != null ? mapping.getMediaResourceSourceKey() : null;
+            key = serviceRoot.toASCIIString() + " " + entityTypeName + " " + entitySetLink;
+
+            final List<String> keyNames = entityType.getKeyPropertyNames();
+            final Map<String, PropertyType> keys = new HashMap<>();
+            for (final String propertyName : entityType.getPropertyNames()) {
+                final PropertyType property = new PropertyType((EdmProperty) entityType.getProperty(propertyName));
+                properties.add(property);
+                if (keyNames.contains(propertyName)) {
+                    keys.put(propertyName, property);
+                }
+
+                final EdmCustomizableFeedMappings feedMappings = property.property.getCustomizableFeedMappings();
+                final String targetPath = feedMappings != null ? feedMappings.getFcTargetPath() : null;
+                if (EdmTargetPath.SYNDICATION_TITLE.equals(targetPath)) {
+                    titleProperty = property;
+                } else if (EdmTargetPath.SYNDICATION_UPDATED.equals(targetPath)) {
+                    updatedProperty = property;
+                } else if (EdmTargetPath.SYNDICATION_AUTHORNAME.equals(targetPath)) {
+                    authorProperty = property;
+                }
+            }
+
+            for (final String keyName : keyNames) {
+                keyProperties.add(keys.get(keyName));
+            }
+        }
+    }
+
+    /**
+     * Property metadata with pre-rendered elements.
+     */
+    private static final class PropertyType {
+        private final EdmProperty property;
+        private final String name;
+        private final EdmSimpleType type;
+        private final EdmFacets facets;
+        private final String startElement;
+        private final String endElement;
+        private final String nullElement;
+
+        private PropertyType(final EdmProperty property) throws EdmException {
+            this.property = property;
+            name = property.getName();
+            type = (EdmSimpleType) property.getType();
+            facets = property.getFacets();
+            startElement = "<d:" + name + ">";
+            endElement = "</d:" + name + ">";
+            nullElement = "<d:" + name + " m:null=\"true\">" + endElement;
+        }
+
+        private String toString(final Object value) throws EdmSimpleTypeException {
+            return type.valueToString(value, EdmLiteralKind.DEFAULT, facets);
+        }
+    }
+
+    /**
+     * Reusable buffer with access to the written bytes.
+     */
+    private static final class Chunk extends ByteArrayOutputStream {
+        private Chunk() {
+            super(4096);
+        }
+
+        private byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.olingo.processor;
+
+import com.intellij.openapi.diagnostic.Logger;
+import jetbrains.buildServer.serverSide.SecurityContextEx;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.serverSide.auth.AuthorityHolder;
+import jetbrains.buildServer.util.NamedDaemonThreadFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes read-only parts of $batch requests concurrently.
+ *
+ * Parts of all batches share a bounded pool of threads and each batch
+ * uses at most the configured number of threads including the request one.
+ * Request thread also takes pending parts, so a busy pool never makes
+ * the batch slower than the sequential execution.
+ */
+public class BatchPartsExecutor {
+  private static final Logger LOG = Logger.getInstance(BatchPartsExecutor.class.getName());
+  private static final int DEFAULT_PARALLELISM = 4;
+
+  private final SecurityContextEx mySecurityContext;
+  private final ThreadPoolExecutor myExecutor;
+
+  public BatchPartsExecutor(@NotNull final SecurityContextEx securityContext) {
+    mySecurityContext = securityContext;
+    final int threads = TeamCityProperties.getInteger("teamcity.nuget.feed.batch.threads",
+      Math.min(8, Runtime.getRuntime().availableProcessors()));
+    myExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(), new NamedDaemonThreadFactory("NuGet Feed Batch"));
+    myExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Executes tasks on behalf of the current user.
+   *
+   * @param tasks are tasks to execute.
+   * @return results in the order of tasks.
+   * @throws Exception the first failure in the order of tasks.
+   */
+  @NotNull
+  @SuppressWarnings("unchecked")
+  public <T> List<T> execute(@NotNull final List<? extends Callable<T>> tasks) throws Exception {
+    final int parallelism = Math.min(tasks.size(),
+      TeamCityProperties.getInteger("teamcity.nuget.feed.batch.parallelism", DEFAULT_PARALLELISM));
+    if (parallelism <= 1) {
+      final List<T> results = new ArrayList<>(tasks.size());
+      for (Callable<T> task : tasks) {
+        results.add(task.call());
+      }
+      return results;
+    }
+
+    final Object[] results = new Object[tasks.size()];
+    final Throwable[] errors = new Throwable[tasks.size()];
+    final AtomicInteger nextTask = new AtomicInteger();
+    final CountDownLatch completed = new CountDownLatch(tasks.size());
+    final Runnable worker = () -> {
+      int index;
+      while ((index = nextTask.getAndIncrement()) < tasks.size()) {
+        try {
+          results[index] = tasks.get(index).call();
+        } catch (Throwable t) {
+          errors[index] = t;
+        } finally {
+          completed.countDown();
+        }
+      }
+    };
+
+    final AuthorityHolder authorityHolder = mySecurityContext.getAuthorityHolder();
+    final List<Future<?>> workers = new ArrayList<>(parallelism - 1);
+    try {
+      for (int i = 1; i < parallelism; i++) {
+        workers.add(myExecutor.submit(() -> {
+          try {
+            mySecurityContext.runAs(authorityHolder, worker::run);
+          } catch (Throwable t) {
+            LOG.warnAndDebugDetails("Failed to execute batch request parts. " + t.getMessage(), t);
+          }
+        }));
+      }
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Batch request parts will be executed in the request thread. " + e.getMessage());
+    }
+
+    worker.run();
+
+    // Workers which were not started yet have nothing to do
+    for (Future<?> future : workers) {
+      future.cancel(false);
+    }
+    completed.await();
+
+    for (Throwable error : errors) {
+      if (error instanceof Exception) throw (Exception) error;
+      if (error instanceof Error) throw (Error) error;
+      if (error != null) throw new ExecutionException(error);
+    }
+
+    return (List<T>) Arrays.asList(results);
+  }
+
+  public void dispose() {
+    myExecutor.shutdownNow();
+  }
+}
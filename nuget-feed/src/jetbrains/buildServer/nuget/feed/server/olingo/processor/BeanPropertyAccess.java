@@ -22,16 +22,27 @@ import org.apache.olingo.odata2.api.exception.ODataException;
 import org.apache.olingo.odata2.api.exception.ODataHttpException;
 import org.apache.olingo.odata2.api.exception.ODataNotFoundException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Data access.
+ *
+ * Getters are resolved once per data type and property into method handles,
+ * reflection is used only for nested property paths and inaccessible methods.
  */
 public class BeanPropertyAccess {
 
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private final ConcurrentMap<Class<?>, ConcurrentMap<String, PropertyGetter>> myGetters = new ConcurrentHashMap<>();
+
   public <T> Object getPropertyValue(final T data, final EdmProperty property) throws ODataException {
     return getValue(data, getGetterMethodName(property));
   }
@@ -74,6 +85,55 @@ public class BeanPropertyAccess {
   }
 
   private <T> Object getValue(final T data, final String methodName) throws ODataNotFoundException {
+    if (data == null) {
+      return null;
+    }
+
+    return getGetter(data.getClass(), methodName).getValue(data);
+  }
+
+  private PropertyGetter getGetter(final Class<?> type, final String methodName) {
+    final ConcurrentMap<String, PropertyGetter> getters = myGetters.computeIfAbsent(type, key -> new ConcurrentHashMap<>());
+    PropertyGetter getter = getters.get(methodName);
+    if (getter == null) {
+      getter = createGetter(type, methodName);
+      getters.putIfAbsent(methodName, getter);
+    }
+
+    return getter;
+  }
+
+  private PropertyGetter createGetter(final Class<?> type, final String methodName) {
+    if (methodName.contains(".")) {
+      return data -> getValueByReflection(data, methodName);
+    }
+
+    final Method method;
+    try {
+      method = type.getMethod(methodName);
+    } catch (NoSuchMethodException | SecurityException e) {
+      return data -> {
+        throw new ODataNotFoundException(ODataHttpException.COMMON, e);
+      };
+    }
+
+    final MethodHandle handle;
+    try {
+      handle = MethodHandles.publicLookup().unreflect(method).asType(GETTER_TYPE);
+    } catch (IllegalAccessException e) {
+      return data -> getValueByReflection(data, methodName);
+    }
+
+    return data -> {
+      try {
+        return (Object) handle.invokeExact(data);
+      } catch (Throwable e) {
+        throw new ODataNotFoundException(ODataHttpException.COMMON, e);
+      }
+    };
+  }
+
+  private <T> Object getValueByReflection(final T data, final String methodName) throws ODataNotFoundException {
     Object dataObject = data;
 
     for (final String method : methodName.split("\\.", -1)) {
@@ -170,4 +230,8 @@ public class BeanPropertyAccess {
     }
     return type;
   }
+
+  private interface PropertyGetter {
+    Object getValue(Object data) throws ODataNotFoundException;
+  }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.feed.server.olingo.processor;
+
+import jetbrains.buildServer.nuget.feed.server.olingo.data.PackagesQuery;
+import org.apache.olingo.odata2.api.edm.EdmException;
+import org.apache.olingo.odata2.api.edm.EdmLiteralKind;
+import org.apache.olingo.odata2.api.edm.EdmSimpleType;
+import org.apache.olingo.odata2.api.edm.EdmSimpleTypeException;
+import org.apache.olingo.odata2.api.uri.expression.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+
+/**
+ * Splits $filter expression into conditions resolved by the packages index
+ * and residual predicates which should be evaluated in memory.
+ */
+public class FilterPlan {
+
+    private static final FilterPlan EMPTY = new FilterPlan(PackagesQuery.ALL, Collections.emptyList());
+    private final PackagesQuery query;
+    private final List<CommonExpression> predicates;
+
+    private FilterPlan(final PackagesQuery query, final List<CommonExpression> predicates) {
+        this.query = query;
+        this.predicates = predicates;
+    }
+
+    /**
+     * @return conditions which could be resolved by the packages index.
+     */
+    public PackagesQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * @return predicates which should be satisfied in addition to the query.
+     */
+    public List<CommonExpression> getPredicates() {
+        return predicates;
+    }
+
+    public static FilterPlan create(final FilterExpression filter) throws EdmException {
+        if (filter == null) {
+            return EMPTY;
+        }
+
+        final List<CommonExpression> conditions = new ArrayList<>();
+        collectConditions(filter.getExpression(), conditions);
+
+        String id = null;
+        boolean isLatestVersion = false;
+        boolean isAbsoluteLatestVersion = false;
+        final List<CommonExpression> predicates = new ArrayList<>();
+
+        for (final CommonExpression condition : conditions) {
+            if (isTrueProperty(condition, IS_LATEST_VERSION)) {
+                isLatestVersion = true;
+                continue;
+            }
+
+            if (isTrueProperty(condition, IS_ABSOLUTE_LATEST_VERSION)) {
+                isAbsoluteLatestVersion = true;
+                continue;
+            }
+
+            final String lowerCaseId = getComparedValue(condition, true);
+            if (lowerCaseId != null && id == null && lowerCaseId.equals(lowerCaseId.toLowerCase(Locale.ROOT))) {
+                id = lowerCaseId;
+                continue;
+            }
+
+            // Comparison of ids is case sensitive, so index lookup only narrows the result
+            final String exactId = getComparedValue(condition, false);
+            if (exactId != null && id == null) {
+                id = exactId;
+            }
+
+            predicates.add(condition);
+        }
+
+        return new FilterPlan(new PackagesQuery(id, isLatestVersion, isAbsoluteLatestVersion), predicates);
+    }
+
+    private static void collectConditions(final CommonExpression expression, final List<CommonExpression> conditions) {
+        if (expression.getKind() == ExpressionKind.BINARY) {
+            final BinaryExpression binaryExpression = (BinaryExpression) expression;
+            if (binaryExpression.getOperator() == BinaryOperator.AND) {
+                collectConditions(binaryExpression.getLeftOperand(), conditions);
+                collectConditions(binaryExpression.getRightOperand(), conditions);
+                return;
+            }
+        }
+
+        conditions.add(expression);
+    }
+
+    /**
+     * Matches "Property" and "Property eq true" conditions.
+     */
+    private static boolean isTrueProperty(final CommonExpression expression, final String propertyName) throws EdmException {
+        if (isProperty(expression, propertyName)) {
+            return true;
+        }
+
+        if (expression.getKind() != ExpressionKind.BINARY) {
+            return false;
+        }
+
+        final BinaryExpression binaryExpression = (BinaryExpression) expression;
+        if (binaryExpression.getOperator() != BinaryOperator.EQ) {
+            return false;
+        }
+
+        final CommonExpression left = binaryExpression.getLeftOperand();
+        final CommonExpression right = binaryExpression.getRightOperand();
+        return isProperty(left, propertyName) && Boolean.TRUE.equals(getLiteralValue(right, Boolean.class)) ||
+                isProperty(right, propertyName) && Boolean.TRUE.equals(getLiteralValue(left, Boolean.class));
+    }
+
+    /**
+     * Matches "Id eq 'value'" or "tolower(Id) eq 'value'" conditions.
+     */
+    private static String getComparedValue(final CommonExpression expression, final boolean toLower) throws EdmException {
+        if (expression.getKind() != ExpressionKind.BINARY) {
+            return null;
+        }
+
+        final BinaryExpression binaryExpression = (BinaryExpression) expression;
+        if (binaryExpression.getOperator() != BinaryOperator.EQ) {
+            return null;
+        }
+
+        final CommonExpression left = binaryExpression.getLeftOperand();
+        final CommonExpression right = binaryExpression.getRightOperand();
+        if (isIdProperty(left, toLower)) {
+            return getLiteralValue(right, String.class);
+        }
+
+        if (isIdProperty(right, toLower)) {
+            return getLiteralValue(left, String.class);
+        }
+
+        return null;
+    }
+
+    private static boolean isIdProperty(final CommonExpression expression, final boolean toLower) throws EdmException {
+        if (!toLower) {
+            return isProperty(expression, ID);
+        }
+
+        if (expression.getKind() != ExpressionKind.METHOD) {
+            return false;
+        }
+
+        final MethodExpression methodExpression = (MethodExpression) expression;
+        return methodExpression.getMethod() == MethodOperator.TOLOWER &&
+                methodExpression.getParameterCount() == 1 &&
+                isProperty(methodExpression.getParameters().get(0), ID);
+    }
+
+    private static boolean isProperty(final CommonExpression expression, final String propertyName) throws EdmException {
+        return expression.getKind() == ExpressionKind.PROPERTY &&
+                propertyName.equals(((PropertyExpression) expression).getEdmProperty().getName());
+    }
+
+    private static <T> T getLiteralValue(final CommonExpression expression, final Class<T> type) {
+        if (expression.getKind() != ExpressionKind.LITERAL) {
+            return null;
+        }
+
+        final LiteralExpression literal = (LiteralExpression) expression;
+        final EdmSimpleType literalType = (EdmSimpleType) literal.getEdmType();
+        if (literalType.getDefaultType() != type) {
+            return null;
+        }
+
+        try {
+            return literalType.valueOfString(literal.getUriLiteral(), EdmLiteralKind.URI, null, type);
+        } catch (EdmSimpleTypeException e) {
+            return null;
+        }
+    }
+}
@@ -16,15 +16,22 @@
 
 package jetbrains.buildServer.nuget.feed.server.olingo.processor;
 
+import jetbrains.buildServer.nuget.feed.server.MetadataConstants;
 import jetbrains.buildServer.nuget.feed.server.NuGetFeedConstants;
+import jetbrains.buildServer.nuget.feed.server.NuGetUtils;
 import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import jetbrains.buildServer.nuget.feed.server.index.impl.ODataDataFormat;
+import jetbrains.buildServer.nuget.feed.server.index.impl.SemanticVersionsComparators;
 import jetbrains.buildServer.nuget.feed.server.olingo.data.OlingoDataSource;
+import jetbrains.buildServer.nuget.feed.server.olingo.data.PackagesQuery;
 import jetbrains.buildServer.nuget.feed.server.olingo.model.NuGetMapper;
 import jetbrains.buildServer.nuget.feed.server.olingo.model.V2FeedPackage;
-import jetbrains.buildServer.util.CollectionsUtil;
+import org.apache.olingo.odata2.api.ODataService;
+import org.apache.olingo.odata2.api.ODataServiceFactory;
 import org.apache.olingo.odata2.api.batch.*;
 import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
 import org.apache.olingo.odata2.api.commons.InlineCount;
+import org.apache.olingo.odata2.api.commons.ODataHttpMethod;
 import org.apache.olingo.odata2.api.edm.*;
 import org.apache.olingo.odata2.api.ep.*;
 import org.apache.olingo.odata2.api.exception.*;
@@ -35,11 +42,18 @@ import org.apache.olingo.odata2.api.uri.PathInfo;
 import org.apache.olingo.odata2.api.uri.UriParser;
 import org.apache.olingo.odata2.api.uri.expression.*;
 import org.apache.olingo.odata2.api.uri.info.*;
+import org.apache.olingo.odata2.core.batch.BatchHandlerImpl;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.joda.time.LocalDateTime;
 
 import java.io.InputStream;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
 
 /**
  * Implementation of the centralized parts of OData processing,
@@ -49,18 +63,26 @@ import java.util.*;
 public class NuGetPackagesProcessor extends ODataSingleProcessor {
 
     private static final int SERVER_PAGING_SIZE = NuGetFeedConstants.NUGET_FEED_PACKAGE_SIZE;
+    private static final Set<String> STRING_ORDER_PROPERTIES = new HashSet<>(Arrays.asList(ID, VERSION, NORMALIZED_VERSION, TITLE));
+    private static final Set<String> DATE_ORDER_PROPERTIES = new HashSet<>(Arrays.asList(CREATED, LAST_UPDATED, PUBLISHED));
+    private static final Set<String> COUNT_ORDER_PROPERTIES = new HashSet<>(Arrays.asList("DownloadCount", "VersionDownloadCount"));
     private final BeanPropertyAccess valueAccess;
     private final OlingoDataSource dataSource;
     private final ExpressionEvaluator evaluator;
+    private final AtomEntryCache entryCache;
+    private final BatchPartsExecutor batchExecutor;
 
     public NuGetPackagesProcessor(@NotNull final OlingoDataSource dataSource) {
-        this(dataSource, new BeanPropertyAccess());
+        this(dataSource, new BeanPropertyAccess(), null, null);
     }
 
-    public NuGetPackagesProcessor(final OlingoDataSource dataSource, final BeanPropertyAccess valueAccess) {
+    public NuGetPackagesProcessor(final OlingoDataSource dataSource, final BeanPropertyAccess valueAccess,
+                                  final AtomEntryCache entryCache, @Nullable final BatchPartsExecutor batchExecutor) {
         this.dataSource = dataSource;
         this.valueAccess = valueAccess;
         this.evaluator = new ExpressionEvaluator(valueAccess);
+        this.entryCache = entryCache;
+        this.batchExecutor = batchExecutor;
     }
 
     @Override
@@ -68,32 +90,29 @@ public class NuGetPackagesProcessor extends ODataSingleProcessor {
             throws ODataException {
         final ODataContext context = getContext();
         final PathInfo pathInfo = context.getPathInfo();
-        List<V2FeedPackage> data = new ArrayList<>();
-
-        try {
-            data.addAll(CollectionsUtil.convertCollection((List<?>) retrieveData(
-                    uriInfo.getStartEntitySet(),
-                    uriInfo.getKeyPredicates(),
-                    uriInfo.getFunctionImport(),
-                    mapFunctionParameters(uriInfo.getFunctionImportParameters())
-            ), source -> NuGetMapper.mapPackage((NuGetIndexEntry) source, pathInfo.getServiceRoot())));
-        } catch (final ODataNotFoundException e) {
-            data.clear();
-        }
+        final PackagesMapping mapping = new PackagesMapping(pathInfo.getServiceRoot());
+        final FilterPlan filterPlan = FilterPlan.create(uriInfo.getFilter());
+        final List<NuGetIndexEntry> entries = applyFilter(retrieveEntries(
+                uriInfo.getStartEntitySet(),
+                uriInfo.getKeyPredicates(),
+                uriInfo.getFunctionImport(),
+                mapFunctionParameters(uriInfo.getFunctionImportParameters()),
+                filterPlan.getQuery()
+        ), filterPlan.getPredicates(), mapping);
 
         final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
         final InlineCount inlineCountType = uriInfo.getInlineCount();
-        final Integer count = applySystemQueryOptions(
+        final Integer count = inlineCountType == InlineCount.ALLPAGES ? entries.size() : null;
+        List<NuGetIndexEntry> data = applySystemQueryOptions(
                 entitySet,
-                data,
-                uriInfo.getFilter(),
-                inlineCountType,
+                entries,
+                mapping,
+                isRanked(uriInfo.getFunctionImport()),
                 uriInfo.getOrderBy(),
                 uriInfo.getSkipToken(),
                 uriInfo.getSkip(),
                 uriInfo.getTop());
 
-
         String nextLink = null;
 
         // Limit the number of returned entities and provide a "next" link
@@ -102,26 +121,32 @@ public class NuGetPackagesProcessor extends ODataSingleProcessor {
         // over to the URI for the "next" link, with the exception of $skiptoken
         // and $skip.
         if (data.size() > SERVER_PAGING_SIZE) {
-            if (uriInfo.getOrderBy() == null
-                    && uriInfo.getSkipToken() == null
-                    && uriInfo.getSkip() == null
-                    && uriInfo.getTop() == null) {
-                sortInDefaultOrder(entitySet, data);
-            }
-
             nextLink = pathInfo.getRequestUri().toString();
             nextLink = percentEncodeNextLink(nextLink);
 
             nextLink += (nextLink.contains("?") ? "&" : "?")
-                    + "$skiptoken=" + getSkipToken(entitySet, data.get(SERVER_PAGING_SIZE));
+                    + "$skiptoken=" + getSkipToken(entitySet, mapping.get(data.get(SERVER_PAGING_SIZE)));
+
+            data = data.subList(0, SERVER_PAGING_SIZE);
+        }
+
+        // Atom feeds without $select and $expand are streamed entry by entry
+        if (AtomFeedStream.isAtom(contentType)
+                && uriInfo.getSelect().isEmpty()
+                && uriInfo.getExpand().isEmpty()
+                && AtomFeedStream.isSupported(entitySet)) {
+            final int timingHandle = context.startRuntimeMeasurement("AtomFeedStream", "create");
+            final AtomFeedStream feed = AtomFeedStream.create(
+                    entitySet, pathInfo.getServiceRoot(), data, mapping::get, valueAccess, entryCache, count, nextLink);
+            context.stopRuntimeMeasurement(timingHandle);
 
-            data = data.subList(0, Math.min(data.size(), SERVER_PAGING_SIZE));
+            return ODataResponse.status(HttpStatusCodes.OK).entity(feed).build();
         }
 
         final EdmEntityType entityType = entitySet.getEntityType();
         final List<Map<String, Object>> values = new ArrayList<>();
-        for (final Object entryData : data) {
-            values.add(getStructuralTypeValueMap(entryData, entityType));
+        for (final NuGetIndexEntry entry : data) {
+            values.add(getStructuralTypeValueMap(mapping.get(entry), entityType));
         }
 
         final EntityProviderWriteProperties feedProperties = EntityProviderWriteProperties
@@ -154,29 +179,24 @@ public class NuGetPackagesProcessor extends ODataSingleProcessor {
     public ODataResponse countEntitySet(final GetEntitySetCountUriInfo uriInfo, final String contentType)
             throws ODataException {
         final URI serviceRoot = getContext().getPathInfo().getServiceRoot();
-        final List<V2FeedPackage> data = new ArrayList<>();
-        try {
-            data.addAll(CollectionsUtil.convertCollection((List<?>) retrieveData(
-                    uriInfo.getStartEntitySet(),
-                    uriInfo.getKeyPredicates(),
-                    uriInfo.getFunctionImport(),
-                    mapFunctionParameters(uriInfo.getFunctionImportParameters())
-            ), source -> NuGetMapper.mapPackage((NuGetIndexEntry) source, serviceRoot)));
-        } catch (final ODataNotFoundException e) {
-            data.clear();
-        }
+        final FilterPlan filterPlan = FilterPlan.create(uriInfo.getFilter());
+        final List<NuGetIndexEntry> entries = applyFilter(retrieveEntries(
+                uriInfo.getStartEntitySet(),
+                uriInfo.getKeyPredicates(),
+                uriInfo.getFunctionImport(),
+                mapFunctionParameters(uriInfo.getFunctionImportParameters()),
+                filterPlan.getQuery()
+        ), filterPlan.getPredicates(), new PackagesMapping(serviceRoot));
 
-        applySystemQueryOptions(
-                uriInfo.getTargetEntitySet(),
-                data,
-                uriInfo.getFilter(),
-                null,
-                null,
-                null,
-                uriInfo.getSkip(),
-                uriInfo.getTop());
+        int count = entries.size();
+        if (uriInfo.getSkip() != null) {
+            count = Math.max(0, count - uriInfo.getSkip());
+        }
+        if (uriInfo.getTop() != null) {
+            count = Math.min(count, uriInfo.getTop());
+        }
 
-        return ODataResponse.fromResponse(EntityProvider.writeText(String.valueOf(data.size()))).build();
+        return ODataResponse.fromResponse(EntityProvider.writeText(String.valueOf(count))).build();
     }
 
     @Override
@@ -488,6 +508,45 @@ public class NuGetPackagesProcessor extends ODataSingleProcessor {
         return data;
     }
 
+    @SuppressWarnings("unchecked")
+    private List<NuGetIndexEntry> retrieveEntries(final EdmEntitySet startEntitySet, final List<KeyPredicate> keyPredicates,
+                                                  final EdmFunctionImport functionImport, final Map<String, Object> functionImportParameters,
+                                                  final PackagesQuery query) throws ODataException {
+        final List<NuGetIndexEntry> entries;
+        try {
+            if (functionImport == null && keyPredicates.isEmpty()) {
+                return retrieveEntries(startEntitySet, query);
+            }
+
+            entries = (List<NuGetIndexEntry>) retrieveData(startEntitySet, keyPredicates, functionImport, functionImportParameters);
+        } catch (final ODataNotFoundException e) {
+            return Collections.emptyList();
+        }
+
+        if (query.isEmpty()) {
+            return entries;
+        }
+
+        final List<NuGetIndexEntry> result = new ArrayList<>();
+        for (final NuGetIndexEntry entry : entries) {
+            if (query.matches(entry)) {
+                result.add(entry);
+            }
+        }
+
+        return result;
+    }
+
+    private List<NuGetIndexEntry> retrieveEntries(final EdmEntitySet startEntitySet, final PackagesQuery query) throws ODataException {
+        final ODataContext context = getContext();
+        final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "retrieveData");
+        try {
+            return dataSource.readData(startEntitySet, query);
+        } finally {
+            context.stopRuntimeMeasurement(timingHandle);
+        }
+    }
+
     private <T> String constructETag(final EdmEntitySet entitySet, final T data) throws ODataException {
         final EdmEntityType entityType = entitySet.getEntityType();
         String eTag = null;
@@ -522,90 +581,238 @@ public class NuGetPackagesProcessor extends ODataSingleProcessor {
         return response;
     }
 
-    private <T extends Comparable> Integer applySystemQueryOptions(final EdmEntitySet entitySet, final List<T> data,
-                                                final FilterExpression filter, final InlineCount inlineCount, final OrderByExpression orderBy,
-                                                final String skipToken, final Integer skip, final Integer top) throws ODataException {
-        final ODataContext context = getContext();
-        final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "applySystemQueryOptions");
+    private List<NuGetIndexEntry> applyFilter(final List<NuGetIndexEntry> entries, final List<CommonExpression> predicates,
+                                              final PackagesMapping mapping) throws ODataException {
+        if (predicates.isEmpty()) {
+            return entries;
+        }
 
-        if (filter != null) {
-            // Remove all elements the filter does not apply for.
-            // A for-each loop would not work with "remove", see Java documentation.
-            for (Iterator<T> iterator = data.iterator(); iterator.hasNext(); ) {
-                if (!appliesFilter(iterator.next(), filter)) {
-                    iterator.remove();
-                }
+        final ODataContext context = getContext();
+        final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "applyFilter");
+
+        // Only entries the filter applies for keep their mapped packages
+        final List<NuGetIndexEntry> result = new ArrayList<>();
+        for (final NuGetIndexEntry entry : entries) {
+            final V2FeedPackage feedPackage = mapping.map(entry);
+            if (appliesFilter(feedPackage, predicates)) {
+                mapping.put(entry, feedPackage);
+                result.add(entry);
             }
         }
 
-        final Integer count = inlineCount == InlineCount.ALLPAGES ? data.size() : null;
+        context.stopRuntimeMeasurement(timingHandle);
+
+        return result;
+    }
 
-        if (orderBy != null) {
-            sort(data, orderBy);
-        } else if (skipToken != null || skip != null || top != null) {
-            sortInDefaultOrder(entitySet, data);
+    /**
+     * Selects entries of the requested page, the returned list may contain
+     * one entry more than the server paging size to build the "next" link.
+     */
+    private List<NuGetIndexEntry> applySystemQueryOptions(final EdmEntitySet entitySet, final List<NuGetIndexEntry> data,
+                                                          final PackagesMapping mapping, final boolean ranked,
+                                                          final OrderByExpression orderBy,
+                                                          final String skipToken, final Integer skip, final Integer top) throws ODataException {
+        if (orderBy == null && skipToken == null && skip == null && top == null && data.size() <= SERVER_PAGING_SIZE) {
+            return data;
         }
 
-        if (skipToken != null) {
-            while (!data.isEmpty() && !getSkipToken(entitySet, data.get(0)).equals(skipToken)) {
-                data.remove(0);
+        final ODataContext context = getContext();
+        final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "applySystemQueryOptions");
+
+        try {
+            final int offset = skip != null ? skip : 0;
+            final int pageSize = top != null ? Math.min(top, SERVER_PAGING_SIZE + 1) : SERVER_PAGING_SIZE + 1;
+            if (pageSize <= 0 || offset >= data.size()) {
+                return Collections.emptyList();
             }
-        }
 
-        if (skip != null) {
-            if (skip >= data.size()) {
-                data.clear();
-            } else {
-                for (int i = 0; i < skip; i++) {
-                    data.remove(0);
+            final Comparator<NuGetIndexEntry> comparator = getComparator(data, mapping, ranked, orderBy);
+            NuGetIndexEntry lowerBound = null;
+            if (skipToken != null) {
+                lowerBound = orderBy == null && !ranked
+                        ? createSkipTokenEntry(entitySet, skipToken)
+                        : findSkipTokenEntry(entitySet, skipToken);
+                if (lowerBound == null) {
+                    return Collections.emptyList();
                 }
             }
+
+            final int limit = (int) Math.min((long) offset + pageSize, Integer.MAX_VALUE);
+            final List<NuGetIndexEntry> selected = selectFirst(data, comparator, lowerBound, limit);
+            return offset < selected.size() ? selected.subList(offset, selected.size()) : Collections.emptyList();
+        } finally {
+            context.stopRuntimeMeasurement(timingHandle);
         }
+    }
 
-        if (top != null) {
-            while (data.size() > top) {
-                data.remove(top.intValue());
+    /**
+     * Returns up to limit smallest elements not less than the lower bound in ascending order.
+     */
+    private static <T> List<T> selectFirst(final List<T> data, final Comparator<T> comparator,
+                                           final T lowerBound, final int limit) {
+        final PriorityQueue<T> queue = new PriorityQueue<>(Math.min(limit, data.size()) + 1, comparator.reversed());
+        for (final T element : data) {
+            if (lowerBound != null && comparator.compare(element, lowerBound) < 0) {
+                continue;
+            }
+            if (queue.size() < limit) {
+                queue.add(element);
+            } else if (comparator.compare(element, queue.peek()) < 0) {
+                queue.poll();
+                queue.add(element);
             }
         }
 
-        context.stopRuntimeMeasurement(timingHandle);
-
-        return count;
+        final List<T> result = new ArrayList<>(queue);
+        result.sort(comparator);
+        return result;
     }
 
-    private <T> void sort(final List<T> data, final OrderByExpression orderBy) {
-        Collections.sort(data, (entity1, entity2) -> {
-            try {
+    private Comparator<NuGetIndexEntry> getComparator(final List<NuGetIndexEntry> data, final PackagesMapping mapping,
+                                                      final boolean ranked, final OrderByExpression orderBy) {
+        final Comparator<NuGetIndexEntry> defaultOrder = SemanticVersionsComparators.getEntriesComparator();
+        if (orderBy == null) {
+            return ranked ? getRankComparator(data) : defaultOrder;
+        }
+
+        // Order expressions are evaluated once per entry, not per comparison
+        final List<OrderExpression> orders = orderBy.getOrders();
+        final Map<NuGetIndexEntry, Comparable[]> sortKeys = new IdentityHashMap<>(data.size());
+        final Date now = new Date();
+        final Function<NuGetIndexEntry, Comparable[]> keysFactory = entry -> {
+            final Comparable[] values = new Comparable[orders.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = getSortKey(entry, orders.get(i).getExpression(), mapping, now);
+            }
+            return values;
+        };
+
+        return (entity1, entity2) -> {
+            final Comparable[] values1 = sortKeys.computeIfAbsent(entity1, keysFactory);
+            final Comparable[] values2 = sortKeys.computeIfAbsent(entity2, keysFactory);
+            for (int i = 0; i < values1.length; i++) {
+                final Comparable first = values1[i];
+                final Comparable second = values2[i];
+
                 int result = 0;
-                for (final OrderExpression expression : orderBy.getOrders()) {
-                    final String first = evaluator.evaluateExpression(entity1, expression.getExpression());
-                    final String second = evaluator.evaluateExpression(entity2, expression.getExpression());
-
-                    if (first != null && second != null) {
-                        result = first.compareTo(second);
-                    } else if (first == null && second != null) {
-                        result = 1;
-                    } else if (first != null) {
-                        result = -1;
-                    }
-
-                    if (expression.getSortOrder() == SortOrder.desc) {
-                        result = -result;
-                    }
-
-                    if (result != 0) {
-                        break;
-                    }
+                if (first != null && second != null) {
+                    //noinspection unchecked
+                    result = first.compareTo(second);
+                } else if (first == null && second != null) {
+                    result = 1;
+                } else if (first != null) {
+                    result = -1;
+                }
+
+                if (orders.get(i).getSortOrder() == SortOrder.desc) {
+                    result = -result;
+                }
+
+                if (result != 0) {
+                    return result;
+                }
+            }
+
+            // Keep order of entries with equal sort keys stable across pages
+            return defaultOrder.compare(entity1, entity2);
+        };
+    }
+
+    /**
+     * Resolves commonly ordered properties from index entry attributes,
+     * other expressions are evaluated against the mapped package.
+     */
+    private Comparable getSortKey(final NuGetIndexEntry entry, final CommonExpression expression,
+                                  final PackagesMapping mapping, final Date now) {
+        try {
+            if (expression.getKind() == ExpressionKind.PROPERTY) {
+                final String name = ((PropertyExpression) expression).getEdmProperty().getName();
+                if (STRING_ORDER_PROPERTIES.contains(name)) {
+                    return NuGetUtils.getValue(entry.getAttributes(), name);
+                }
+                if (DATE_ORDER_PROPERTIES.contains(name)) {
+                    final String value = NuGetUtils.getValue(entry.getAttributes(), name);
+                    final LocalDateTime dateTime = value != null ? ODataDataFormat.parseDate(value) : null;
+                    return dateTime != null ? dateTime.toDate() : now;
+                }
+                if (COUNT_ORDER_PROPERTIES.contains(name)) {
+                    // Download counts are not tracked, see NuGetMapper
+                    return 0L;
                 }
-                return result;
-            } catch (final ODataException e) {
-                return 0;
             }
-        });
+
+            return evaluator.evaluateExpression(mapping.get(entry), expression);
+        } catch (final ODataException | RuntimeException e) {
+            return null;
+        }
     }
 
-    private <T extends Comparable> void sortInDefaultOrder(final EdmEntitySet entitySet, final List<T> data) {
-        Collections.sort(data, Comparable::compareTo);
+    /**
+     * Keeps order of entries returned by the data source,
+     * entries missing in the data are placed after all of them.
+     */
+    private static Comparator<NuGetIndexEntry> getRankComparator(final List<NuGetIndexEntry> data) {
+        final Map<String, Integer> ranks = new HashMap<>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            ranks.put(data.get(i).getKey(), i);
+        }
+
+        return Comparator.comparing(entry -> ranks.getOrDefault(entry.getKey(), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Search results are ordered by relevance unless other order is requested.
+     */
+    private static boolean isRanked(final EdmFunctionImport functionImport) throws EdmException {
+        return functionImport != null && MetadataConstants.SEARCH_FUNCTION_NAME.equals(functionImport.getName());
+    }
+
+    /**
+     * Creates an entry with key properties from the skip token to seek in the default order.
+     */
+    private static NuGetIndexEntry createSkipTokenEntry(final EdmEntitySet entitySet, final String skipToken) throws ODataException {
+        final Map<String, String> keys = parseSkipToken(entitySet, skipToken);
+        if (keys == null || !keys.containsKey(ID) || !keys.containsKey(VERSION)) {
+            return null;
+        }
+
+        return new NuGetIndexEntry(skipToken, keys);
+    }
+
+    /**
+     * Resolves the entry from the skip token in the packages index to seek in the requested order.
+     */
+    private NuGetIndexEntry findSkipTokenEntry(final EdmEntitySet entitySet, final String skipToken) throws ODataException {
+        final Map<String, String> keys = parseSkipToken(entitySet, skipToken);
+        if (keys == null) {
+            return null;
+        }
+
+        try {
+            return (NuGetIndexEntry) dataSource.readData(entitySet, new HashMap<>(keys));
+        } catch (final ODataNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> parseSkipToken(final EdmEntitySet entitySet, final String skipToken) throws ODataException {
+        final List<String> names = entitySet.getEntityType().getKeyPropertyNames();
+        if (skipToken.length() < 2 || !skipToken.startsWith("'") || !skipToken.endsWith("'")) {
+            return null;
+        }
+
+        final String[] values = skipToken.substring(1, skipToken.length() - 1).split("','", -1);
+        if (values.length != names.size()) {
+            return null;
+        }
+
+        final Map<String, String> keys = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            keys.put(names.get(i), values[i]);
+        }
+
+        return keys;
     }
 
     private <T> boolean appliesFilter(final T data, final FilterExpression filter) throws ODataException {
@@ -621,6 +828,24 @@ public class NuGetPackagesProcessor extends ODataSingleProcessor {
         }
     }
 
+    private <T> boolean appliesFilter(final T data, final List<CommonExpression> predicates) throws ODataException {
+        final ODataContext context = getContext();
+        final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "appliesFilter");
+
+        try {
+            for (final CommonExpression predicate : predicates) {
+                if (!evaluator.evaluateExpression(data, predicate).equals("true")) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (final RuntimeException e) {
+            return false;
+        } finally {
+            context.stopRuntimeMeasurement(timingHandle);
+        }
+    }
+
 
 
     private <T> String getSkipToken(final EdmEntitySet entitySet, final T data) throws ODataException {
@@ -700,21 +925,86 @@ public class NuGetPackagesProcessor extends ODataSingleProcessor {
     @Override
     public ODataResponse executeBatch(final BatchHandler handler, final String contentType, final InputStream content)
             throws ODataException {
-        final List<BatchResponsePart> batchResponseParts = new ArrayList<>();
-        final PathInfo pathInfo = getContext().getPathInfo();
+        // Batch handler replaces the processor context while handling parts
+        final ODataContext context = getContext();
+        final PathInfo pathInfo = context.getPathInfo();
         final EntityProviderBatchProperties batchProperties = EntityProviderBatchProperties.init()
                 .pathInfo(pathInfo)
                 .setStrict(false)
                 .build();
 
         final List<BatchRequestPart> batchParts = EntityProvider.parseBatchRequest(contentType, content, batchProperties);
+        final List<BatchResponsePart> batchResponseParts = new ArrayList<>(batchParts.size());
+        final List<BatchRequestPart> queries = new ArrayList<>();
         for (BatchRequestPart batchPart : batchParts) {
+            if (isQuery(batchPart)) {
+                queries.add(batchPart);
+                continue;
+            }
+
+            // Change sets could modify data, so they are executed after preceding queries
+            batchResponseParts.addAll(executeQueries(handler, context, queries));
+            queries.clear();
             batchResponseParts.add(handler.handleBatchPart(batchPart));
         }
+        batchResponseParts.addAll(executeQueries(handler, context, queries));
 
         return EntityProvider.writeBatchResponse(batchResponseParts);
     }
 
+    private static boolean isQuery(final BatchRequestPart batchPart) {
+        if (batchPart.isChangeSet()) {
+            return false;
+        }
+
+        for (ODataRequest request : batchPart.getRequests()) {
+            if (request.getMethod() != ODataHttpMethod.GET) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<BatchResponsePart> executeQueries(final BatchHandler handler,
+                                                   final ODataContext context,
+                                                   final List<BatchRequestPart> queries) throws ODataException {
+        final List<BatchResponsePart> responseParts = new ArrayList<>(queries.size());
+        if (batchExecutor == null || queries.size() < 2) {
+            for (BatchRequestPart query : queries) {
+                responseParts.add(handler.handleBatchPart(query));
+            }
+            return responseParts;
+        }
+
+        final List<Callable<BatchResponsePart>> tasks = new ArrayList<>(queries.size());
+        for (final BatchRequestPart query : queries) {
+            tasks.add(() -> createBatchHandler(context).handleBatchPart(query));
+        }
+
+        try {
+            responseParts.addAll(batchExecutor.execute(tasks));
+        } catch (ODataException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ODataException(e);
+        } catch (Exception e) {
+            throw new ODataException(e);
+        }
+        return responseParts;
+    }
+
+    /**
+     * Batch handler keeps the context of the handled part in the service
+     * processor, so concurrently executed parts use own services.
+     */
+    private static BatchHandler createBatchHandler(final ODataContext context) throws ODataException {
+        final ODataServiceFactory serviceFactory = context.getServiceFactory();
+        final ODataService service = serviceFactory.createService(context);
+        service.getProcessor().setContext(context);
+        return new BatchHandlerImpl(serviceFactory, service);
+    }
+
     @Override
     public BatchResponsePart executeChangeSet(final BatchHandler handler, final List<ODataRequest> requests)
             throws ODataException {
@@ -732,4 +1022,28 @@ public class NuGetPackagesProcessor extends ODataSingleProcessor {
 
         return BatchResponsePart.responses(responses).changeSet(true).build();
     }
+
+    /**
+     * Maps index entries into feed packages once per request.
+     */
+    private static final class PackagesMapping {
+        private final URI serviceRoot;
+        private final Map<NuGetIndexEntry, V2FeedPackage> packages = new IdentityHashMap<>();
+
+        private PackagesMapping(final URI serviceRoot) {
+            this.serviceRoot = serviceRoot;
+        }
+
+        private V2FeedPackage get(final NuGetIndexEntry entry) {
+            return packages.computeIfAbsent(entry, this::map);
+        }
+
+        private V2FeedPackage map(final NuGetIndexEntry entry) {
+            return NuGetMapper.mapPackage(entry, serviceRoot);
+        }
+
+        private void put(final NuGetIndexEntry entry, final V2FeedPackage feedPackage) {
+            packages.put(entry, feedPackage);
+        }
+    }
 }
@@ -29,6 +29,7 @@ import org.apache.olingo.odata2.api.edm.provider.*;
 import org.apache.olingo.odata2.api.exception.ODataException;
 import org.apache.olingo.odata2.api.processor.ODataContext;
 import org.apache.olingo.odata2.core.edm.provider.EdmxProvider;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.InputStream;
 import java.util.HashMap;
@@ -41,17 +42,26 @@ import java.util.TreeMap;
 public class NuGetServiceFactory extends ODataServiceFactory {
 
   private final OlingoDataSource myDataSource;
+  private final AtomEntryCache myEntryCache;
+  private final BatchPartsExecutor myBatchExecutor;
+  private final BeanPropertyAccess myValueAccess = new BeanPropertyAccess();
   private static final Map<String, Action<Property>> PROPERTY_CONFIGS;
   private static final Map<String, EdmxProvider> EDMX_PROVIDERS;
 
-  public NuGetServiceFactory(OlingoDataSource dataSource) {
+  public NuGetServiceFactory(OlingoDataSource dataSource, AtomEntryCache entryCache) {
+    this(dataSource, entryCache, null);
+  }
+
+  public NuGetServiceFactory(OlingoDataSource dataSource, AtomEntryCache entryCache, @Nullable BatchPartsExecutor batchExecutor) {
     myDataSource = dataSource;
+    myEntryCache = entryCache;
+    myBatchExecutor = batchExecutor;
   }
 
   @Override
   public ODataService createService(final ODataContext context) throws ODataException {
     final EdmxProvider edmxProvider = EDMX_PROVIDERS.get(NuGetAPIVersion.getVersionToUse());
-    return createODataSingleProcessorService(edmxProvider, new NuGetPackagesProcessor(myDataSource));
+    return createODataSingleProcessorService(edmxProvider, new NuGetPackagesProcessor(myDataSource, myValueAccess, myEntryCache, myBatchExecutor));
   }
 
   private static EdmxProvider getEdmProvider(final String version) throws ODataException {
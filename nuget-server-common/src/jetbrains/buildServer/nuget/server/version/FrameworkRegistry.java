@@ -0,0 +1,141 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.server.version;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Registry of parsed framework names with small integer ids
+ * and precomputed compatibility between them.
+ *
+ * Ids are never reused, so sets of ids could be kept by callers.
+ */
+public class FrameworkRegistry {
+
+  private final int myMaxSize;
+  private final Map<String, Integer> myIds = new HashMap<>();
+  private final List<FrameworkName> myNames = new ArrayList<>();
+  private final List<BitSet> myCompatibleFrameworks = new ArrayList<>();
+
+  public FrameworkRegistry() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param maxSize max number of registered frameworks
+   */
+  public FrameworkRegistry(final int maxSize) {
+    myMaxSize = maxSize;
+  }
+
+  /**
+   * Registers frameworks if required.
+   *
+   * @param frameworks framework names
+   * @return ids of frameworks or null if registry is full
+   */
+  @Nullable
+  public synchronized BitSet getFrameworks(@NotNull final Collection<String> frameworks) {
+    final BitSet result = new BitSet();
+    for (String framework : frameworks) {
+      Integer id = myIds.get(framework);
+      if (id == null) {
+        if (myNames.size() >= myMaxSize) return null;
+        id = register(framework);
+      }
+      result.set(id);
+    }
+    return result;
+  }
+
+  /**
+   * @param projectFrameworks ids of project frameworks
+   * @return ids of registered frameworks compatible with any of project frameworks
+   */
+  @NotNull
+  public synchronized BitSet getCompatibleFrameworks(@NotNull final BitSet projectFrameworks) {
+    final BitSet result = new BitSet();
+    for (int id = projectFrameworks.nextSetBit(0); id >= 0; id = projectFrameworks.nextSetBit(id + 1)) {
+      result.or(myCompatibleFrameworks.get(id));
+    }
+    return result;
+  }
+
+  /**
+   * Does not register unknown project frameworks.
+   *
+   * @param projectFrameworks project framework names
+   * @return ids of registered frameworks compatible with any of project frameworks
+   */
+  @NotNull
+  public synchronized BitSet getCompatibleFrameworks(@NotNull final Collection<String> projectFrameworks) {
+    final BitSet result = new BitSet();
+    for (String framework : projectFrameworks) {
+      final Integer id = myIds.get(framework);
+      if (id != null) {
+        result.or(myCompatibleFrameworks.get(id));
+        continue;
+      }
+
+      final FrameworkName projectFramework = VersionUtility.parseFrameworkName(framework);
+      if (projectFramework == null) continue;
+
+      for (int i = 0; i < myNames.size(); i++) {
+        final FrameworkName packageFramework = myNames.get(i);
+        if (packageFramework != null && VersionUtility.isCompatible(projectFramework, packageFramework)) {
+          result.set(i);
+        }
+      }
+    }
+    return result;
+  }
+
+  public synchronized int size() {
+    return myNames.size();
+  }
+
+  private int register(@NotNull final String framework) {
+    final int id = myNames.size();
+    // unknown frameworks are not compatible with anything
+    final FrameworkName name = VersionUtility.parseFrameworkName(framework);
+    final BitSet compatibleFrameworks = new BitSet();
+    if (name != null) {
+      for (int i = 0; i < id; i++) {
+        final FrameworkName other = myNames.get(i);
+        if (other == null) continue;
+
+        if (VersionUtility.isCompatible(name, other)) {
+          compatibleFrameworks.set(i);
+        }
+        if (VersionUtility.isCompatible(other, name)) {
+          myCompatibleFrameworks.get(i).set(id);
+        }
+      }
+      if (VersionUtility.isCompatible(name, name)) {
+        compatibleFrameworks.set(id);
+      }
+    }
+
+    myIds.put(framework, id);
+    myNames.add(name);
+    myCompatibleFrameworks.add(compatibleFrameworks);
+    return id;
+  }
+}
@@ -20,47 +20,60 @@ import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author Evgeniy.Koshkin
  */
 public class SemanticVersion implements Comparable<SemanticVersion> {
-  private static Pattern VERSION_STRING_MATCHING_PATTERN = Pattern.compile("^([0-9]+)(?:\\.([0-9]+))?(?:\\.([0-9]+))?(?:\\.([0-9]+))?(?:-([0-9A-Za-z-]+(?:\\.[0-9A-Za-z-]+)*))?(?:\\+[0-9A-Za-z-\\.]+)?$", Pattern.CASE_INSENSITIVE);
+  private static final int MAX_CACHE_SIZE = 16 * 1024;
+  private static final ConcurrentMap<String, SemanticVersion> CACHE = new ConcurrentHashMap<>();
+  private static final String[] EMPTY_LABELS = new String[0];
+  private static final long NOT_A_NUMBER = Long.MIN_VALUE;
+  private static final long NOT_PACKED = -1;
 
   @NotNull private final Version myVersion;
   @Nullable private final String mySpecialVersion;
   @NotNull private final String myOriginalString;
+  // version components packed into 16 bits each when they fit, otherwise NOT_PACKED
+  private final long myPackedVersion;
+  @NotNull private final String[] myLabels;
+  @NotNull private final long[] myLabelNumbers;
 
   private SemanticVersion(@NotNull Version version, @Nullable String specialVersion, @NotNull String originalString) {
     myVersion = version;
     mySpecialVersion = specialVersion;
     myOriginalString = originalString;
+    myPackedVersion = pack(version);
+    myLabels = split(specialVersion);
+    myLabelNumbers = new long[myLabels.length];
+    for (int i = 0; i < myLabels.length; i++) {
+      myLabelNumbers[i] = parseLabelNumber(myLabels[i]);
+    }
   }
 
+  /**
+   * Parses version string, parsed versions are cached.
+   */
   @Nullable
   public static SemanticVersion valueOf(@NotNull String versionString) {
     if (StringUtil.isEmpty(versionString)) return null;
 
-    final Matcher match = VERSION_STRING_MATCHING_PATTERN.matcher(versionString.trim());
-    if (!match.find()) return null;
-
-    int major = Integer.valueOf(match.group(1));
-    final String minorString = match.group(2);
-    int minor = (minorString != null) ? Integer.valueOf(minorString) : 0;
-    final String patchString = match.group(3);
-    int patch = (patchString != null) ? Integer.valueOf(patchString) : 0;
-    final String buildString = match.group(4);
-    int build = (buildString != null) ? Integer.valueOf(buildString) : 0;
-
-    final Version versionValue = new Version(major, minor, patch, build);
+    final SemanticVersion cached = CACHE.get(versionString);
+    if (cached != null) return cached;
 
-    String release = match.group(5);
-    if (release != null && release.startsWith("-"))
-      release = release.substring(1);
+    final SemanticVersion version = parse(versionString);
+    if (version != null) {
+      if (CACHE.size() >= MAX_CACHE_SIZE) {
+        CACHE.clear();
+      }
+      CACHE.put(versionString, version);
+    }
 
-    return new SemanticVersion(versionValue, release, versionString.replace(" ", ""));
+    return version;
   }
 
   public static int compareAsVersions(@NotNull String versionString1, @NotNull String versionString2) {
@@ -69,6 +82,69 @@ public class SemanticVersion implements Comparable<SemanticVersion> {
     return version1 != null && version2 != null ? version1.compareTo(version2) : versionString1.compareTo(versionString2);
   }
 
+  /**
+   * Parses string of form major[.minor[.patch[.build]]][-label[.label]*][+metadata].
+   */
+  @Nullable
+  private static SemanticVersion parse(@NotNull String versionString) {
+    final String value = versionString.trim();
+    final int length = value.length();
+    final int[] components = new int[4];
+
+    int position = 0;
+    for (int i = 0; i < components.length; i++) {
+      if (i > 0) {
+        if (position >= length || value.charAt(position) != '.') break;
+        position++;
+      }
+      final int start = position;
+      long number = 0;
+      while (position < length && isDigit(value.charAt(position))) {
+        number = number * 10 + (value.charAt(position) - '0');
+        if (number > Integer.MAX_VALUE) return null;
+        position++;
+      }
+      if (position == start) return null;
+      components[i] = (int) number;
+    }
+
+    String release = null;
+    if (position < length && value.charAt(position) == '-') {
+      final int start = ++position;
+      boolean identifierStart = true;
+      while (position < length && value.charAt(position) != '+') {
+        final char c = value.charAt(position);
+        if (c == '.') {
+          if (identifierStart) return null;
+          identifierStart = true;
+        } else if (isAlphanumericOrHyphen(c)) {
+          identifierStart = false;
+        } else {
+          return null;
+        }
+        position++;
+      }
+      if (identifierStart) return null;
+      release = value.substring(start, position);
+      if (release.startsWith("-")) {
+        release = release.substring(1);
+      }
+    }
+
+    if (position < length && value.charAt(position) == '+') {
+      final int start = ++position;
+      while (position < length && (isAlphanumericOrHyphen(value.charAt(position)) || value.charAt(position) == '.')) {
+        position++;
+      }
+      if (position == start) return null;
+    }
+
+    if (position != length) return null;
+
+    final Version version = new Version(components[0], components[1], components[2], components[3]);
+    return new SemanticVersion(version, release, versionString.replace(" ", ""));
+  }
+
   @NotNull
   public Version getVersion() {
     return myVersion;
@@ -80,23 +156,24 @@ public class SemanticVersion implements Comparable<SemanticVersion> {
   }
 
   public int compareTo(@NotNull SemanticVersion other) {
-    int result = myVersion.compareTo(other.myVersion);
+    int result;
+    if (myPackedVersion != NOT_PACKED && other.myPackedVersion != NOT_PACKED) {
+      result = Long.compare(myPackedVersion, other.myPackedVersion);
+    } else {
+      result = myVersion.compareTo(other.myVersion);
+    }
     if (result != 0) return result;
-    boolean empty = StringUtil.isEmpty(mySpecialVersion);
-    boolean otherEmpty = StringUtil.isEmpty(other.mySpecialVersion);
-    if (empty && otherEmpty) return 0;
-    else if (empty) return 1;
-    else if (otherEmpty) return -1;
 
-    String[] o1 = split(mySpecialVersion);
-    String[] o2 = split(other.mySpecialVersion);
+    final String[] o1 = myLabels;
+    final String[] o2 = other.myLabels;
+    if (o1.length == 0 && o2.length == 0) return 0;
+    else if (o1.length == 0) return 1;
+    else if (o2.length == 0) return -1;
 
     int x;
     for(int i = 0, max = Math.min(o1.length, o2.length); i < max; i++) {
-      if ((x = compareElements(o1[i], o2[i]))!= 0) return x;
+      if ((x = compareElements(o1[i], myLabelNumbers[i], o2[i], other.myLabelNumbers[i]))!= 0) return x;
     }
-    if (o1.length == 0 && o2.length > 0) return 1;
-    if (o2.length == 0 && o1.length > 0) return -1;
 
     if (o1.length < o2.length) return -1;
     if (o1.length > o2.length) return 1;
@@ -130,42 +207,84 @@ public class SemanticVersion implements Comparable<SemanticVersion> {
     return myOriginalString;
   }
 
-  private int compareElements(@NotNull String s1, @NotNull String s2) {
-    int i1 = 0;
-    int i2 = 0;
-    boolean isInt1 = true;
-    boolean isInt2 = true;
-    try {
-      i1 = Integer.parseInt(s1);
-    } catch (Exception e) {
-      isInt1 = false;
-    }
-    try {
-      i2 = Integer.parseInt(s2);
-    } catch (Exception e) {
-      isInt2 = false;
-    }
+  private static int compareElements(@NotNull String s1, long n1, @NotNull String s2, long n2) {
+    final boolean isInt1 = n1 != NOT_A_NUMBER;
+    final boolean isInt2 = n2 != NOT_A_NUMBER;
 
     if (isInt1 && isInt2) {
-      if (i1 == i2) return 0;
-      if (i1 < i2) return -1;
-      if (i1 > i2) return 1;
+      return Long.compare(n1, n2);
     }
 
-    if (isInt1 && !isInt2) {
+    if (isInt1) {
       return -1;
     }
 
-    if (!isInt1 && isInt2) {
+    if (isInt2) {
       return 1;
     }
 
     return s1.compareTo(s2);
   }
 
+  private static long pack(@NotNull Version version) {
+    final int major = version.getMajor();
+    final int minor = version.getMinor();
+    final int patch = version.getPatch();
+    final int build = version.getBuild();
+    // major version uses 15 bits to keep packed value positive
+    if ((major & ~0x7FFF) != 0 || ((minor | patch | build) & ~0xFFFF) != 0) return NOT_PACKED;
+    return ((long) major << 48) | ((long) minor << 32) | ((long) patch << 16) | build;
+  }
+
+  /**
+   * @return label value if it is an integer number, otherwise {@link #NOT_A_NUMBER}.
+   */
+  private static long parseLabelNumber(@NotNull String label) {
+    final int length = label.length();
+    int position = 0;
+    boolean negative = false;
+    if (length > 1 && (label.charAt(0) == '-' || label.charAt(0) == '+')) {
+      negative = label.charAt(0) == '-';
+      position++;
+    }
+    if (position == length) return NOT_A_NUMBER;
+
+    long number = 0;
+    for (; position < length; position++) {
+      final char c = label.charAt(position);
+      if (!isDigit(c)) return NOT_A_NUMBER;
+      number = number * 10 + (c - '0');
+      if (number > (long) Integer.MAX_VALUE + 1) return NOT_A_NUMBER;
+    }
+
+    number = negative ? -number : number;
+    return number < Integer.MIN_VALUE || number > Integer.MAX_VALUE ? NOT_A_NUMBER : number;
+  }
+
   @NotNull
-  private String[] split(@Nullable String s) {
-    if (s == null || s.length() == 0) return new String[0];
-    return Pattern.compile("\\.").split(s);
+  private static String[] split(@Nullable String s) {
+    if (s == null || s.length() == 0) return EMPTY_LABELS;
+
+    final List<String> labels = new ArrayList<>(4);
+    int start = 0;
+    int index;
+    while ((index = s.indexOf('.', start)) >= 0) {
+      labels.add(s.substring(start, index));
+      start = index + 1;
+    }
+    labels.add(s.substring(start));
+
+    // trailing empty labels are omitted as in regex split
+    int size = labels.size();
+    while (size > 0 && labels.get(size - 1).isEmpty()) size--;
+    return labels.subList(0, size).toArray(new String[size]);
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isAlphanumericOrHyphen(char c) {
+    return isDigit(c) || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '-';
   }
 }
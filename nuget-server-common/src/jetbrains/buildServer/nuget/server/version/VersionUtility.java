@@ -26,6 +26,7 @@ import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -154,6 +155,8 @@ public class VersionUtility {
 
   private static final String PROFILE_PART_SEPARATOR = "-";
   private static final Pattern VERSION_MATCHING_PATTERN = Pattern.compile("\\d+");
+  private static final int MAX_REGISTERED_FRAMEWORKS = 1024;
+  private static final FrameworkRegistry FRAMEWORKS = new FrameworkRegistry(MAX_REGISTERED_FRAMEWORKS);
 
   public static boolean isKnownFramework(@NotNull String frameworkString) {
     return parseFrameworkName(frameworkString) != null;
@@ -267,6 +270,14 @@ public class VersionUtility {
   public static boolean isPackageCompatibleWithFrameworks(Set<String> projectFrameworks, final Set<String> packageFrameworkConstraints) {
     if(packageFrameworkConstraints.isEmpty()) return true; //package is compatible with all the frameworks
     if(projectFrameworks.isEmpty()) return true; //no project-level constraints were provided
+
+    // project frameworks come from feed requests, so only package ones are registered
+    final BitSet packageFrameworkIds = FRAMEWORKS.getFrameworks(packageFrameworkConstraints);
+    if (packageFrameworkIds != null) {
+      return FRAMEWORKS.getCompatibleFrameworks(projectFrameworks).intersects(packageFrameworkIds);
+    }
+
+    // registry is full, so compare parsed names
     final List<FrameworkName> frameworksParsed = CollectionsUtil.convertAndFilterNulls(projectFrameworks, new Converter<FrameworkName, String>() {
       public FrameworkName createFrom(@NotNull String source) {
         return parseFrameworkName(source);
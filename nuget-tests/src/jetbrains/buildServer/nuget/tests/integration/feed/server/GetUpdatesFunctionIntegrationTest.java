@@ -110,6 +110,23 @@ public class GetUpdatesFunctionIntegrationTest extends NuGetJavaFeedIntegrationT
     assertContainsPackageVersion(includeSingleVersionResponse, "4.0");
   }
 
+  @Test(dataProvider = "nugetFeedLibrariesData")
+  public void shouldHandleMultiplePackageIds(final NugetFeedLibrary library) throws Exception {
+    setODataSerializer(library);
+    addMockPackage(new NuGetIndexEntry("foo-old", CollectionsUtil.asMap(ID, "foo", VERSION, "1")));
+    addMockPackage(new NuGetIndexEntry("foo-new", CollectionsUtil.asMap(ID, "foo", VERSION, "2")));
+    addMockPackage(new NuGetIndexEntry("boo-old", CollectionsUtil.asMap(ID, "boo", VERSION, "6")));
+    addMockPackage(new NuGetIndexEntry("boo-new", CollectionsUtil.asMap(ID, "boo", VERSION, "7")));
+    addMockPackage(new NuGetIndexEntry("bar", CollectionsUtil.asMap(ID, "bar", VERSION, "5")));
+
+    final String response = openRequest("GetUpdates()?packageIds='foo%7CBoo%7Cbaz'&versions='1.0%7C6.0%7C1.0'&includePrerelease=true&includeAllVersions=false&targetFrameworks=''&versionConstraints=''");
+    assertNotContainsPackageVersion(response, "1.0");
+    assertContainsPackageVersion(response, "2.0");
+    assertNotContainsPackageVersion(response, "6.0");
+    assertContainsPackageVersion(response, "7.0");
+    assertNotContainsPackageVersion(response, "5.0");
+  }
+
   @Test(dataProvider = "nugetFeedLibrariesData")
   public void shouldResponseWithNoContentWhenNumberOfPackageIdsAndVersionsDoNotMatch(final NugetFeedLibrary library) throws Exception {
     setODataSerializer(library);
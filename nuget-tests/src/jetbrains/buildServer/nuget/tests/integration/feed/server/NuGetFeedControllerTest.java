@@ -19,19 +19,31 @@ package jetbrains.buildServer.nuget.tests.integration.feed.server;
 import jetbrains.buildServer.controllers.MockResponse;
 import jetbrains.buildServer.nuget.feed.server.NuGetServerSettings;
 import jetbrains.buildServer.nuget.feed.server.controllers.NuGetFeedController;
+import jetbrains.buildServer.nuget.feed.server.controllers.NuGetFeedETags;
 import jetbrains.buildServer.nuget.feed.server.controllers.NuGetFeedHandler;
 import jetbrains.buildServer.nuget.feed.server.controllers.NuGetFeedProvider;
 import jetbrains.buildServer.nuget.feed.server.controllers.requests.RecentNuGetRequests;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndex;
+import jetbrains.buildServer.nuget.feed.server.index.impl.PackagesIndexImpl;
+import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.auth.AuthorityHolder;
+import jetbrains.buildServer.serverSide.auth.SecurityContext;
+import jetbrains.buildServer.serverSide.metadata.MetadataStorage;
+import jetbrains.buildServer.util.EventDispatcher;
 import jetbrains.buildServer.web.openapi.WebControllerManager;
 import org.apache.http.HttpStatus;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
 import org.springframework.web.servlet.mvc.Controller;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Feed controller tests
@@ -59,7 +71,7 @@ public class NuGetFeedControllerTest {
             allowing(handler).handleRequest(with(any(HttpServletRequest.class)), with(any(HttpServletResponse.class)));
         }});
 
-        Controller controller = new NuGetFeedController(web, settings, new RecentNuGetRequests(), provider);
+        Controller controller = new NuGetFeedController(web, settings, new RecentNuGetRequests(), provider, createETags(m, new AtomicLong()));
         RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/Packages");
         ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -83,7 +95,7 @@ public class NuGetFeedControllerTest {
             allowing(provider).getHandler(with(any(HttpServletRequest.class))); will(returnValue(null));
         }});
 
-        Controller controller = new NuGetFeedController(web, settings, new RecentNuGetRequests(), provider);
+        Controller controller = new NuGetFeedController(web, settings, new RecentNuGetRequests(), provider, createETags(m, new AtomicLong()));
         RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/Packages");
         ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -92,4 +104,119 @@ public class NuGetFeedControllerTest {
 
         m.assertIsSatisfied();
     }
+
+    public void testNotModified() throws Exception {
+        Mockery m = new Mockery();
+        WebControllerManager web = m.mock(WebControllerManager.class);
+        NuGetServerSettings settings = m.mock(NuGetServerSettings.class);
+        NuGetFeedProvider provider = m.mock(NuGetFeedProvider.class);
+        NuGetFeedHandler handler = m.mock(NuGetFeedHandler.class);
+        AtomicLong generation = new AtomicLong();
+        NuGetFeedETags eTags = createETags(m, generation);
+
+        m.checking(new Expectations(){{
+            allowing(settings).getNuGetFeedControllerPath(); will(returnValue("/path"));
+            allowing(settings).isNuGetServerEnabled(); will(returnValue(true));
+
+            allowing(web).registerController(with(any(String.class)), with(any(Controller.class)));
+
+            allowing(provider).getHandler(with(any(HttpServletRequest.class))); will(returnValue(handler));
+
+            exactly(2).of(handler).handleRequest(with(any(HttpServletRequest.class)), with(any(HttpServletResponse.class)));
+        }});
+
+        Controller controller = new NuGetFeedController(web, settings, new RecentNuGetRequests(), provider, eTags);
+        RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/Packages()?$top=10");
+        String eTag = eTags.getETag(request, handler);
+        Assert.assertNotNull(eTag);
+
+        ResponseWrapper response = new ResponseWrapper(new MockResponse());
+        controller.handleRequest(request, response);
+
+        request.setHeader("If-None-Match", eTag);
+        response = new ResponseWrapper(new MockResponse());
+        controller.handleRequest(request, response);
+        Assert.assertEquals(response.getStatus(), HttpStatus.SC_NOT_MODIFIED);
+
+        generation.incrementAndGet();
+        Assert.assertFalse(eTag.equals(eTags.getETag(request, handler)));
+        response = new ResponseWrapper(new MockResponse());
+        controller.handleRequest(request, response);
+
+        m.assertIsSatisfied();
+    }
+
+    public void testNotModifiedAfterIndexReload() throws Exception {
+        Mockery m = new Mockery();
+        WebControllerManager web = m.mock(WebControllerManager.class);
+        NuGetServerSettings settings = m.mock(NuGetServerSettings.class);
+        NuGetFeedProvider provider = m.mock(NuGetFeedProvider.class);
+        NuGetFeedHandler handler = m.mock(NuGetFeedHandler.class);
+        MetadataStorage storage = m.mock(MetadataStorage.class);
+        SecurityContext context = createSecurityContext(m);
+
+        m.checking(new Expectations(){{
+            allowing(settings).getNuGetFeedControllerPath(); will(returnValue("/path"));
+            allowing(settings).isNuGetServerEnabled(); will(returnValue(true));
+
+            allowing(web).registerController(with(any(String.class)), with(any(Controller.class)));
+
+            allowing(provider).getHandler(with(any(HttpServletRequest.class))); will(returnValue(handler));
+
+            allowing(storage).getAllEntries("nuget"); will(new CustomAction("entries") {
+                public Object invoke(Invocation invocation) {
+                    return Collections.emptyIterator();
+                }
+            });
+
+            oneOf(handler).handleRequest(with(any(HttpServletRequest.class)), with(any(HttpServletResponse.class)));
+        }});
+
+        RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/Packages()?$top=10");
+        String eTag = new NuGetFeedETags(createIndex(storage), context).getETag(request, handler);
+        Assert.assertNotNull(eTag);
+
+        // server restart loads the same packages into a new index
+        NuGetFeedETags eTags = new NuGetFeedETags(createIndex(storage), context);
+        Controller controller = new NuGetFeedController(web, settings, new RecentNuGetRequests(), provider, eTags);
+        Assert.assertFalse(eTag.equals(eTags.getETag(request, handler)));
+
+        request.setHeader("If-None-Match", eTag);
+        ResponseWrapper response = new ResponseWrapper(new MockResponse());
+        controller.handleRequest(request, response);
+        Assert.assertFalse(response.getStatus() == HttpStatus.SC_NOT_MODIFIED);
+
+        m.assertIsSatisfied();
+    }
+
+    private static PackagesIndex createIndex(MetadataStorage storage) {
+        return new PackagesIndexImpl(storage, Collections.emptyList(), EventDispatcher.create(BuildServerListener.class));
+    }
+
+    private static NuGetFeedETags createETags(Mockery m, AtomicLong generation) {
+        PackagesIndex index = m.mock(PackagesIndex.class);
+
+        m.checking(new Expectations(){{
+            allowing(index).getGeneration(); will(new CustomAction("generation") {
+                public Object invoke(Invocation invocation) {
+                    return generation.get();
+                }
+            });
+        }});
+
+        return new NuGetFeedETags(index, createSecurityContext(m));
+    }
+
+    private static SecurityContext createSecurityContext(Mockery m) {
+        SecurityContext context = m.mock(SecurityContext.class);
+        AuthorityHolder authorityHolder = m.mock(AuthorityHolder.class);
+
+        m.checking(new Expectations(){{
+            allowing(context).getAuthorityHolder(); will(returnValue(authorityHolder));
+            allowing(authorityHolder).getAssociatedUser(); will(returnValue(null));
+            allowing(authorityHolder).getProjectsPermissions(); will(returnValue(Collections.emptyMap()));
+        }});
+
+        return context;
+    }
 }
@@ -101,4 +101,38 @@ public class NuGetJavaFeedBatchTest extends NuGetJavaFeedIntegrationTestBase {
         // Check that body ends with --boundary--
         Assert.assertTrue(body.endsWith("--" + boundary + "--"));
     }
+
+    @Test(dataProvider = "nugetFeedLibrariesData")
+    public void testBatchResponsesOrder(final NugetFeedLibrary library) throws Exception {
+        setODataSerializer(library);
+        setInternalProperty("teamcity.nuget.feed.batch.parallelism", "3");
+
+        final String boundary = "batch_e3b6819b-13c3-43bb-85b2-24b14122fed1";
+        final StringBuilder body = new StringBuilder();
+        final String[] versions = new String[8];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = (i + 1) + ".0.0.0";
+            addMockPackage("Package" + i, versions[i]);
+            body.append("--").append(boundary).append("\r\n")
+                    .append("Content-Type: application/http\r\n")
+                    .append("Content-Transfer-Encoding: binary\r\n")
+                    .append("\r\n")
+                    .append(String.format("GET %sFindPackagesById()?id='Package%d' HTTP/1.1\r\n", getNuGetServerUrl(), i))
+                    .append("\r\n")
+                    .append("\r\n");
+        }
+        body.append("--").append(boundary).append("--\r\n");
+
+        final RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/$batch");
+        request.setMethod("POST");
+        request.setContentType("multipart/mixed; boundary=" + boundary);
+        request.setBody(body.toString().getBytes());
+
+        ResponseWrapper response = processRequest(request);
+        Assert.assertEquals(response.getStatus(), HttpStatus.SC_ACCEPTED);
+
+        final String responseBody = response.toString();
+        Assert.assertFalse(responseBody.contains("HTTP/1.1 500"));
+        assertPackageVersionsOrder(responseBody, versions);
+    }
 }
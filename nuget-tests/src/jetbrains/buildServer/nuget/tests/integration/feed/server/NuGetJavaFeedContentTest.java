@@ -43,8 +43,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.ID;
-import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.VERSION;
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
 
 /**
  * Created by Eugene Petrenko (eugene.petrenko@gmail.com)
@@ -69,6 +68,20 @@ public class NuGetJavaFeedContentTest extends NuGetJavaFeedIntegrationTestBase {
     checkMetadata(s, "/feed/odata/metadata.v2.xml");
   }
 
+  @Test(dataProvider = "nugetFeedLibrariesData")
+  public void testMetadataIsRenderedOnce(final NugetFeedLibrary library) throws JDOMException, IOException {
+    setODataSerializer(library);
+    final String s = openRequest("$metadata");
+    Assert.assertEquals(myMetadataCache.getCount(), 1);
+
+    Assert.assertEquals(openRequest("$metadata"), s);
+    Assert.assertEquals(myMetadataCache.getCount(), 1);
+    checkMetadata(s, "/feed/odata/metadata.v2.xml");
+
+    openRequest("");
+    Assert.assertEquals(myMetadataCache.getCount(), 2);
+  }
+
   private void checkMetadata(@NotNull final String metadataXml, @NotNull final String gold) throws JDOMException, IOException {
     MetadataParseResult actual = XmlFeedParsers.loadMetadataBeans(parseXml(metadataXml));
     MetadataParseResult expected = XmlFeedParsers.loadMetadataBeans(parseGoldXml(gold));
@@ -263,6 +276,114 @@ public class NuGetJavaFeedContentTest extends NuGetJavaFeedIntegrationTestBase {
     assertContainsPackageVersion(response, "1.0." + NuGetFeedConstants.NUGET_FEED_PACKAGE_SIZE);
   }
 
+  @Test
+  public void testSkipTokenWithOrderBy() throws Exception {
+    setODataSerializer(NugetFeedLibrary.Olingo);
+
+    for (int i = 0; i <= NuGetFeedConstants.NUGET_FEED_PACKAGE_SIZE; i++) {
+      addMockPackage("foo", "1.0." + i);
+    }
+
+    String response = openRequest("Packages()?$orderby=Id");
+    assertContainsPackageVersion(response, "1.0.0");
+    assertNotContainsPackageVersion(response, "1.0." + NuGetFeedConstants.NUGET_FEED_PACKAGE_SIZE);
+
+    Matcher matcher = NEXT_PAGE.matcher(response);
+    if (!matcher.find()) {
+      matcher = NEXT_PAGE2.matcher(response);
+      Assert.assertTrue(matcher.find());
+    }
+
+    String link = StringEscapeUtils.unescapeXml(matcher.group(1));
+    if (link.startsWith(getNuGetServerUrl())) {
+      link = link.substring(getNuGetServerUrl().length());
+    }
+    Assert.assertTrue(link.contains("$orderby=Id"), link);
+
+    response = openRequest(link);
+    assertContainsPackageVersion(response, "1.0." + NuGetFeedConstants.NUGET_FEED_PACKAGE_SIZE);
+    assertNotContainsPackageVersion(response, "1.0.0");
+  }
+
+  @Test
+  public void testSkipTokenWithDescendingOrderBy() throws Exception {
+    setODataSerializer(NugetFeedLibrary.Olingo);
+
+    for (int i = 0; i <= NuGetFeedConstants.NUGET_FEED_PACKAGE_SIZE; i++) {
+      addMockPackage("foo" + i, "1.0.0");
+    }
+
+    String response = openRequest("Packages()?$orderby=Id%20desc");
+    Assert.assertTrue(response.contains("<title type=\"text\">foo99</title>"));
+    Assert.assertFalse(response.contains("<title type=\"text\">foo0</title>"));
+
+    Matcher matcher = NEXT_PAGE.matcher(response);
+    if (!matcher.find()) {
+      matcher = NEXT_PAGE2.matcher(response);
+      Assert.assertTrue(matcher.find());
+    }
+
+    String link = StringEscapeUtils.unescapeXml(matcher.group(1));
+    if (link.startsWith(getNuGetServerUrl())) {
+      link = link.substring(getNuGetServerUrl().length());
+    }
+
+    response = openRequest(link);
+    Assert.assertTrue(response.contains("<title type=\"text\">foo0</title>"));
+    Assert.assertFalse(response.contains("<title type=\"text\">foo99</title>"));
+  }
+
+  @Test
+  public void testSkipTopWithOrderBy() throws Exception {
+    setODataSerializer(NugetFeedLibrary.Olingo);
+
+    addMockPackage("bar", "2.0.0");
+    for (int i = 0; i < 5; i++) {
+      addMockPackage("foo", "1.0." + i);
+    }
+
+    final String response = openRequest("Packages()?$orderby=Id&$skip=1&$top=2");
+    assertPackageVersionsOrder(response, "1.0.0", "1.0.1");
+    assertNotContainsPackageVersion(response, "2.0.0");
+    assertNotContainsPackageVersion(response, "1.0.2");
+  }
+
+  @Test(dataProvider = "nugetFeedLibrariesData")
+  public void testFilterByIdAndLatestVersion(final NugetFeedLibrary library) throws Exception {
+    setODataSerializer(library);
+
+    addMockPackage(new HashMap<>(CollectionsUtil.asMap(ID, "Foo", VERSION, "1.0.0", IS_LATEST_VERSION, "false", IS_ABSOLUTE_LATEST_VERSION, "false")));
+    addMockPackage(new HashMap<>(CollectionsUtil.asMap(ID, "Foo", VERSION, "1.1.0", IS_LATEST_VERSION, "true", IS_ABSOLUTE_LATEST_VERSION, "false")));
+    addMockPackage(new HashMap<>(CollectionsUtil.asMap(ID, "Foo", VERSION, "2.0.0-beta", IS_LATEST_VERSION, "false", IS_ABSOLUTE_LATEST_VERSION, "true")));
+    addMockPackage(new HashMap<>(CollectionsUtil.asMap(ID, "Bar", VERSION, "3.0.0", IS_LATEST_VERSION, "true", IS_ABSOLUTE_LATEST_VERSION, "true")));
+
+    String response = openRequest("Packages()?$filter=tolower(Id)%20eq%20'foo'");
+    assertContainsPackageVersion(response, "1.0.0");
+    assertContainsPackageVersion(response, "1.1.0");
+    assertContainsPackageVersion(response, "2.0.0-beta");
+    assertNotContainsPackageVersion(response, "3.0.0");
+
+    response = openRequest("Packages()?$filter=tolower(Id)%20eq%20'foo'%20and%20IsLatestVersion");
+    assertContainsPackageVersion(response, "1.1.0");
+    assertNotContainsPackageVersion(response, "1.0.0");
+    assertNotContainsPackageVersion(response, "2.0.0-beta");
+    assertNotContainsPackageVersion(response, "3.0.0");
+
+    response = openRequest("Packages()?$filter=IsAbsoluteLatestVersion%20eq%20true");
+    assertContainsPackageVersion(response, "2.0.0-beta");
+    assertContainsPackageVersion(response, "3.0.0");
+    assertNotContainsPackageVersion(response, "1.1.0");
+
+    response = openRequest("Packages()?$filter=Id%20eq%20'foo'");
+    assertNotContainsPackageVersion(response, "1.0.0");
+    assertNotContainsPackageVersion(response, "1.1.0");
+
+    response = openRequest("Packages()?$filter=Id%20eq%20'Foo'%20and%20Version%20eq%20'1.1.0'");
+    assertContainsPackageVersion(response, "1.1.0");
+    assertNotContainsPackageVersion(response, "1.0.0");
+    assertNotContainsPackageVersion(response, "2.0.0-beta");
+  }
+
   private String replaceXml(@NotNull final String text) {
     return text
             .replace("http://nuget.org/api/v2/", "BASE_URI/")
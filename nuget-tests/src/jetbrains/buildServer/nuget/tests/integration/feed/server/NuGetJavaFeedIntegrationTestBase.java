@@ -20,6 +20,8 @@ import com.intellij.util.containers.SortedList;
 import jetbrains.buildServer.controllers.MockResponse;
 import jetbrains.buildServer.nuget.feed.server.NuGetFeedConstants;
 import jetbrains.buildServer.nuget.feed.server.NuGetServerSettings;
+import jetbrains.buildServer.nuget.feed.server.NuGetUtils;
+import jetbrains.buildServer.nuget.feed.server.cache.MetadataResponseCache;
 import jetbrains.buildServer.nuget.feed.server.cache.ResponseCache;
 import jetbrains.buildServer.nuget.feed.server.cache.ResponseCacheReset;
 import jetbrains.buildServer.nuget.feed.server.controllers.NuGetFeedHandler;
@@ -31,6 +33,7 @@ import jetbrains.buildServer.nuget.feed.server.index.NuGetFeed;
 import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
 import jetbrains.buildServer.nuget.feed.server.index.PackageAnalyzer;
 import jetbrains.buildServer.nuget.feed.server.index.PackagesIndex;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndexUpdater;
 import jetbrains.buildServer.nuget.feed.server.index.impl.PackagesIndexImpl;
 import jetbrains.buildServer.nuget.feed.server.index.impl.SemanticVersionsComparators;
 import jetbrains.buildServer.nuget.feed.server.index.impl.transform.DownloadUrlComputationTransformation;
@@ -39,13 +42,20 @@ import jetbrains.buildServer.nuget.feed.server.odata4j.ODataRequestHandler;
 import jetbrains.buildServer.nuget.feed.server.odata4j.functions.NuGetFeedFunctions;
 import jetbrains.buildServer.nuget.feed.server.olingo.OlingoRequestHandler;
 import jetbrains.buildServer.nuget.feed.server.olingo.data.OlingoDataSource;
+import jetbrains.buildServer.nuget.feed.server.olingo.processor.AtomEntryCache;
+import jetbrains.buildServer.nuget.feed.server.olingo.processor.BatchPartsExecutor;
 import jetbrains.buildServer.nuget.feed.server.olingo.processor.NuGetServiceFactory;
+import jetbrains.buildServer.nuget.server.version.FrameworkConstraints;
 import jetbrains.buildServer.nuget.server.version.VersionUtility;
 import jetbrains.buildServer.nuget.tests.integration.Paths;
+import jetbrains.buildServer.serverSide.BuildServerListener;
 import jetbrains.buildServer.serverSide.RunningBuildsCollection;
+import jetbrains.buildServer.serverSide.SecurityContextEx;
+import jetbrains.buildServer.serverSide.auth.AuthorityHolder;
 import jetbrains.buildServer.serverSide.metadata.BuildMetadataEntry;
 import jetbrains.buildServer.serverSide.metadata.MetadataStorage;
 import jetbrains.buildServer.util.CollectionsUtil;
+import jetbrains.buildServer.util.EventDispatcher;
 import jetbrains.buildServer.util.StringUtil;
 import org.apache.http.NameValuePair;
 import org.apache.http.ProtocolVersion;
@@ -59,6 +69,7 @@ import org.jmock.Mockery;
 import org.jmock.api.Invocation;
 import org.jmock.lib.action.CustomAction;
 import org.jmock.lib.legacy.ClassImposteriser;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 
@@ -86,6 +97,8 @@ public class NuGetJavaFeedIntegrationTestBase extends NuGetFeedIntegrationTestBa
   private SortedList<NuGetIndexEntry> myFeed;
   private NuGetServerSettings mySettings;
   protected NuGetFeedProvider myFeedProvider;
+  protected MetadataResponseCache myMetadataCache;
+  private BatchPartsExecutor myBatchExecutor;
   private int myCount;
 
   @BeforeMethod
@@ -106,6 +119,7 @@ public class NuGetJavaFeedIntegrationTestBase extends NuGetFeedIntegrationTestBa
     final RunningBuildsCollection runningBuilds = m.mock(RunningBuildsCollection.class);
     final PackageAnalyzer packageAnalyzer = mockery.mock(PackageAnalyzer.class);
     final ResponseCacheReset cacheReset = mockery.mock(ResponseCacheReset.class);
+    final PackagesIndexUpdater indexUpdater = mockery.mock(PackagesIndexUpdater.class);
 
     m.checking(new Expectations() {{
       allowing(myIndexProxy).getAll();
@@ -114,10 +128,22 @@ public class NuGetJavaFeedIntegrationTestBase extends NuGetFeedIntegrationTestBa
           return myFeed;
         }
       });
-      allowing(myIndexProxy).search(with(any(Collection.class)), with(equal("noSuchPackage")));
+      allowing(myIndexProxy).search(with(equal("noSuchPackage")), with(any(Set.class)), with(any(Boolean.class)));
       will(returnValue(Collections.emptyList()));
-      allowing(myIndexProxy).search(with(any(Collection.class)), with(any(String.class)));
-      will(returnValue(myFeed));
+      allowing(myIndexProxy).search(with(any(String.class)), with(any(Set.class)), with(any(Boolean.class)));
+      will(new CustomAction("lazy return matching packages") {
+        @SuppressWarnings("unchecked")
+        public Object invoke(Invocation invocation) throws Throwable {
+          final Set<String> frameworks = (Set<String>) invocation.getParameter(1);
+          final boolean includePrerelease = (Boolean) invocation.getParameter(2);
+          return CollectionsUtil.filterCollection(myFeed, entry -> {
+            final Map<String, String> attributes = entry.getAttributes();
+            if (!includePrerelease && Boolean.parseBoolean(attributes.get(IS_PRERELEASE))) return false;
+            final Set<String> constraints = FrameworkConstraints.convertFromString(attributes.get(PackagesIndex.TEAMCITY_FRAMEWORK_CONSTRAINTS));
+            return VersionUtility.isPackageCompatibleWithFrameworks(frameworks, constraints);
+          });
+        }
+      });
       allowing(myIndexProxy).find(with(equal(CollectionsUtil.asMap("Id", "skiptoken"))));
       will(new CustomAction("lazy return packages") {
         public Object invoke(Invocation invocation) throws Throwable {
@@ -130,6 +156,35 @@ public class NuGetJavaFeedIntegrationTestBase extends NuGetFeedIntegrationTestBa
           return myFeed;
         }
       });
+      allowing(myIndexProxy).getVersions(with(equal("skiptoken")));
+      will(new CustomAction("lazy return packages") {
+        public Object invoke(Invocation invocation) throws Throwable {
+          return CollectionsUtil.filterCollection(myFeed, entry -> entry.getKey().startsWith("skiptoken"));
+        }
+      });
+      allowing(myIndexProxy).getVersions(with(any(String.class)));
+      will(new CustomAction("lazy return packages") {
+        public Object invoke(Invocation invocation) throws Throwable {
+          return myFeed;
+        }
+      });
+      allowing(myIndexProxy).getVersions(with(any(Collection.class)));
+      will(new CustomAction("lazy return packages by id") {
+        @SuppressWarnings("unchecked")
+        public Object invoke(Invocation invocation) throws Throwable {
+          final Map<String, List<NuGetIndexEntry>> result = new HashMap<>();
+          for (String id : (Collection<String>) invocation.getParameter(0)) {
+            result.put(id.toLowerCase(), CollectionsUtil.filterCollection(myFeed, entry -> id.equalsIgnoreCase(entry.getAttributes().get(ID))));
+          }
+          return result;
+        }
+      });
+      allowing(myIndexProxy).getLatestVersions(with(any(Boolean.class)));
+      will(new CustomAction("lazy return packages") {
+        public Object invoke(Invocation invocation) throws Throwable {
+          return myFeed;
+        }
+      });
       allowing(myIndexProxy).getByKey(with(equal("skiptoken.1.0.102")));
       will(new CustomAction("lazy return packages") {
         public Object invoke(Invocation invocation) throws Throwable {
@@ -137,7 +192,13 @@ public class NuGetJavaFeedIntegrationTestBase extends NuGetFeedIntegrationTestBa
         }
       });
       allowing(myIndexProxy).getByKey(with(any(String.class)));
-      will(returnValue(myFeed));
+      will(new CustomAction("lazy return packages by key") {
+        public Object invoke(Invocation invocation) throws Throwable {
+          final String key = (String) invocation.getParameter(0);
+          return CollectionsUtil.filterCollection(myFeed, entry -> key.equals(NuGetUtils.getPackageKey(
+            entry.getAttributes().get(ID), entry.getAttributes().get(VERSION))));
+        }
+      });
       allowing(myIndex).getAll();
       will(returnValue(myFeed));
       allowing(mySettings).getNuGetFeedControllerPath();
@@ -157,14 +218,46 @@ public class NuGetJavaFeedIntegrationTestBase extends NuGetFeedIntegrationTestBa
     final NuGetFeed feed = new NuGetFeed(myIndexProxy, mySettings);
     myProducer = new NuGetProducerHolder(feed, mySettings, new NuGetFeedFunctions(feed));
 
-    final ODataRequestHandler oDataRequestHandler = new ODataRequestHandler(myProducer, responseCache);
-    final NuGetServiceFactory serviceFactory = new NuGetServiceFactory(new OlingoDataSource(feed));
-    final OlingoRequestHandler olingoRequestHandler = new OlingoRequestHandler(serviceFactory, responseCache);
+    myMetadataCache = new MetadataResponseCache();
+    final ODataRequestHandler oDataRequestHandler = new ODataRequestHandler(myProducer, responseCache, myMetadataCache);
+    myBatchExecutor = new BatchPartsExecutor(createSecurityContext());
+    final NuGetServiceFactory serviceFactory = new NuGetServiceFactory(new OlingoDataSource(feed), new AtomEntryCache(), myBatchExecutor);
+    final OlingoRequestHandler olingoRequestHandler = new OlingoRequestHandler(serviceFactory, responseCache, myMetadataCache);
     final PackageUploadHandler uploadHandler = new PackageUploadHandler(runningBuilds, myMetadataStorage,
-            packageAnalyzer, cacheReset);
+            packageAnalyzer, cacheReset, indexUpdater);
     myFeedProvider = new NuGetFeedProviderImpl(oDataRequestHandler, olingoRequestHandler, uploadHandler);
   }
 
+  @AfterMethod
+  @Override
+  protected void tearDown() throws Exception {
+    super.tearDown();
+    myBatchExecutor.dispose();
+  }
+
+  @NotNull
+  private SecurityContextEx createSecurityContext() {
+    final SecurityContextEx securityContext = m.mock(SecurityContextEx.class);
+    final AuthorityHolder authorityHolder = m.mock(AuthorityHolder.class);
+    try {
+      m.checking(new Expectations() {{
+        allowing(securityContext).getAuthorityHolder();
+        will(returnValue(authorityHolder));
+
+        allowing(securityContext).runAs(with(authorityHolder), with(any(SecurityContextEx.RunAsAction.class)));
+        will(new CustomAction("run action") {
+          public Object invoke(Invocation invocation) throws Throwable {
+            ((SecurityContextEx.RunAsAction) invocation.getParameter(1)).run();
+            return null;
+          }
+        });
+      }});
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+    return securityContext;
+  }
+
   @NotNull
   private static Collection<BuildMetadataEntry> toEntries(Iterable<NuGetIndexEntry> feed) {
     Collection<BuildMetadataEntry> ee = new ArrayList<>();
@@ -198,7 +291,8 @@ public class NuGetJavaFeedIntegrationTestBase extends NuGetFeedIntegrationTestBa
             Arrays.asList(
                     new MockExternalIdTransformation(),
                     new DownloadUrlComputationTransformation(mySettings)
-            )
+            ),
+            EventDispatcher.create(BuildServerListener.class)
     ));
   }
 
@@ -21,6 +21,7 @@ import jetbrains.buildServer.controllers.MockResponse;
 import jetbrains.buildServer.nuget.feed.server.cache.ResponseCacheReset;
 import jetbrains.buildServer.nuget.feed.server.controllers.PackageUploadHandler;
 import jetbrains.buildServer.nuget.feed.server.index.PackageAnalyzer;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndexUpdater;
 import jetbrains.buildServer.nuget.feed.server.index.impl.NuGetArtifactsMetadataProvider;
 import jetbrains.buildServer.nuget.feed.server.index.impl.NuGetPackageAnalyzer;
 import jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes;
@@ -62,10 +63,11 @@ public class PackageUploadHandlerTests {
     RunningBuildsCollection runningBuilds = m.mock(RunningBuildsCollection.class);
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
     PackageAnalyzer packageAnalyzer = new NuGetPackageAnalyzer();
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -82,9 +84,10 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = new NuGetPackageAnalyzer();
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -102,9 +105,10 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = new NuGetPackageAnalyzer();
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -123,6 +127,7 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = new NuGetPackageAnalyzer();
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
 
     m.checking(new Expectations() {{
       oneOf(runningBuilds).findRunningBuildById(3641L);
@@ -130,7 +135,7 @@ public class PackageUploadHandlerTests {
     }});
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -151,6 +156,7 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = new NuGetPackageAnalyzer();
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
 
     m.checking(new Expectations() {{
       oneOf(runningBuilds).findRunningBuildById(3641L);
@@ -158,7 +164,7 @@ public class PackageUploadHandlerTests {
     }});
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -185,6 +191,7 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = new NuGetPackageAnalyzer();
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
 
     m.checking(new Expectations() {{
       oneOf(runningBuilds).findRunningBuildById(3641L);
@@ -195,7 +202,7 @@ public class PackageUploadHandlerTests {
     }});
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -216,6 +223,7 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = new NuGetPackageAnalyzer();
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
 
     m.checking(new Expectations() {{
       oneOf(runningBuilds).findRunningBuildById(3641L);
@@ -226,7 +234,7 @@ public class PackageUploadHandlerTests {
     }});
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -247,6 +255,7 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = new NuGetPackageAnalyzer();
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
 
     m.checking(new Expectations() {{
       oneOf(runningBuilds).findRunningBuildById(3641L);
@@ -257,7 +266,7 @@ public class PackageUploadHandlerTests {
     }});
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -278,6 +287,7 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = new NuGetPackageAnalyzer();
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
 
     m.checking(new Expectations() {{
       oneOf(runningBuilds).findRunningBuildById(3641L);
@@ -287,7 +297,7 @@ public class PackageUploadHandlerTests {
     }});
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -308,9 +318,11 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = m.mock(PackageAnalyzer.class);
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
     Map<String, String> metadata = CollectionsUtil.asMap(
       NuGetPackageAttributes.ID, "Id",
-      NuGetPackageAttributes.NORMALIZED_VERSION, "1.0.0");
+      NuGetPackageAttributes.NORMALIZED_VERSION, "1.0.0",
+      NuGetPackageAttributes.PACKAGE_HASH, "hash");
 
     m.checking(new Expectations() {{
       oneOf(runningBuilds).findRunningBuildById(3641L);
@@ -319,8 +331,6 @@ public class PackageUploadHandlerTests {
       will(returnValue(ArtifactsUploadLimit.UNLIMITED));
       oneOf(packageAnalyzer).analyzePackage(with(any(InputStream.class)));
       will(returnValue(metadata));
-      oneOf(packageAnalyzer).getSha512Hash(with(any(InputStream.class)));
-      will(returnValue("hash"));
       oneOf(build).getBuildTypeId();
       will(returnValue("type"));
       oneOf(build).getBuildId();
@@ -334,7 +344,7 @@ public class PackageUploadHandlerTests {
     }});
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -355,9 +365,11 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = m.mock(PackageAnalyzer.class);
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
     Map<String, String> metadata = CollectionsUtil.asMap(
       NuGetPackageAttributes.ID, "Id",
-      NuGetPackageAttributes.NORMALIZED_VERSION, "1.0.0");
+      NuGetPackageAttributes.NORMALIZED_VERSION, "1.0.0",
+      NuGetPackageAttributes.PACKAGE_HASH, "hash");
 
     m.checking(new Expectations() {{
       oneOf(runningBuilds).findRunningBuildById(3641L);
@@ -377,7 +389,7 @@ public class PackageUploadHandlerTests {
     }});
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -398,9 +410,11 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = m.mock(PackageAnalyzer.class);
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
     Map<String, String> metadata = CollectionsUtil.asMap(
       NuGetPackageAttributes.ID, "Id",
-      NuGetPackageAttributes.NORMALIZED_VERSION, "1.0.0");
+      NuGetPackageAttributes.NORMALIZED_VERSION, "1.0.0",
+      NuGetPackageAttributes.PACKAGE_HASH, "hash");
 
     m.checking(new Expectations() {{
       oneOf(runningBuilds).findRunningBuildById(3641L);
@@ -409,8 +423,6 @@ public class PackageUploadHandlerTests {
       will(returnValue(ArtifactsUploadLimit.UNLIMITED));
       oneOf(packageAnalyzer).analyzePackage(with(any(InputStream.class)));
       will(returnValue(metadata));
-      oneOf(packageAnalyzer).getSha512Hash(with(any(InputStream.class)));
-      will(returnValue("hash"));
       oneOf(build).getBuildTypeId();
       will(returnValue("type"));
       oneOf(build).getBuildId();
@@ -420,11 +432,12 @@ public class PackageUploadHandlerTests {
       oneOf(build).publishArtifact(with(any(String.class)), with(any(InputStream.class)));
       oneOf(metadataStorage).addBuildEntry(with(any(Long.class)), with(any(String.class)),
         with(any(String.class)), with(any(Map.class)), with(any(Boolean.class)));
-      oneOf(cacheReset).resetCache();
+      oneOf(indexUpdater).addPackage(with(equal(3641L)), with(equal("id.1.0.0")), with(any(Map.class)));
+      oneOf(cacheReset).resetCache("Id");
     }});
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -445,9 +458,11 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = m.mock(PackageAnalyzer.class);
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
     Map<String, String> metadata = CollectionsUtil.asMap(
       NuGetPackageAttributes.ID, "Id",
-      NuGetPackageAttributes.NORMALIZED_VERSION, "1.0.0");
+      NuGetPackageAttributes.NORMALIZED_VERSION, "1.0.0",
+      NuGetPackageAttributes.PACKAGE_HASH, "hash");
 
     m.checking(new Expectations() {{
       oneOf(runningBuilds).findRunningBuildById(3641L);
@@ -456,8 +471,6 @@ public class PackageUploadHandlerTests {
       will(returnValue(ArtifactsUploadLimit.UNLIMITED));
       oneOf(packageAnalyzer).analyzePackage(with(any(InputStream.class)));
       will(returnValue(metadata));
-      oneOf(packageAnalyzer).getSha512Hash(with(any(InputStream.class)));
-      will(returnValue("hash"));
       oneOf(build).getBuildTypeId();
       will(returnValue("type"));
       oneOf(build).getBuildId();
@@ -471,11 +484,12 @@ public class PackageUploadHandlerTests {
       oneOf(build).publishArtifact(with(any(String.class)), with(any(InputStream.class)));
       oneOf(metadataStorage).addBuildEntry(with(any(Long.class)), with(any(String.class)),
         with(any(String.class)), with(any(Map.class)), with(any(Boolean.class)));
-      oneOf(cacheReset).resetCache();
+      oneOf(indexUpdater).addPackage(with(equal(3641L)), with(equal("id.1.0.0")), with(any(Map.class)));
+      oneOf(cacheReset).resetCache("Id");
     }});
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -495,9 +509,11 @@ public class PackageUploadHandlerTests {
     MetadataStorage metadataStorage = m.mock(MetadataStorage.class);
     PackageAnalyzer packageAnalyzer = m.mock(PackageAnalyzer.class);
     ResponseCacheReset cacheReset = m.mock(ResponseCacheReset.class);
+    PackagesIndexUpdater indexUpdater = m.mock(PackagesIndexUpdater.class);
     Map<String, String> metadata = CollectionsUtil.asMap(
       NuGetPackageAttributes.ID, "Id",
-      NuGetPackageAttributes.NORMALIZED_VERSION, "1.0.0");
+      NuGetPackageAttributes.NORMALIZED_VERSION, "1.0.0",
+      NuGetPackageAttributes.PACKAGE_HASH, "hash");
 
     m.checking(new Expectations() {{
       oneOf(runningBuilds).findRunningBuildById(3641L);
@@ -506,8 +522,6 @@ public class PackageUploadHandlerTests {
       will(returnValue(new ArtifactsUploadLimit(-1L, null)));
       oneOf(packageAnalyzer).analyzePackage(with(any(InputStream.class)));
       will(returnValue(metadata));
-      oneOf(packageAnalyzer).getSha512Hash(with(any(InputStream.class)));
-      will(returnValue("hash"));
       oneOf(build).getBuildTypeId();
       will(returnValue("type"));
       oneOf(build).getBuildId();
@@ -521,11 +535,12 @@ public class PackageUploadHandlerTests {
       oneOf(build).publishArtifact(with(any(String.class)), with(any(InputStream.class)));
       oneOf(metadataStorage).addBuildEntry(with(any(Long.class)), with(any(String.class)),
         with(any(String.class)), with(any(Map.class)), with(any(Boolean.class)));
-      oneOf(cacheReset).resetCache();
+      oneOf(indexUpdater).addPackage(with(equal(3641L)), with(equal("id.1.0.0")), with(any(Map.class)));
+      oneOf(cacheReset).resetCache("Id");
     }});
 
     PackageUploadHandler handler = new PackageUploadHandler(runningBuilds, metadataStorage,
-      packageAnalyzer, cacheReset);
+      packageAnalyzer, cacheReset, indexUpdater);
     RequestWrapper request = new RequestWrapper(SERVLET_PATH, SERVLET_PATH + "/");
     ResponseWrapper response = new ResponseWrapper(new MockResponse());
 
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.tests.server;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.nuget.server.version.FrameworkRegistry;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+public class FrameworkRegistryTest extends BaseTestCase {
+  @Test
+  public void compatible_frameworks_of_registered_project_framework() {
+    final FrameworkRegistry registry = new FrameworkRegistry();
+    final BitSet packageFrameworks = registry.getFrameworks(Arrays.asList("net20", "net45", "sl4", "unknown"));
+    assertNotNull(packageFrameworks);
+    assertEquals(4, packageFrameworks.cardinality());
+
+    final BitSet net40 = registry.getFrameworks(Collections.singleton("net40"));
+    assertNotNull(net40);
+
+    final BitSet compatible = registry.getCompatibleFrameworks(net40);
+    assertEquals(compatible, registry.getFrameworks(Arrays.asList("net20", "net40")));
+  }
+
+  @Test
+  public void compatible_frameworks_of_unknown_project_framework() {
+    final FrameworkRegistry registry = new FrameworkRegistry();
+    registry.getFrameworks(Arrays.asList("net20", "net45", "sl4"));
+
+    assertEquals(registry.getCompatibleFrameworks(Collections.singleton("net40")), registry.getFrameworks(Collections.singleton("net20")));
+    assertEquals(3, registry.size());
+    assertTrue(registry.getCompatibleFrameworks(Collections.singleton("unknown")).isEmpty());
+  }
+
+  @Test
+  public void full_registry_does_not_register_frameworks() {
+    final FrameworkRegistry registry = new FrameworkRegistry(2);
+    assertNotNull(registry.getFrameworks(Arrays.asList("net20", "net45")));
+    assertNotNull(registry.getFrameworks(Collections.singleton("net20")));
+    assertNull(registry.getFrameworks(Collections.singleton("net40")));
+    assertEquals(2, registry.size());
+  }
+}
@@ -78,6 +78,11 @@ public class SemanticVersionComparisonTest extends BaseTestCase {
     doTest("1.0009.0", "1.10.0", "1.000011.0");
   }
 
+  @Test
+  public void test_large_components() {
+    doTest("1.0.65535", "1.0.65536", "1.0.2147483647", "32767.0", "32768.0", "65536.0.0.1");
+  }
+
   @Test
   public void rule_3() {
     /**
@@ -18,6 +18,7 @@ package jetbrains.buildServer.nuget.tests.server;
 
 import jetbrains.buildServer.BaseTestCase;
 import jetbrains.buildServer.nuget.server.version.SemanticVersion;
+import jetbrains.buildServer.nuget.server.version.Version;
 import org.testng.annotations.Test;
 
 /**
@@ -30,4 +31,31 @@ public class SemanticVersionTest extends BaseTestCase {
     assertEquals(SemanticVersion.valueOf("1.0.0"), SemanticVersion.valueOf("1.0"));
     assertEquals(SemanticVersion.valueOf("1.0.0"), SemanticVersion.valueOf("1.0.0.0"));
   }
+
+  @Test
+  public void testParsesComponents() throws Exception {
+    final SemanticVersion version = SemanticVersion.valueOf(" 1.2.3.4-beta.2+build.5 ");
+    assertNotNull(version);
+    assertEquals(new Version(1, 2, 3, 4), version.getVersion());
+    assertEquals("beta.2", version.getSpecialVersion());
+    assertEquals("1.2.3.4-beta.2+build.5", version.toString());
+  }
+
+  @Test
+  public void testRejectsInvalidVersions() throws Exception {
+    assertNull(SemanticVersion.valueOf(""));
+    assertNull(SemanticVersion.valueOf("x"));
+    assertNull(SemanticVersion.valueOf("1."));
+    assertNull(SemanticVersion.valueOf("1.2.3.4.5"));
+    assertNull(SemanticVersion.valueOf("1.0-"));
+    assertNull(SemanticVersion.valueOf("1.0-beta..1"));
+    assertNull(SemanticVersion.valueOf("1.0+"));
+    assertNull(SemanticVersion.valueOf("1.0-beta_1"));
+    assertNull(SemanticVersion.valueOf("99999999999"));
+  }
+
+  @Test
+  public void testParsedVersionsAreCached() throws Exception {
+    assertSame(SemanticVersion.valueOf("3.1.4-rc.1"), SemanticVersion.valueOf("3.1.4-rc.1"));
+  }
 }
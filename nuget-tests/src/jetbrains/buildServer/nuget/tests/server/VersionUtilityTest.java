@@ -23,6 +23,11 @@ import jetbrains.buildServer.nuget.server.version.VersionUtility;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * @author Evgeniy.Koshkin
  */
@@ -160,6 +165,14 @@ public class VersionUtilityTest extends BaseTestCase {
     assertTrue(VersionUtility.isCompatible(null, VersionUtility.parseFrameworkName("net40-client")));
   }
 
+  @Test
+  public void packageCompatibilityWithProjectFrameworks() {
+    final Set<String> packageFrameworks = new HashSet<String>(Arrays.asList("net20", "sl4"));
+    assertTrue(VersionUtility.isPackageCompatibleWithFrameworks(Collections.singleton("net40"), packageFrameworks));
+    assertTrue(VersionUtility.isPackageCompatibleWithFrameworks(new HashSet<String>(Arrays.asList("foo", "sl4")), packageFrameworks));
+    assertFalse(VersionUtility.isPackageCompatibleWithFrameworks(Collections.singleton("net11"), packageFrameworks));
+  }
+
   @Test
   public void testParsePortable() throws Exception {
     final FrameworkName frameworkName = VersionUtility.parseFrameworkName("portable-windows8+net45");
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.tests.server.feed.server;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.nuget.feed.server.MetadataConstants;
+import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndex;
+import jetbrains.buildServer.nuget.feed.server.index.impl.ODataDataFormat;
+import jetbrains.buildServer.nuget.feed.server.index.impl.PackageAttributes;
+import jetbrains.buildServer.nuget.feed.server.olingo.model.NuGetMapper;
+import jetbrains.buildServer.nuget.feed.server.olingo.model.V2FeedPackage;
+import jetbrains.buildServer.nuget.feed.server.olingo.processor.AtomEntryCache;
+import jetbrains.buildServer.nuget.feed.server.olingo.processor.AtomFeedStream;
+import jetbrains.buildServer.nuget.feed.server.olingo.processor.BeanPropertyAccess;
+import org.apache.olingo.odata2.api.commons.InlineCount;
+import org.apache.olingo.odata2.api.edm.*;
+import org.apache.olingo.odata2.api.edm.provider.CustomizableFeedMappings;
+import org.apache.olingo.odata2.api.edm.provider.EntityType;
+import org.apache.olingo.odata2.api.edm.provider.Mapping;
+import org.apache.olingo.odata2.api.edm.provider.Property;
+import org.apache.olingo.odata2.api.ep.EntityProvider;
+import org.apache.olingo.odata2.api.ep.EntityProviderWriteProperties;
+import org.apache.olingo.odata2.core.edm.provider.EdmImplProv;
+import org.apache.olingo.odata2.core.edm.provider.EdmxProvider;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+
+/**
+ * Checks that streamed Atom feed matches the Olingo entity provider output.
+ */
+@Test
+public class AtomFeedStreamTest extends BaseTestCase {
+
+  private static final URI SERVICE_ROOT = URI.create("http://localhost/app/nuget/feed/_Root/default/v2/");
+  private static final String NEXT_LINK = "http://localhost/app/nuget/feed/_Root/default/v2/Packages?$skiptoken='a','1.0'&$top=10";
+  private final BeanPropertyAccess myValueAccess = new BeanPropertyAccess();
+  private EdmEntitySet myEntitySet;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    final EdmxProvider provider = new EdmxProvider().parse(
+      PackagesIndex.class.getResourceAsStream("/feed-metadata/NuGet-V2.xml"), true);
+    final EntityType packageType = provider.getEntityType(
+      new FullQualifiedName(MetadataConstants.ENTITY_NAMESPACE, "V2" + MetadataConstants.ENTITY_TYPE_NAME));
+    packageType.setMapping(new Mapping()
+      .setMediaResourceSourceKey(PackagesIndex.TEAMCITY_DOWNLOAD_URL)
+      .setMediaResourceMimeTypeKey(MetadataConstants.CONTENT_TYPE));
+    for (Property property : packageType.getProperties()) {
+      if (ID.equals(property.getName())) {
+        property.setCustomizableFeedMappings(new CustomizableFeedMappings().setFcTargetPath(EdmTargetPath.SYNDICATION_TITLE));
+      } else if (LAST_UPDATED.equals(property.getName())) {
+        property.setCustomizableFeedMappings(new CustomizableFeedMappings().setFcTargetPath(EdmTargetPath.SYNDICATION_UPDATED));
+      } else if (AUTHORS.equals(property.getName())) {
+        property.setCustomizableFeedMappings(new CustomizableFeedMappings().setFcTargetPath(EdmTargetPath.SYNDICATION_AUTHORNAME));
+      }
+    }
+
+    myEntitySet = new EdmImplProv(provider).getDefaultEntityContainer().getEntitySet(MetadataConstants.ENTITY_SET_NAME);
+  }
+
+  public void test_supported_content() throws Exception {
+    Assert.assertTrue(AtomFeedStream.isSupported(myEntitySet));
+    Assert.assertTrue(AtomFeedStream.isAtom("application/atom+xml;charset=utf-8"));
+    Assert.assertFalse(AtomFeedStream.isAtom("application/json"));
+  }
+
+  public void test_matches_entity_provider() throws Exception {
+    final List<NuGetIndexEntry> packages = Arrays.asList(
+      createPackage("Foo", "1.0.0", "Mike & <Co>"),
+      createPackage("Foo\"'<&>", "2.0.0-beta+meta", null));
+
+    Assert.assertEquals(streamFeed(packages, null, null, null), writeFeed(packages, null, null));
+  }
+
+  public void test_matches_entity_provider_with_count_and_next_link() throws Exception {
+    final List<NuGetIndexEntry> packages = Collections.singletonList(createPackage("Foo", "1.0.0", "Mike"));
+
+    Assert.assertEquals(streamFeed(packages, null, 10, NEXT_LINK), writeFeed(packages, 10, NEXT_LINK));
+  }
+
+  public void test_empty_feed() throws Exception {
+    final List<NuGetIndexEntry> packages = Collections.emptyList();
+
+    Assert.assertEquals(streamFeed(packages, null, 0, null), writeFeed(packages, 0, null));
+  }
+
+  public void test_cached_entries() throws Exception {
+    final AtomEntryCache cache = new AtomEntryCache(1024 * 1024);
+    final List<NuGetIndexEntry> packages = Arrays.asList(
+      createPackage("Foo", "1.0.0", "Mike"),
+      createPackage("Bar", "2.0.0", null));
+
+    final String expected = writeFeed(packages, null, null);
+    Assert.assertEquals(streamFeed(packages, cache, null, null), expected);
+    Assert.assertEquals(cache.getCount(), 2);
+    Assert.assertEquals(streamFeed(packages, cache, null, null), expected);
+    Assert.assertEquals(streamFeed(packages.subList(1, 2), cache, 1, null), writeFeed(packages.subList(1, 2), 1, null));
+  }
+
+  public void test_changed_entry_is_rendered_again() throws Exception {
+    final AtomEntryCache cache = new AtomEntryCache(1024 * 1024);
+    streamFeed(Collections.singletonList(createPackage("Foo", "1.0.0", "Mike")), cache, null, null);
+
+    final List<NuGetIndexEntry> packages = Collections.singletonList(createPackage("Foo", "1.0.0", "John"));
+    Assert.assertEquals(streamFeed(packages, cache, null, null), writeFeed(packages, null, null));
+    Assert.assertEquals(cache.getCount(), 1);
+  }
+
+  public void test_cache_size_limit() throws Exception {
+    final AtomEntryCache cache = new AtomEntryCache(1024 * 1024);
+    streamFeed(Collections.singletonList(createPackage("Foo", "1.0.10", "Mike")), cache, null, null);
+    final long entrySize = cache.getSize();
+
+    // each of cache segments fits a single entry
+    final AtomEntryCache smallCache = new AtomEntryCache(entrySize * 20);
+    final List<NuGetIndexEntry> packages = new ArrayList<>();
+    for (int i = 10; i < 100; i++) {
+      packages.add(createPackage("Foo", "1.0." + i, "Mike"));
+    }
+    Assert.assertEquals(streamFeed(packages, smallCache, null, null), writeFeed(packages, null, null));
+    Assert.assertTrue(smallCache.getCount() > 0);
+    Assert.assertTrue(smallCache.getCount() <= 16);
+    Assert.assertTrue(smallCache.getSize() <= entrySize * 20);
+  }
+
+  public void test_entry_with_shared_attributes_is_reused() throws Exception {
+    final AtomEntryCache cache = new AtomEntryCache(1024 * 1024);
+    final PackageAttributes attributes = PackageAttributes.create(createPackage("Foo", "1.0.0", "Mike").getAttributes());
+    final byte[] content = "<entry/>".getBytes(StandardCharsets.UTF_8);
+    cache.put("feed", new NuGetIndexEntry("Foo.1.0.0", attributes.withLatestFlags(false, true)), content);
+
+    Assert.assertSame(cache.get("feed", new NuGetIndexEntry("Foo.1.0.0", attributes.withLatestFlags(false, true))), content);
+
+    final PackageAttributes changed = PackageAttributes.create(createPackage("Foo", "1.0.0", "Mike").getAttributes());
+    Assert.assertNull(cache.get("feed", new NuGetIndexEntry("Foo.1.0.0", changed.withLatestFlags(false, true))));
+  }
+
+  private String streamFeed(final List<NuGetIndexEntry> packages,
+                            final AtomEntryCache cache,
+                            final Integer count,
+                            final String nextLink) throws Exception {
+    final InputStream stream = AtomFeedStream.create(myEntitySet, SERVICE_ROOT, packages,
+      entry -> NuGetMapper.mapPackage(entry, SERVICE_ROOT), myValueAccess, cache, count, nextLink);
+    return normalize(readStream(stream));
+  }
+
+  private String writeFeed(final List<NuGetIndexEntry> packages,
+                           final Integer count,
+                           final String nextLink) throws Exception {
+    final EdmEntityType entityType = myEntitySet.getEntityType();
+    final List<Map<String, Object>> values = new ArrayList<>();
+    for (NuGetIndexEntry entry : packages) {
+      final V2FeedPackage feedPackage = NuGetMapper.mapPackage(entry, SERVICE_ROOT);
+      final Map<String, Object> valueMap = new HashMap<>();
+      for (String name : entityType.getPropertyNames()) {
+        valueMap.put(name, myValueAccess.getPropertyValue(feedPackage, (EdmProperty) entityType.getProperty(name)));
+      }
+      valueMap.put(MetadataConstants.CONTENT_TYPE, feedPackage.getContentType());
+      valueMap.put(PackagesIndex.TEAMCITY_DOWNLOAD_URL, feedPackage.getTeamCityDownloadUrl());
+      values.add(valueMap);
+    }
+
+    final EntityProviderWriteProperties properties = EntityProviderWriteProperties
+      .serviceRoot(SERVICE_ROOT)
+      .inlineCountType(count != null ? InlineCount.ALLPAGES : null)
+      .inlineCount(count)
+      .nextLink(nextLink)
+      .build();
+
+    return normalize(readStream((InputStream) EntityProvider.writeFeed(
+      "application/atom+xml", myEntitySet, values, properties).getEntity()));
+  }
+
+  private static String readStream(final InputStream stream) throws Exception {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[100];
+    int read;
+    while ((read = stream.read(buffer)) > 0) {
+      output.write(buffer, 0, read);
+    }
+
+    return new String(output.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Feed update time is the current time.
+   */
+  private static String normalize(final String feed) {
+    return feed.replaceFirst("</title><updated>[^<]+</updated><author>", "</title><updated/><author>");
+  }
+
+  private static NuGetIndexEntry createPackage(final String id, final String version, final String authors) {
+    final Map<String, String> attributes = new HashMap<>();
+    attributes.put(ID, id);
+    attributes.put(VERSION, version);
+    if (authors != null) {
+      attributes.put(AUTHORS, authors);
+    }
+    attributes.put(DESCRIPTION, "Description\r\nwith ☃ and 😀");
+    attributes.put(CREATED, ODataDataFormat.formatDate(new Date(1500000000123L)));
+    attributes.put(LAST_UPDATED, ODataDataFormat.formatDate(new Date(1500000000000L)));
+    attributes.put(PUBLISHED, ODataDataFormat.formatDate(new Date(0)));
+    attributes.put(PACKAGE_SIZE, "1234");
+    attributes.put(IS_LATEST_VERSION, "true");
+    attributes.put(PackagesIndex.TEAMCITY_DOWNLOAD_URL, "/repository/download/bt1/1:id/" + id + "." + version + ".nupkg?a=1&b=2");
+    return new NuGetIndexEntry(id + "." + version, attributes);
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.tests.server.feed.server;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.nuget.feed.server.odata4j.BufferedXMLWriter;
+import jetbrains.buildServer.nuget.feed.server.odata4j.ManualXMLWriter3;
+import org.odata4j.stax2.QName2;
+import org.odata4j.stax2.XMLWriter2;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Checks that {@link BufferedXMLWriter} produces the same bytes as {@link ManualXMLWriter3}.
+ */
+@Test
+public class BufferedXMLWriterTest extends BaseTestCase {
+
+  private static final String ATOM_NS = "http://www.w3.org/2005/Atom";
+  private static final String DATA_NS = "http://schemas.microsoft.com/ado/2007/08/dataservices";
+  private static final String METADATA_NS = "http://schemas.microsoft.com/ado/2007/08/dataservices/metadata";
+
+  public void test_feed() {
+    assertSameOutput(writer -> {
+      writer.startDocument();
+      writer.startElement(new QName2("feed"), ATOM_NS);
+      writer.writeNamespace("d", DATA_NS);
+      writer.writeNamespace("m", METADATA_NS);
+      writer.writeAttribute(new QName2("http://www.w3.org/XML/1998/namespace", "base", "xml"), "http://localhost/feed/");
+      writer.startElement(new QName2("entry"));
+      writer.startElement(new QName2("id"));
+      writer.writeText("http://localhost/feed/Packages(Id='Foo',Version='1.0')");
+      writer.endElement("id");
+      writer.startElement(new QName2("link"));
+      writer.writeAttribute("rel", "edit-media");
+      writer.writeAttribute("href", "Packages(Id='Foo',Version='1.0')/$value?a=1&b=2");
+      writer.endElement("link");
+      writer.startElement(new QName2(METADATA_NS, "properties", "m"));
+      writer.startElement(new QName2(DATA_NS, "Description", "d"));
+      writer.writeText("Description\r\nwith ☃ and 😀");
+      writer.endElement("Description");
+      writer.startElement(new QName2(DATA_NS, "Authors", "d"));
+      writer.writeAttribute(new QName2(METADATA_NS, "null", "m"), "true");
+      writer.endElement("Authors");
+      writer.startElement(new QName2(DATA_NS, "Tags", "d"));
+      writer.writeText("");
+      writer.endElement("Tags");
+      writer.endElement("properties");
+      writer.endElement("entry");
+      writer.endElement("feed");
+      writer.endDocument();
+    });
+  }
+
+  public void test_escaping() {
+    assertSameOutput(writer -> {
+      writer.startElement("a");
+      writer.writeAttribute("b", "<\"'&>");
+      writer.writeAttribute("c", null);
+      writer.writeText("&&<<>>''\"\"");
+      writer.writeText("x<y & z>w");
+      writer.writeText(null);
+      writer.endDocument();
+    });
+  }
+
+  public void test_unclosed_elements() {
+    assertSameOutput(writer -> {
+      writer.startDocument();
+      writer.startElement("a");
+      writer.startElement("b");
+      writer.writeText("text");
+      writer.startElement("c");
+      writer.endDocument();
+    });
+  }
+
+  public void test_large_content() {
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      text.append("value ").append(i).append(" & <").append(i % 7).append(">Ж");
+    }
+
+    assertSameOutput(writer -> {
+      writer.startElement("a");
+      for (int i = 0; i < 10; i++) {
+        writer.startElement(new QName2(DATA_NS, "value" + i, "d"));
+        writer.writeText(text.toString());
+        writer.endElement("value" + i);
+      }
+      writer.endDocument();
+    });
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void test_mismatched_end_element() {
+    final XMLWriter2 writer = new BufferedXMLWriter(new StringWriter());
+    writer.startElement("a");
+    writer.endElement("b");
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void test_attribute_without_element() {
+    final XMLWriter2 writer = new BufferedXMLWriter(new StringWriter());
+    writer.startElement("a");
+    writer.writeText("text");
+    writer.writeAttribute("b", "c");
+  }
+
+  private static void assertSameOutput(final Consumer<XMLWriter2> action) {
+    final StringWriter expected = new StringWriter();
+    action.accept(new ManualXMLWriter3(expected));
+
+    for (int i = 0; i < 2; i++) {
+      final StringWriter actual = new StringWriter();
+      action.accept(new BufferedXMLWriter(actual));
+      Assert.assertEquals(actual.toString().getBytes(StandardCharsets.UTF_8), expected.toString().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
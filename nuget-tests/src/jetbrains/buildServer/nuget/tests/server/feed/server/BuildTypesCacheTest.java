@@ -0,0 +1,114 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.tests.server.feed.server;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.nuget.feed.server.index.impl.transform.BuildTypesCache;
+import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.ProjectManager;
+import jetbrains.buildServer.serverSide.SBuildType;
+import jetbrains.buildServer.serverSide.SProject;
+import jetbrains.buildServer.util.EventDispatcher;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests invalidation of build types cache.
+ */
+@Test
+public class BuildTypesCacheTest extends BaseTestCase {
+  private Mockery m;
+  private ProjectManager myProjects;
+  private EventDispatcher<BuildServerListener> myDispatcher;
+  private BuildTypesCache myCache;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m = new Mockery();
+    myProjects = m.mock(ProjectManager.class);
+    myDispatcher = EventDispatcher.create(BuildServerListener.class);
+    myCache = new BuildTypesCache(myProjects, myDispatcher);
+  }
+
+  public void test_project_id_is_cached() {
+    m.checking(new Expectations() {{
+      oneOf(myProjects).findProjectId("bt1");
+      will(returnValue("project1"));
+    }});
+
+    Assert.assertEquals(myCache.findProjectId("bt1"), "project1");
+    Assert.assertEquals(myCache.findProjectId("bt1"), "project1");
+    m.assertIsSatisfied();
+  }
+
+  public void test_missing_build_type_is_cached() {
+    m.checking(new Expectations() {{
+      oneOf(myProjects).findProjectId("bt1");
+      will(returnValue(null));
+    }});
+
+    Assert.assertNull(myCache.findProjectId("bt1"));
+    Assert.assertNull(myCache.findProjectId("bt1"));
+    m.assertIsSatisfied();
+  }
+
+  public void test_build_type_moved_resets_cache() {
+    final SBuildType buildType = m.mock(SBuildType.class);
+    final SProject project = m.mock(SProject.class);
+    m.checking(new Expectations() {{
+      exactly(2).of(myProjects).findProjectId("bt1");
+      will(onConsecutiveCalls(returnValue("project1"), returnValue("project2")));
+      exactly(2).of(myProjects).findBuildTypeById("bt1");
+      will(returnValue(buildType));
+      exactly(2).of(buildType).getExternalId();
+      will(onConsecutiveCalls(returnValue("Project1_Bt1"), returnValue("Project2_Bt1")));
+    }});
+
+    Assert.assertEquals(myCache.findProjectId("bt1"), "project1");
+    Assert.assertEquals(myCache.findExternalId("bt1"), "Project1_Bt1");
+
+    myDispatcher.getMulticaster().buildTypeMoved(buildType, project);
+
+    Assert.assertEquals(myCache.findProjectId("bt1"), "project2");
+    Assert.assertEquals(myCache.findExternalId("bt1"), "Project2_Bt1");
+    m.assertIsSatisfied();
+  }
+
+  public void test_value_resolved_during_reset_is_not_cached() {
+    m.checking(new Expectations() {{
+      exactly(2).of(myProjects).findProjectId("bt1");
+      will(onConsecutiveCalls(new CustomAction("resolve and reset") {
+        public Object invoke(Invocation invocation) throws Throwable {
+          myCache.reset();
+          return "project1";
+        }
+      }, returnValue("project2")));
+    }});
+
+    Assert.assertEquals(myCache.findProjectId("bt1"), "project1");
+    Assert.assertEquals(myCache.findProjectId("bt1"), "project2");
+    Assert.assertEquals(myCache.findProjectId("bt1"), "project2");
+    m.assertIsSatisfied();
+  }
+}
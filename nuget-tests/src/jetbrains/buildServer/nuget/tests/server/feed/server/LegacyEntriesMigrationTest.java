@@ -0,0 +1,174 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.tests.server.feed.server;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.nuget.feed.server.index.impl.LegacyEntriesMigration;
+import jetbrains.buildServer.serverSide.BuildsManager;
+import jetbrains.buildServer.serverSide.SFinishedBuild;
+import jetbrains.buildServer.serverSide.metadata.BuildMetadataEntry;
+import jetbrains.buildServer.serverSide.metadata.MetadataStorage;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static jetbrains.buildServer.nuget.feed.server.index.PackagesIndex.TEAMCITY_BUILD_TYPE_ID;
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+
+/**
+ * Tests migration of legacy nuget metadata entries.
+ */
+@Test
+public class LegacyEntriesMigrationTest extends BaseTestCase {
+  private Mockery m;
+  private MetadataStorage myStorage;
+  private BuildsManager myBuilds;
+  private File myStateFile;
+
+  @BeforeMethod
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m = new Mockery();
+    myStorage = m.mock(MetadataStorage.class);
+    myBuilds = m.mock(BuildsManager.class);
+    myStateFile = new File(createTempDir(), "migration.properties");
+  }
+
+  public void test_migrates_legacy_entries() {
+    final SFinishedBuild build = m.mock(SFinishedBuild.class);
+    final BuildMetadataEntry legacy = createEntry("Foo.1.0", 7, null);
+    final BuildMetadataEntry removed = createEntry("Bar.1.0", 8, null);
+    final BuildMetadataEntry current = createEntry("Baz.1.0", 9, "bt2");
+
+    final Map<String, String> expected = new HashMap<>(legacy.getMetadata());
+    expected.put(TEAMCITY_BUILD_TYPE_ID, "bt1");
+    expected.put(CREATED, "j1483228800000");
+    expected.put(LAST_UPDATED, "j1483228800000");
+    expected.put(PUBLISHED, "j1483228800000");
+
+    m.checking(new Expectations() {{
+      allowing(myStorage).getAllEntries("nuget");
+      will(returnIterator(Arrays.asList(legacy, removed, current)));
+      allowing(myBuilds).findBuildInstanceById(7);
+      will(returnValue(build));
+      allowing(myBuilds).findBuildInstanceById(8);
+      will(returnValue(null));
+      allowing(build).getBuildId();
+      will(returnValue(7L));
+      allowing(build).getBuildTypeId();
+      will(returnValue("bt1"));
+      allowing(build).getFinishDate();
+      will(returnValue(new Date(1483228800000L)));
+      allowing(build).isPersonal();
+      will(returnValue(false));
+      oneOf(myStorage).addBuildEntry(7, "nuget", "Foo.1.0", expected, true);
+    }});
+
+    final LegacyEntriesMigration migration = new LegacyEntriesMigration(myStorage, myBuilds, myStateFile);
+    migration.migrate();
+
+    m.assertIsSatisfied();
+    Assert.assertTrue(migration.isCompleted());
+    Assert.assertEquals(migration.getIndexStatistics().get("Number of migrated legacy items"), Long.valueOf(1));
+    Assert.assertEquals(migration.getIndexStatistics().get("Number of skipped legacy items"), Long.valueOf(1));
+  }
+
+  public void test_completed_migration_is_not_repeated() {
+    m.checking(new Expectations() {{
+      oneOf(myStorage).getAllEntries("nuget");
+      will(returnIterator(Collections.emptyList()));
+    }});
+
+    new LegacyEntriesMigration(myStorage, myBuilds, myStateFile).migrate();
+    final LegacyEntriesMigration migration = new LegacyEntriesMigration(myStorage, myBuilds, myStateFile);
+    migration.migrate();
+
+    m.assertIsSatisfied();
+    Assert.assertTrue(migration.isCompleted());
+  }
+
+  public void test_failed_migration_is_not_completed() {
+    final SFinishedBuild build = m.mock(SFinishedBuild.class);
+    final BuildMetadataEntry legacy = createEntry("Foo.1.0", 7, null);
+    m.checking(new Expectations() {{
+      allowing(myStorage).getAllEntries("nuget");
+      will(returnIterator(Collections.singletonList(legacy)));
+      allowing(myBuilds).findBuildInstanceById(7);
+      will(returnValue(build));
+      allowing(build).getBuildId();
+      will(returnValue(7L));
+      allowing(build).getBuildTypeId();
+      will(returnValue("bt1"));
+      allowing(build).getFinishDate();
+      will(returnValue(new Date()));
+      allowing(build).isPersonal();
+      will(returnValue(false));
+      allowing(myStorage).addBuildEntry(with(equal(7L)), with(equal("nuget")), with(equal("Foo.1.0")), with(any(Map.class)), with(equal(true)));
+      will(throwException(new RuntimeException("Database error")));
+    }});
+
+    final LegacyEntriesMigration migration = new LegacyEntriesMigration(myStorage, myBuilds, myStateFile);
+    migration.migrate();
+
+    Assert.assertFalse(migration.isCompleted());
+    Assert.assertFalse(myStateFile.exists());
+    Assert.assertFalse(new LegacyEntriesMigration(myStorage, myBuilds, myStateFile).isCompleted());
+  }
+
+  public void test_build_lookup_failure_is_not_skipped() {
+    final BuildMetadataEntry legacy = createEntry("Foo.1.0", 7, null);
+    m.checking(new Expectations() {{
+      allowing(myStorage).getAllEntries("nuget");
+      will(returnIterator(Collections.singletonList(legacy)));
+      allowing(myBuilds).findBuildInstanceById(7);
+      will(throwException(new RuntimeException("Access denied")));
+    }});
+
+    final LegacyEntriesMigration migration = new LegacyEntriesMigration(myStorage, myBuilds, myStateFile);
+    migration.migrate();
+
+    Assert.assertFalse(migration.isCompleted());
+    Assert.assertFalse(myStateFile.exists());
+    Assert.assertEquals(migration.getIndexStatistics().get("Number of skipped legacy items"), Long.valueOf(0));
+  }
+
+  private BuildMetadataEntry createEntry(final String key, final long buildId, final String buildTypeId) {
+    final BuildMetadataEntry entry = m.mock(BuildMetadataEntry.class, key);
+    final Map<String, String> metadata = new HashMap<>();
+    metadata.put(ID, key.substring(0, key.indexOf('.')));
+    metadata.put(VERSION, key.substring(key.indexOf('.') + 1));
+    if (buildTypeId != null) {
+      metadata.put(TEAMCITY_BUILD_TYPE_ID, buildTypeId);
+    }
+
+    m.checking(new Expectations() {{
+      allowing(entry).getKey();
+      will(returnValue(key));
+      allowing(entry).getBuildId();
+      will(returnValue(buildId));
+      allowing(entry).getMetadata();
+      will(returnValue(metadata));
+    }});
+    return entry;
+  }
+}
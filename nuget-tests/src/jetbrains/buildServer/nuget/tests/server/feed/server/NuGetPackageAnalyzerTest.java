@@ -0,0 +1,84 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.tests.server.feed.server;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.nuget.feed.server.index.PackageAnalyzer;
+import jetbrains.buildServer.nuget.feed.server.index.impl.NuGetPackageAnalyzer;
+import jetbrains.buildServer.nuget.tests.integration.Paths;
+import jetbrains.buildServer.util.FileUtil;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Map;
+
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+
+/**
+ * Tests single pass NuGet package analysis.
+ */
+@Test
+public class NuGetPackageAnalyzerTest extends BaseTestCase {
+
+  public void test_analyze_computes_hash() throws Exception {
+    final File packageFile = Paths.getTestDataPath("packages/WebActivator.1.4.4.nupkg");
+    final PackageAnalyzer analyzer = new NuGetPackageAnalyzer();
+
+    final Map<String, String> metadata = analyzer.analyzePackage(new FileInputStream(packageFile));
+
+    Assert.assertEquals(metadata.get(ID), "WebActivator");
+    Assert.assertEquals(metadata.get(PACKAGE_HASH_ALGORITHM), PackageAnalyzer.SHA512);
+    Assert.assertEquals(metadata.get(PACKAGE_HASH), analyzer.getSha512Hash(new FileInputStream(packageFile)));
+  }
+
+  public void test_analyze_file_matches_stream() throws Exception {
+    final File packageFile = Paths.getTestDataPath("packages/PackageWithPlatformDependencies.3.0.0.nupkg");
+    final PackageAnalyzer analyzer = new NuGetPackageAnalyzer();
+
+    final Map<String, String> streamMetadata = analyzer.analyzePackage(new FileInputStream(packageFile));
+    final Map<String, String> fileMetadata = analyzer.analyzePackage(packageFile);
+    streamMetadata.remove(LAST_UPDATED);
+    fileMetadata.remove(LAST_UPDATED);
+
+    Assert.assertEquals(fileMetadata, streamMetadata);
+  }
+
+  public void test_analyze_file_reuses_results_for_same_content() throws Exception {
+    final File packageFile = Paths.getTestDataPath("packages/WebActivator.1.4.4.nupkg");
+    final File copy = new File(createTempDir(), "copy.nupkg");
+    FileUtil.copy(packageFile, copy);
+    final PackageAnalyzer analyzer = new NuGetPackageAnalyzer();
+
+    final Map<String, String> first = analyzer.analyzePackage(packageFile);
+    final Map<String, String> second = analyzer.analyzePackage(copy);
+    second.put(ID, "Changed");
+
+    Assert.assertEquals(first.get(PACKAGE_HASH), second.get(PACKAGE_HASH));
+    Assert.assertEquals(analyzer.analyzePackage(packageFile).get(ID), "WebActivator");
+  }
+
+  public void test_analyze_invalid_package() throws Exception {
+    final PackageAnalyzer analyzer = new NuGetPackageAnalyzer();
+
+    final Map<String, String> metadata = analyzer.analyzePackage(new ByteArrayInputStream("Hello".getBytes()));
+
+    Assert.assertNull(metadata.get(ID));
+  }
+}
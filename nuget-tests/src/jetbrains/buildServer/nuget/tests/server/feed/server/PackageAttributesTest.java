@@ -0,0 +1,114 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.tests.server.feed.server;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.nuget.feed.server.NuGetUtils;
+import jetbrains.buildServer.nuget.feed.server.index.impl.PackageAttributes;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static jetbrains.buildServer.nuget.feed.server.index.PackagesIndex.TEAMCITY_BUILD_ID;
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+
+/**
+ * Tests compact package attributes.
+ */
+@Test
+public class PackageAttributesTest extends BaseTestCase {
+
+  public void test_equals_source_map() {
+    final Map<String, String> source = createAttributes();
+
+    final PackageAttributes attributes = PackageAttributes.create(source);
+
+    Assert.assertEquals(attributes, source);
+    Assert.assertEquals(source, attributes);
+    Assert.assertEquals(attributes.size(), source.size());
+    Assert.assertEquals(new HashMap<>(attributes), source);
+    Assert.assertTrue(attributes.entrySet().containsAll(source.entrySet()));
+    Assert.assertNull(attributes.get(TITLE));
+    Assert.assertFalse(attributes.containsKey(TITLE));
+  }
+
+  public void test_keeps_values_not_matching_primitive_format() {
+    final Map<String, String> source = createAttributes();
+    source.put(PACKAGE_SIZE, "0123");
+    source.put(CREATED, "2017-01-01");
+    source.put(IS_PRERELEASE, "True");
+
+    final PackageAttributes attributes = PackageAttributes.create(source);
+
+    Assert.assertEquals(attributes, source);
+  }
+
+  public void test_joins_chunked_values() {
+    final Map<String, String> source = createAttributes();
+    source.put(DESCRIPTION, "a");
+    source.put(DESCRIPTION + 1, "b");
+    source.put(DESCRIPTION + 2, "c");
+    source.put("Custom", "x");
+    source.put("Custom1", "y");
+
+    final PackageAttributes attributes = PackageAttributes.create(source);
+
+    Assert.assertEquals(attributes.get(DESCRIPTION), "abc");
+    Assert.assertEquals(attributes.get(DESCRIPTION), "abc");
+    Assert.assertEquals(NuGetUtils.getValue(attributes, DESCRIPTION), "abc");
+    Assert.assertNull(attributes.get(DESCRIPTION + 1));
+    Assert.assertEquals(attributes.get("Custom"), "xy");
+    Assert.assertEquals(attributes.size(), source.size() - 3);
+  }
+
+  public void test_latest_flags() {
+    final PackageAttributes attributes = PackageAttributes.create(createAttributes());
+
+    final PackageAttributes latest = attributes.withLatestFlags(true, false);
+
+    Assert.assertEquals(latest.get(IS_LATEST_VERSION), "true");
+    Assert.assertEquals(latest.get(IS_ABSOLUTE_LATEST_VERSION), "false");
+    Assert.assertEquals(attributes.get(IS_LATEST_VERSION), "false");
+    Assert.assertEquals(latest.get(ID), attributes.get(ID));
+    Assert.assertSame(latest.withLatestFlags(true, false), latest);
+  }
+
+  public void test_interns_repeated_values() {
+    final Map<String, String> first = createAttributes();
+    final Map<String, String> second = createAttributes();
+    second.put(AUTHORS, new String(first.get(AUTHORS)));
+
+    Assert.assertSame(PackageAttributes.create(first).get(AUTHORS), PackageAttributes.create(second).get(AUTHORS));
+  }
+
+  private static Map<String, String> createAttributes() {
+    final Map<String, String> attributes = new HashMap<>();
+    attributes.put(ID, "Package");
+    attributes.put(VERSION, "1.0.0-beta");
+    attributes.put(AUTHORS, "JetBrains");
+    attributes.put(IS_PRERELEASE, "true");
+    attributes.put(IS_LATEST_VERSION, "false");
+    attributes.put(IS_ABSOLUTE_LATEST_VERSION, "false");
+    attributes.put(PACKAGE_SIZE, "1234");
+    attributes.put(LAST_UPDATED, "j1483228800000");
+    attributes.put(TEAMCITY_BUILD_ID, "42");
+    attributes.put("Custom.Attribute", "value");
+    return attributes;
+  }
+}
@@ -22,13 +22,17 @@ import jetbrains.buildServer.nuget.feed.server.NuGetServerSettings;
 import jetbrains.buildServer.nuget.feed.server.NuGetUtils;
 import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
 import jetbrains.buildServer.nuget.feed.server.index.PackagesIndex;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndexStatistics;
+import jetbrains.buildServer.nuget.feed.server.index.PackagesIndexUpdater;
 import jetbrains.buildServer.nuget.feed.server.index.impl.PackagesIndexImpl;
 import jetbrains.buildServer.nuget.feed.server.index.impl.transform.AccessCheckTransformation;
+import jetbrains.buildServer.nuget.feed.server.index.impl.transform.BuildTypesCache;
 import jetbrains.buildServer.nuget.feed.server.index.impl.transform.DownloadUrlComputationTransformation;
 import jetbrains.buildServer.nuget.feed.server.index.impl.transform.SamePackagesFilterTransformation;
 import jetbrains.buildServer.nuget.feed.server.odata4j.entity.PackageEntityAdapter;
 import jetbrains.buildServer.nuget.server.version.SemanticVersion;
 import jetbrains.buildServer.nuget.tests.integration.feed.server.MockExternalIdTransformation;
+import jetbrains.buildServer.serverSide.BuildServerListener;
 import jetbrains.buildServer.serverSide.ProjectManager;
 import jetbrains.buildServer.serverSide.auth.AuthorityHolder;
 import jetbrains.buildServer.serverSide.auth.Permission;
@@ -36,6 +40,7 @@ import jetbrains.buildServer.serverSide.auth.SecurityContext;
 import jetbrains.buildServer.serverSide.metadata.BuildMetadataEntry;
 import jetbrains.buildServer.serverSide.metadata.MetadataStorage;
 import jetbrains.buildServer.util.CollectionsUtil;
+import jetbrains.buildServer.util.EventDispatcher;
 import jetbrains.buildServer.util.StringUtil;
 import jetbrains.buildServer.util.TestFor;
 import org.jetbrains.annotations.NotNull;
@@ -50,6 +55,7 @@ import java.security.SecureRandom;
 import java.util.*;
 
 import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+import static jetbrains.buildServer.nuget.feed.server.index.PackagesIndex.TEAMCITY_FRAMEWORK_CONSTRAINTS;
 
 /**
  * @author Eugene Petrenko (eugene.petrenko@gmail.com)
@@ -61,6 +67,7 @@ public class PackageIndexTest extends BaseTestCase {
   private SecurityContext myContext;
   private AuthorityHolder myAuthorityHolder;
   private PackagesIndex myIndex;
+  private PackagesIndexUpdater myIndexUpdater;
   private MetadataStorage myStorage;
   private List<BuildMetadataEntry> myEntries;
 
@@ -77,26 +84,23 @@ public class PackageIndexTest extends BaseTestCase {
     m.checking(new Expectations(){{
       allowing(serverSettings).getNuGetFeedControllerPath(); will(returnValue("foo"));
     }});
-    myIndex = new PackagesIndexImpl(
+    final PackagesIndexImpl index = new PackagesIndexImpl(
             myStorage,
             Arrays.asList(
                     new SamePackagesFilterTransformation(),
-                    new AccessCheckTransformation(myProjectManager, myContext),
+                    new AccessCheckTransformation(new BuildTypesCache(myProjectManager, EventDispatcher.create(BuildServerListener.class)), myContext),
                     new MockExternalIdTransformation(),
                     new DownloadUrlComputationTransformation(serverSettings)
-            ));
+            ),
+            EventDispatcher.create(BuildServerListener.class));
+    myIndex = index;
+    myIndexUpdater = index;
 
     myEntries = new ArrayList<>();
 
     m.checking(new Expectations(){{
       allowing(myContext).getAuthorityHolder(); will(returnValue(myAuthorityHolder));
       allowing(myStorage).getAllEntries("nuget"); will(returnIterator(myEntries));
-      allowing(myStorage).findEntriesWithValue(
-        with(equal("nuget")),
-        with(any(String.class)),
-        with(PackagesIndexImpl.PACKAGE_ATTRIBUTES_TO_SEARCH),
-        with(equal(true)));
-      will(returnIterator(myEntries));
     }});
   }
 
@@ -142,6 +146,20 @@ public class PackageIndexTest extends BaseTestCase {
     Assert.assertEquals(entries.get(0).getAttributes().get("teamcity.buildTypeId"), "btY");
   }
 
+  @Test
+  public void test_same_packages_newer_build_wins_on_load() {
+    allowView();
+
+    addEntry("Foo", "1.2.34", "btY", 9);
+    addEntry("Foo", "1.2.34", "btX", 7);
+    // storage does not guarantee that newer builds come first
+    Collections.reverse(myEntries);
+
+    List<NuGetIndexEntry> entries = myIndex.getAll();
+    Assert.assertEquals(entries.size(), 1);
+    Assert.assertEquals(entries.get(0).getAttributes().get("teamcity.buildTypeId"), "btY");
+  }
+
   @Test
   @TestFor(issues = "TW-19686")
   public void test_two_package_isLatest_prerelease() {
@@ -166,6 +184,23 @@ public class PackageIndexTest extends BaseTestCase {
     Assert.assertEquals(myIndex.getAll().size(), 0);
   }
 
+  @Test
+  public void testChecksAccessOncePerBuildType() {
+    m.checking(new Expectations() {{
+      oneOf(myProjectManager).findProjectId("btX");
+      will(returnValue("proj1"));
+      exactly(2).of(myAuthorityHolder).isPermissionGrantedForProject("proj1", Permission.VIEW_PROJECT);
+      will(returnValue(true));
+    }});
+    addEntry("Foo", "1.2.34", "btX", 7);
+    addEntry("Foo", "1.2.35", "btX", 8);
+    addEntry("Bar", "1.0.0", "btX", 9);
+
+    Assert.assertEquals(myIndex.getAll().size(), 3);
+    Assert.assertEquals(myIndex.getAll().size(), 3);
+    m.assertIsSatisfied();
+  }
+
   @Test
   public void testCheckesProjectAccess_exception() {
     m.checking(new Expectations() {{
@@ -345,16 +380,233 @@ public class PackageIndexTest extends BaseTestCase {
     addEntry("title-matches", "9", "btX", 9, CollectionsUtil.asMap(TITLE, "foo"));
     addEntry("title-not-matches", "10", "btX", 10, CollectionsUtil.asMap(TITLE, "boo"));
 
-    assertEquals(10, myIndex.search(PackagesIndexImpl.PACKAGE_ATTRIBUTES_TO_SEARCH, "foo").size());
+    assertEquals(5, myIndex.search("foo", Collections.emptySet(), true).size());
 
     m.assertIsSatisfied();
   }
 
-  private void addEntry(final String packageId, final String packageVersion, final String buildTypeId, final long buildId){
-    addEntry(packageId, packageVersion, buildTypeId, buildId, Maps.newHashMap());
+  @Test
+  public void test_search_prefix_and_relevance() {
+    allowView();
+
+    addEntry("Other", "1.0", "btX", 1, CollectionsUtil.asMap(DESCRIPTION, "Extensions for NuGet.Core"));
+    addEntry("NuGet.Core", "1.0", "btX", 2);
+    addEntry("NuGet.CommandLine", "1.0", "btX", 3, CollectionsUtil.asMap(TAGS, "nuget core"));
+
+    final List<NuGetIndexEntry> entries = myIndex.search("nuget.core", Collections.emptySet(), true);
+    Assert.assertEquals(entries.size(), 3);
+    Assert.assertEquals(entries.get(0).getKey(), "nuget.core.1.0");
+    Assert.assertEquals(entries.get(1).getKey(), "nuget.commandline.1.0");
+    Assert.assertEquals(entries.get(2).getKey(), "other.1.0");
+
+    Assert.assertEquals(myIndex.search("NuGet.Com", Collections.emptySet(), true).size(), 1);
+    Assert.assertTrue(myIndex.search("uget", Collections.emptySet(), true).isEmpty());
+  }
+
+  @Test
+  public void test_search_framework_and_prerelease() {
+    allowView();
+
+    addEntry("Foo", "1.0", "btX", 1);
+    addEntry("Foo", "2.0", "btX", 2, CollectionsUtil.asMap(TEAMCITY_FRAMEWORK_CONSTRAINTS, "net45"));
+    addEntry("Foo", "3.0", "btX", 3, CollectionsUtil.asMap(TEAMCITY_FRAMEWORK_CONSTRAINTS, "MonoTouch"));
+    addEntry("Foo", "4.0-beta", "btX", 4, CollectionsUtil.asMap(TEAMCITY_FRAMEWORK_CONSTRAINTS, "MonoTouch|net45"));
+
+    assertPackagesCollection(myIndex.search("", Collections.singleton("net45"), true), FlagMode.Exists,
+      "foo.1.0", "foo.2.0", "foo.4.0-beta");
+    assertPackagesCollection(myIndex.search("foo", Collections.singleton("net45"), false), FlagMode.Exists,
+      "foo.1.0", "foo.2.0");
+    assertPackagesCollection(myIndex.search("", Collections.emptySet(), true), FlagMode.Exists,
+      "foo.1.0", "foo.2.0", "foo.3.0", "foo.4.0-beta");
+  }
+
+  @Test
+  public void test_search_removed_builds() {
+    allowView();
+
+    addEntry("Foo", "1.0", "btX", 1);
+    Assert.assertEquals(myIndex.search("foo", Collections.emptySet(), true).size(), 1);
+
+    m.checking(new Expectations() {{
+      allowing(myStorage).getEntriesByKey(with(equal("nuget")), with(any(String.class)));
+      will(returnIterator());
+    }});
+    myIndexUpdater.removeBuilds(Collections.singleton(1L));
+
+    Assert.assertTrue(myIndex.search("foo", Collections.emptySet(), true).isEmpty());
+  }
+
+  @Test
+  public void test_package_added_to_loaded_index() {
+    allowView();
+
+    addEntry("Foo", "1.2.34", "btX", 7);
+    assertPackages("Foo.1.2.34:L:A");
+
+    final BuildMetadataEntry entry = addEntry("Foo", "1.2.44", "btX", 9);
+    assertPackages("Foo.1.2.34:L:A");
+
+    myIndexUpdater.addPackage(entry.getBuildId(), entry.getKey(), entry.getMetadata());
+    assertPackages("Foo.1.2.44:L:A", "Foo.1.2.34");
+  }
+
+  @Test
+  public void test_removed_builds_restore_package_from_older_build() {
+    allowView();
+
+    final BuildMetadataEntry older = addEntry("Foo", "1.2.34", "btX", 7);
+    addEntry("Foo", "1.2.34", "btY", 9);
+    addEntry("Foo", "1.2.30", "btY", 9);
+    assertPackages("Foo.1.2.34:L:A", "Foo.1.2.30");
+
+    m.checking(new Expectations(){{
+      allowing(myStorage).getEntriesByKey("nuget", older.getKey()); will(returnIterator(older));
+      allowing(myStorage).getEntriesByKey("nuget", NuGetUtils.getPackageKey("Foo", "1.2.30")); will(returnIterator());
+    }});
+    myIndexUpdater.removeBuilds(Collections.singleton(9L));
+
+    final List<NuGetIndexEntry> entries = myIndex.getAll();
+    Assert.assertEquals(entries.size(), 1);
+    Assert.assertEquals(entries.get(0).getAttributes().get("teamcity.buildTypeId"), "btX");
+  }
+
+  @Test
+  public void test_statistics_follow_index_updates() {
+    allowView();
+
+    addEntry("Foo", "1.2.34", "btX", 7, CollectionsUtil.asMap(PACKAGE_SIZE, "100"));
+    addEntry("Foo", "1.2.44-beta", "btX", 9, CollectionsUtil.asMap(PACKAGE_SIZE, "200"));
+    addEntry("Bar", "1.0.0", "btX", 9, CollectionsUtil.asMap(PACKAGE_SIZE, "50"));
+
+    PackagesIndexStatistics statistics = myIndex.getStatistics();
+    Assert.assertEquals(statistics.getPackagesCount(), 3);
+    Assert.assertEquals(statistics.getPackageIdsCount(), 2);
+    Assert.assertEquals(statistics.getBuildsCount(), 2);
+    Assert.assertEquals(statistics.getPackagesSize(), 350);
+    Assert.assertEquals(statistics.getPrereleasePackagesCount(), 1);
+
+    m.checking(new Expectations() {{
+      allowing(myStorage).getEntriesByKey(with(equal("nuget")), with(any(String.class)));
+      will(returnIterator());
+    }});
+    myIndexUpdater.removeBuilds(Collections.singleton(9L));
+
+    statistics = myIndex.getStatistics();
+    Assert.assertEquals(statistics.getPackagesCount(), 1);
+    Assert.assertEquals(statistics.getPackageIdsCount(), 1);
+    Assert.assertEquals(statistics.getBuildsCount(), 1);
+    Assert.assertEquals(statistics.getPackagesSize(), 100);
+    Assert.assertEquals(statistics.getPrereleasePackagesCount(), 0);
+  }
+
+  @Test
+  public void test_generation_follows_index_updates() {
+    allowView();
+
+    addEntry("Foo", "1.2.34", "btX", 7);
+    final long loaded = myIndex.getGeneration();
+    Assert.assertEquals(myIndex.getGeneration(), loaded);
+
+    final BuildMetadataEntry entry = addEntry("Foo", "1.2.44", "btX", 9);
+    myIndexUpdater.addPackage(entry.getBuildId(), entry.getKey(), entry.getMetadata());
+    final long added = myIndex.getGeneration();
+    Assert.assertTrue(added > loaded);
+
+    m.checking(new Expectations() {{
+      allowing(myStorage).getEntriesByKey(with(equal("nuget")), with(any(String.class)));
+      will(returnIterator());
+    }});
+    myIndexUpdater.removeBuilds(Collections.singleton(9L));
+    final long removed = myIndex.getGeneration();
+    Assert.assertTrue(removed > added);
+
+    myIndexUpdater.resetIndex();
+    Assert.assertTrue(myIndex.getGeneration() > removed);
+  }
+
+  @Test
+  public void test_reset_reloads_index() {
+    allowView();
+
+    addEntry("Foo", "1.2.34", "btX", 7);
+    assertPackages("Foo.1.2.34:L:A");
+
+    addEntry("Foo", "1.2.44-beta", "btX", 9);
+    myIndexUpdater.resetIndex();
+    assertPackages("Foo.1.2.44-beta:A", "Foo.1.2.34:L");
+  }
+
+  @Test
+  public void test_versions_by_id() {
+    allowView();
+
+    addEntry("Foo", "1.0.0", "btX", 7);
+    addEntry("Foo", "2.0.0-beta", "btX", 8);
+    addEntry("Bar", "3.0.0", "btX", 9);
+
+    final List<NuGetIndexEntry> versions = myIndex.getVersions("foo");
+    Assert.assertEquals(versions.size(), 2);
+    Assert.assertEquals(versions.get(0).getKey(), "foo.1.0.0");
+    Assert.assertEquals(versions.get(1).getKey(), "foo.2.0.0-beta");
+    Assert.assertEquals(versions.get(0).getAttributes().get(IS_LATEST_VERSION), "true");
+    Assert.assertEquals(versions.get(1).getAttributes().get(IS_ABSOLUTE_LATEST_VERSION), "true");
+    Assert.assertTrue(myIndex.getVersions("baz").isEmpty());
+  }
+
+  @Test
+  public void test_versions_by_ids() {
+    allowView();
+
+    addEntry("Foo", "1.0.0", "btX", 7);
+    addEntry("Foo", "2.0.0", "btX", 8);
+    addEntry("Bar", "3.0.0", "btX", 9);
+
+    final Map<String, List<NuGetIndexEntry>> versions = myIndex.getVersions(Arrays.asList("FOO", "bar", "baz", "foo"));
+    Assert.assertEquals(versions.size(), 3);
+    Assert.assertEquals(versions.get("foo").size(), 2);
+    Assert.assertEquals(versions.get("foo").get(1).getKey(), "foo.2.0.0");
+    Assert.assertEquals(versions.get("bar").size(), 1);
+    Assert.assertTrue(versions.get("baz").isEmpty());
+  }
+
+  @Test
+  public void test_latest_versions() {
+    allowView();
+
+    addEntry("Foo", "1.0.0", "btX", 7);
+    addEntry("Foo", "2.0.0-beta", "btX", 8);
+    addEntry("Bar", "3.0.0-beta", "btX", 9);
+
+    assertPackagesCollection(myIndex.getLatestVersions(false), FlagMode.IsLatest, "foo.1.0.0");
+    Assert.assertEquals(myIndex.getLatestVersions(false).size(), 1);
+    assertPackagesCollection(myIndex.getLatestVersions(true), FlagMode.IsAbsoluteLatest, "foo.2.0.0-beta", "bar.3.0.0-beta");
+    Assert.assertEquals(myIndex.getLatestVersions(true).size(), 2);
+  }
+
+  @Test
+  public void test_latest_flags_of_accessible_packages() {
+    m.checking(new Expectations() {{
+      allowing(myProjectManager).findProjectId("btX");
+      will(returnValue("proj1"));
+      allowing(myProjectManager).findProjectId("btY");
+      will(returnValue("proj2"));
+      allowing(myAuthorityHolder).isPermissionGrantedForProject("proj1", Permission.VIEW_PROJECT);
+      will(returnValue(true));
+      allowing(myAuthorityHolder).isPermissionGrantedForProject("proj2", Permission.VIEW_PROJECT);
+      will(returnValue(false));
+    }});
+
+    addEntry("Foo", "1.2.34", "btX", 7);
+    addEntry("Foo", "1.2.44", "btY", 9);
+
+    assertPackages("Foo.1.2.34:L:A");
+  }
+
+  private BuildMetadataEntry addEntry(final String packageId, final String packageVersion, final String buildTypeId, final long buildId){
+    return addEntry(packageId, packageVersion, buildTypeId, buildId, Maps.newHashMap());
   }
 
-  private void addEntry(final String packageId, final String packageVersion, final String buildTypeId, final long buildId, @NotNull final Map<String, String> entryData) {
+  private BuildMetadataEntry addEntry(final String packageId, final String packageVersion, final String buildTypeId, final long buildId, @NotNull final Map<String, String> entryData) {
     final BuildMetadataEntry entry = m.mock(BuildMetadataEntry.class, packageId + "." + packageVersion + "-" + System.nanoTime());
 
     m.checking(new Expectations() {{
@@ -380,6 +632,7 @@ public class PackageIndexTest extends BaseTestCase {
       final long b2 = o2.getBuildId();
       return (b1 > b2 ? -1 : b1 == b2 ? 0 : 1);
     });
+    return entry;
   }
 
   private void dumpFeed() {
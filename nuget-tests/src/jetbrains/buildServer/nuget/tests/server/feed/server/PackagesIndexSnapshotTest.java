@@ -0,0 +1,146 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.tests.server.feed.server;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.nuget.feed.server.index.NuGetIndexEntry;
+import jetbrains.buildServer.nuget.feed.server.index.impl.IndexedPackage;
+import jetbrains.buildServer.nuget.feed.server.index.impl.NuGetPackageBuilder;
+import jetbrains.buildServer.nuget.feed.server.index.impl.PackageAttributes;
+import jetbrains.buildServer.nuget.feed.server.index.impl.PackagesIndexSnapshot;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static jetbrains.buildServer.nuget.feed.server.index.PackagesIndex.TEAMCITY_BUILD_ID;
+import static jetbrains.buildServer.nuget.feed.server.index.PackagesIndex.TEAMCITY_BUILD_TYPE_ID;
+import static jetbrains.buildServer.nuget.feedReader.NuGetPackageAttributes.*;
+
+/**
+ * Tests packages index snapshot persistence.
+ */
+@Test
+public class PackagesIndexSnapshotTest extends BaseTestCase {
+
+  public void test_save_and_load() throws Exception {
+    final PackagesIndexSnapshot snapshot = new PackagesIndexSnapshot(new File(createTempDir(), "index.bin"));
+    final IndexedPackage foo = createPackage("Foo", "1.0.0", 5);
+    final IndexedPackage bar = createPackage("Bar", "2.0.0-beta", 7);
+
+    snapshot.save(7, Arrays.asList(foo, bar));
+    final PackagesIndexSnapshot.Data data = snapshot.load();
+
+    Assert.assertNotNull(data);
+    Assert.assertEquals(data.getHighWaterMark(), 7);
+    final List<NuGetPackageBuilder> packages = data.getPackages();
+    Assert.assertEquals(packages.size(), 2);
+    assertPackage(packages.get(0), foo);
+    assertPackage(packages.get(1), bar);
+  }
+
+  public void test_load_missing_snapshot() throws Exception {
+    final PackagesIndexSnapshot snapshot = new PackagesIndexSnapshot(new File(createTempDir(), "index.bin"));
+
+    Assert.assertNull(snapshot.load());
+  }
+
+  public void test_load_corrupted_snapshot() throws Exception {
+    final File file = new File(createTempDir(), "index.bin");
+    final PackagesIndexSnapshot snapshot = new PackagesIndexSnapshot(file);
+    snapshot.save(5, Arrays.asList(createPackage("Foo", "1.0.0", 5)));
+    final byte[] content = Files.readAllBytes(file.toPath());
+    Files.write(file.toPath(), Arrays.copyOf(content, content.length / 2));
+
+    Assert.assertNull(snapshot.load());
+  }
+
+  public void test_load_snapshot_with_invalid_counts() throws Exception {
+    final File file = new File(createTempDir(), "index.bin");
+    final PackagesIndexSnapshot snapshot = new PackagesIndexSnapshot(file);
+    final IndexedPackage foo = createPackage("Foo", "1.0.0", 5);
+    snapshot.save(5, Arrays.asList(foo));
+    final byte[] content = Files.readAllBytes(file.toPath());
+
+    // packages count follows magic, format version and high water mark
+    final ByteBuffer packagesCount = ByteBuffer.wrap(content.clone());
+    packagesCount.putInt(16, Integer.MAX_VALUE);
+    Files.write(file.toPath(), packagesCount.array());
+    Assert.assertNull(snapshot.load());
+
+    // attributes count follows package key and build id
+    final ByteBuffer attributesCount = ByteBuffer.wrap(content.clone());
+    attributesCount.putInt(20 + 4 + foo.getKey().getBytes(StandardCharsets.UTF_8).length + 8, Integer.MAX_VALUE);
+    Files.write(file.toPath(), attributesCount.array());
+    Assert.assertNull(snapshot.load());
+  }
+
+  public void test_replace_loaded_snapshot() throws Exception {
+    final File file = new File(createTempDir(), "index.bin");
+    final PackagesIndexSnapshot snapshot = new PackagesIndexSnapshot(file);
+    snapshot.save(5, Arrays.asList(createPackage("Foo", "1.0.0", 5)));
+    Assert.assertNotNull(snapshot.load());
+
+    final IndexedPackage bar = createPackage("Bar", "2.0.0", 7);
+    snapshot.save(7, Arrays.asList(bar));
+    final PackagesIndexSnapshot.Data data = snapshot.load();
+
+    Assert.assertNotNull(data);
+    Assert.assertEquals(data.getHighWaterMark(), 7);
+    Assert.assertEquals(data.getPackages().size(), 1);
+    assertPackage(data.getPackages().get(0), bar);
+
+    snapshot.delete();
+    Assert.assertFalse(file.exists());
+  }
+
+  public void test_delete_snapshot() throws Exception {
+    final File file = new File(createTempDir(), "index.bin");
+    final PackagesIndexSnapshot snapshot = new PackagesIndexSnapshot(file);
+    snapshot.save(5, Arrays.asList(createPackage("Foo", "1.0.0", 5)));
+
+    snapshot.delete();
+
+    Assert.assertFalse(file.exists());
+    Assert.assertNull(snapshot.load());
+  }
+
+  private static void assertPackage(final NuGetPackageBuilder builder, final IndexedPackage data) {
+    Assert.assertEquals(builder.getKey(), data.getKey());
+    Assert.assertEquals(builder.getBuildId(), data.getBuildId());
+    Assert.assertEquals(builder.getMetadata(), data.getAttributes());
+  }
+
+  private static IndexedPackage createPackage(final String id, final String version, final long buildId) {
+    final Map<String, String> attributes = new HashMap<>();
+    attributes.put(ID, id);
+    attributes.put(VERSION, version);
+    attributes.put(DESCRIPTION, "Description of " + id + " \u043f\u0430\u043a\u0435\u0442");
+    attributes.put(IS_PRERELEASE, String.valueOf(version.contains("-")));
+    attributes.put(TEAMCITY_BUILD_TYPE_ID, "bt" + buildId);
+    attributes.put(TEAMCITY_BUILD_ID, String.valueOf(buildId));
+    final String key = id + "." + version;
+    return new IndexedPackage(buildId, new NuGetIndexEntry(key, PackageAttributes.create(attributes)));
+  }
+}
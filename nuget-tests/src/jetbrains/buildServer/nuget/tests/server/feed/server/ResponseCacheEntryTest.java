@@ -0,0 +1,179 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.tests.server.feed.server;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.nuget.feed.server.cache.ResponseCacheEntry;
+import jetbrains.buildServer.nuget.feed.server.cache.ResponseCacheStore;
+import jetbrains.buildServer.nuget.feed.server.cache.ResponseEncoding;
+import jetbrains.buildServer.nuget.feed.server.cache.ResponseOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Tests content encoding negotiation of cached responses.
+ */
+@Test
+public class ResponseCacheEntryTest extends BaseTestCase {
+
+  private static final String CONTENT = "<feed>cached response</feed>";
+
+  public void test_negotiate() {
+    Assert.assertEquals(ResponseEncoding.negotiate(null, true), ResponseEncoding.IDENTITY);
+    Assert.assertEquals(ResponseEncoding.negotiate("", true), ResponseEncoding.IDENTITY);
+    Assert.assertEquals(ResponseEncoding.negotiate("gzip, deflate", true), ResponseEncoding.GZIP);
+    Assert.assertEquals(ResponseEncoding.negotiate("deflate, gzip", true), ResponseEncoding.GZIP);
+    Assert.assertEquals(ResponseEncoding.negotiate("GZIP", true), ResponseEncoding.GZIP);
+    Assert.assertEquals(ResponseEncoding.negotiate("x-gzip", false), ResponseEncoding.GZIP);
+    Assert.assertEquals(ResponseEncoding.negotiate("deflate", true), ResponseEncoding.DEFLATE);
+    Assert.assertEquals(ResponseEncoding.negotiate("deflate", false), ResponseEncoding.IDENTITY);
+    Assert.assertEquals(ResponseEncoding.negotiate("gzip;q=0.5, deflate", true), ResponseEncoding.DEFLATE);
+    Assert.assertEquals(ResponseEncoding.negotiate("gzip;q=0, identity", true), ResponseEncoding.IDENTITY);
+    Assert.assertEquals(ResponseEncoding.negotiate("identity", true), ResponseEncoding.IDENTITY);
+    Assert.assertEquals(ResponseEncoding.negotiate("br", true), ResponseEncoding.IDENTITY);
+    Assert.assertEquals(ResponseEncoding.negotiate("*", false), ResponseEncoding.GZIP);
+    Assert.assertEquals(ResponseEncoding.negotiate("identity;q=0.1, *;q=0.5", false), ResponseEncoding.GZIP);
+  }
+
+  public void test_gzip_response() throws Exception {
+    final ResponseCacheEntry entry = createEntry();
+    final Map<String, String> headers = new HashMap<>();
+
+    final byte[] body = handleRequest(entry, "gzip, deflate", headers);
+
+    Assert.assertEquals(headers.get("Content-Encoding"), "gzip");
+    Assert.assertEquals(headers.get("Vary"), "Accept-Encoding");
+    Assert.assertEquals(headers.get("Content-Type"), "application/atom+xml");
+    Assert.assertEquals(readStream(new GZIPInputStream(new ByteArrayInputStream(body))), CONTENT);
+    Assert.assertEquals(entry.getSize(ResponseEncoding.IDENTITY), 0);
+  }
+
+  public void test_identity_response() throws Exception {
+    final ResponseCacheEntry entry = createEntry();
+    final Map<String, String> headers = new HashMap<>();
+
+    final byte[] body = handleRequest(entry, null, headers);
+
+    Assert.assertNull(headers.get("Content-Encoding"));
+    Assert.assertEquals(headers.get("Vary"), "Accept-Encoding");
+    Assert.assertEquals(new String(body, StandardCharsets.UTF_8), CONTENT);
+    Assert.assertEquals(entry.getSize(ResponseEncoding.IDENTITY), body.length);
+
+    Assert.assertEquals(handleRequest(entry, "identity", headers), body);
+    Assert.assertEquals(entry.getSize(ResponseEncoding.IDENTITY), body.length);
+  }
+
+  public void test_deflate_response() throws Exception {
+    setInternalProperty("teamcity.nuget.feed.cache.deflate.enabled", "true");
+    final ResponseCacheEntry entry = createEntry();
+    final Map<String, String> headers = new HashMap<>();
+
+    final byte[] body = handleRequest(entry, "deflate", headers);
+
+    Assert.assertEquals(headers.get("Content-Encoding"), "deflate");
+    Assert.assertEquals(readStream(new InflaterInputStream(new ByteArrayInputStream(body))), CONTENT);
+    Assert.assertEquals(entry.getSize(ResponseEncoding.DEFLATE), body.length);
+  }
+
+  public void test_store_accounts_created_encodings() throws Exception {
+    final ResponseCacheStore store = new ResponseCacheStore(1024 * 1024);
+    final ResponseCacheEntry entry = createEntry();
+    store.put("a", entry, null);
+    final long size = store.getSize();
+    Assert.assertEquals(store.getSize(ResponseEncoding.IDENTITY), 0);
+
+    final byte[] body = handleRequest(entry, null, new HashMap<>());
+    store.update("a", entry);
+
+    Assert.assertEquals(store.getSize(ResponseEncoding.IDENTITY), body.length);
+    Assert.assertEquals(store.getSize(ResponseEncoding.GZIP), entry.getSize(ResponseEncoding.GZIP));
+    Assert.assertEquals(store.getSize(), size + body.length);
+  }
+
+  @NotNull
+  private static ResponseCacheEntry createEntry() throws Exception {
+    final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (ResponseOutputStream stream = new ResponseOutputStream(gzipped, 9)) {
+      stream.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    return new ResponseCacheEntry(Collections.singletonMap("Content-Type", "application/atom+xml"), gzipped.toByteArray(), 200);
+  }
+
+  @NotNull
+  private static byte[] handleRequest(@NotNull final ResponseCacheEntry entry,
+                                      final String acceptEncoding,
+                                      @NotNull final Map<String, String> headers) throws Exception {
+    final Mockery m = new Mockery();
+    final HttpServletRequest request = m.mock(HttpServletRequest.class);
+    final HttpServletResponse response = m.mock(HttpServletResponse.class);
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    headers.clear();
+    m.checking(new Expectations() {{
+      allowing(request).getHeader("Accept-Encoding");
+      will(returnValue(acceptEncoding));
+      allowing(response).setHeader(with(any(String.class)), with(any(String.class)));
+      will(new CustomAction("setHeader") {
+        public Object invoke(Invocation invocation) {
+          headers.put((String) invocation.getParameter(0), (String) invocation.getParameter(1));
+          return null;
+        }
+      });
+      allowing(response).setStatus(200);
+      allowing(response).getOutputStream();
+      will(returnValue(new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+          body.write(b);
+        }
+      }));
+    }});
+
+    entry.handleRequest(request, response);
+    m.assertIsSatisfied();
+    return body.toByteArray();
+  }
+
+  @NotNull
+  private static String readStream(@NotNull final InputStream stream) throws Exception {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[1024];
+    int read;
+    while ((read = stream.read(buffer)) > 0) {
+      output.write(buffer, 0, read);
+    }
+    return new String(output.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
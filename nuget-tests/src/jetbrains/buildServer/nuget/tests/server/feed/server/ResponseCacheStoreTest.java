@@ -0,0 +1,136 @@
+/*
+ * Copyright 2000-2017 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jetbrains.buildServer.nuget.tests.server.feed.server;
+
+import jetbrains.buildServer.BaseTestCase;
+import jetbrains.buildServer.nuget.feed.server.cache.RequestPackageIds;
+import jetbrains.buildServer.nuget.feed.server.cache.ResponseCacheEntry;
+import jetbrains.buildServer.nuget.feed.server.cache.ResponseCacheStore;
+import org.jetbrains.annotations.NotNull;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * Tests feed response cache storage.
+ */
+@Test
+public class ResponseCacheStoreTest extends BaseTestCase {
+
+  public void test_hits_and_misses() {
+    final ResponseCacheStore store = new ResponseCacheStore(1024 * 1024);
+    final ResponseCacheEntry entry = createEntry(10);
+
+    Assert.assertNull(store.get("a"));
+    store.put("a", entry, null);
+    Assert.assertSame(store.get("a"), entry);
+
+    Assert.assertEquals(store.getHitsCount(), 1);
+    Assert.assertEquals(store.getMissesCount(), 1);
+    Assert.assertEquals(store.getCount(), 1);
+    Assert.assertTrue(store.getSize() > 10);
+  }
+
+  public void test_size_budget() {
+    final long maxSize = 16 * 1024;
+    final ResponseCacheStore store = new ResponseCacheStore(maxSize);
+    for (int i = 0; i < 200; i++) {
+      store.put("key" + i, createEntry(300), null);
+      Assert.assertTrue(store.getSize() <= maxSize);
+    }
+
+    Assert.assertNotNull(store.get("key199"));
+    Assert.assertTrue(store.getEvictionsCount() > 0);
+    Assert.assertEquals(store.getCount() + store.getEvictionsCount(), 200);
+  }
+
+  public void test_too_large_entry_is_not_cached() {
+    final ResponseCacheStore store = new ResponseCacheStore(16 * 1024);
+    store.put("a", createEntry(2 * 1024), null);
+
+    Assert.assertNull(store.get("a"));
+    Assert.assertEquals(store.getSize(), 0);
+  }
+
+  public void test_invalidate_package() {
+    final ResponseCacheStore store = new ResponseCacheStore(1024 * 1024);
+    store.put("foo", createEntry(10), Collections.singleton("foo"));
+    store.put("bar", createEntry(10), Collections.singleton("bar"));
+    store.put("updates", createEntry(10), new HashSet<>(Arrays.asList("foo", "bar")));
+    store.put("all", createEntry(10), null);
+
+    store.invalidate("Foo");
+
+    Assert.assertNull(store.get("foo"));
+    Assert.assertNull(store.get("updates"));
+    Assert.assertNull(store.get("all"));
+    Assert.assertNotNull(store.get("bar"));
+    Assert.assertEquals(store.getCount(), 1);
+  }
+
+  public void test_clear() {
+    final ResponseCacheStore store = new ResponseCacheStore(1024 * 1024);
+    store.put("foo", createEntry(10), Collections.singleton("foo"));
+    store.clear();
+
+    Assert.assertNull(store.get("foo"));
+    Assert.assertEquals(store.getSize(), 0);
+  }
+
+  public void test_request_package_ids() {
+    Assert.assertEquals(resolve("/FeedService.svc/Packages(Id='NUnit',Version='2.6.4')", null, null),
+      Collections.singleton("nunit"));
+    Assert.assertEquals(resolve("/FeedService.svc/Packages(Id=%27NUnit%27,Version=%272.6.4%27)", null, null),
+      Collections.singleton("nunit"));
+    Assert.assertEquals(resolve("/FeedService.svc/FindPackagesById()", "id", "'NUnit'"),
+      Collections.singleton("nunit"));
+    Assert.assertEquals(resolve("/FeedService.svc/GetUpdates()", "packageIds", "'NUnit|Castle.Core'"),
+      new HashSet<>(Arrays.asList("nunit", "castle.core")));
+    Assert.assertNull(resolve("/FeedService.svc/Search()", null, null));
+    Assert.assertNull(resolve("/FeedService.svc/Packages()", null, null));
+  }
+
+  private static Object resolve(@NotNull final String uri, final String name, final String value) {
+    final Mockery m = new Mockery();
+    final HttpServletRequest request = m.mock(HttpServletRequest.class);
+    m.checking(new Expectations() {{
+      allowing(request).getRequestURI();
+      will(returnValue(uri));
+      allowing(request).getParameter(with(any(String.class)));
+      will(new CustomAction("parameter") {
+        public Object invoke(Invocation invocation) {
+          return invocation.getParameter(0).equals(name) ? value : null;
+        }
+      });
+    }});
+
+    return RequestPackageIds.resolve(request);
+  }
+
+  @NotNull
+  private static ResponseCacheEntry createEntry(final int size) {
+    return new ResponseCacheEntry(Collections.emptyMap(), new byte[size], 200);
+  }
+}